@@ -14,6 +14,7 @@ import org.aya.util.Arg;
 import org.aya.generic.Constants;
 import org.aya.ref.AnyVar;
 import org.aya.tyck.TyckState;
+import org.aya.tyck.trace.Profiler;
 import org.aya.util.error.SourcePos;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -37,7 +38,9 @@ public final class Meta implements AnyVar {
 
   public boolean solve(@NotNull TyckState state, @NotNull Term t) {
     if (t.findUsages(this) > 0) return false;
-    state.metas().put(this, t);
+    state.solve(this, t);
+    var profiler = Profiler.current();
+    if (profiler != null) profiler.metaSolved();
     return true;
   }
 
@@ -52,6 +55,8 @@ public final class Meta implements AnyVar {
     this.name = name;
     this.result = result;
     this.sourcePos = sourcePos;
+    var profiler = Profiler.current();
+    if (profiler != null) profiler.metaCreated();
   }
 
   public static @NotNull Meta from(
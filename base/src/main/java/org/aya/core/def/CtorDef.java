@@ -6,6 +6,7 @@ import kala.collection.immutable.ImmutableSeq;
 import org.aya.concrete.stmt.TeleDecl;
 import org.aya.core.pat.Pat;
 import org.aya.core.term.Term;
+import org.aya.generic.util.Lazy;
 import org.aya.guest0x0.cubical.Partial;
 import org.aya.ref.DefVar;
 import org.aya.tyck.ExprTycker;
@@ -19,7 +20,8 @@ import java.util.Objects;
 public final class CtorDef extends SubLevelDef {
   public final @NotNull DefVar<DataDef, TeleDecl.DataDecl> dataRef;
   public final @NotNull DefVar<CtorDef, TeleDecl.DataCtor> ref;
-  public final @NotNull Partial.Split<Term> clauses;
+  /** Decoded on first use if loaded from a compiled core, see {@link #clauses()} */
+  private final @NotNull Lazy<Partial.Split<Term>> clauses;
   public final @NotNull ImmutableSeq<Pat> pats;
 
   /**
@@ -31,6 +33,16 @@ public final class CtorDef extends SubLevelDef {
     @NotNull ImmutableSeq<Pat> pats,
     @NotNull ImmutableSeq<Term.Param> ownerTele, @NotNull ImmutableSeq<Term.Param> selfTele,
     @NotNull Partial.Split<Term> clauses, @NotNull Term result, boolean coerce
+  ) {
+    this(dataRef, ref, pats, ownerTele, selfTele, Lazy.value(clauses), result, coerce);
+  }
+
+  /** @param clauses computed when the constructor is unfolded or visited for the first time */
+  public CtorDef(
+    @NotNull DefVar<DataDef, TeleDecl.DataDecl> dataRef, @NotNull DefVar<CtorDef, TeleDecl.DataCtor> ref,
+    @NotNull ImmutableSeq<Pat> pats,
+    @NotNull ImmutableSeq<Term.Param> ownerTele, @NotNull ImmutableSeq<Term.Param> selfTele,
+    @NotNull Lazy<Partial.Split<Term>> clauses, @NotNull Term result, boolean coerce
   ) {
     super(ownerTele, selfTele, result, coerce);
     ref.core = this;
@@ -68,6 +80,10 @@ public final class CtorDef extends SubLevelDef {
     return ref;
   }
 
+  public @NotNull Partial.Split<Term> clauses() {
+    return clauses.get();
+  }
+
   @Override public @NotNull ImmutableSeq<Term.Param> telescope() {
     return fullTelescope().toImmutableSeq();
   }
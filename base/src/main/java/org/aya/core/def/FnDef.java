@@ -5,13 +5,18 @@ package org.aya.core.def;
 import kala.collection.immutable.ImmutableSeq;
 import kala.control.Either;
 import org.aya.concrete.stmt.TeleDecl;
+import org.aya.core.pat.DecisionTree;
+import org.aya.core.repr.NatArith;
 import org.aya.core.term.Term;
 import org.aya.generic.Modifier;
+import org.aya.generic.util.Lazy;
 import org.aya.ref.DefVar;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.EnumSet;
 import java.util.function.BiFunction;
+import java.util.function.Supplier;
 
 /**
  * @author ice1000
@@ -19,21 +24,68 @@ import java.util.function.BiFunction;
 public final class FnDef extends UserDef<Term> {
   public final @NotNull EnumSet<Modifier> modifiers;
   public final @NotNull DefVar<FnDef, TeleDecl.FnDecl> ref;
-  public final @NotNull Either<Term, ImmutableSeq<Term.Matching>> body;
+  /** Decoded on first use if loaded from a compiled core, see {@link #body()} */
+  private final @NotNull Lazy<Body> body;
+  /**
+   * Definitional height, one more than the tallest function used in {@link #body()}.
+   * The conversion checker unfolds the taller side first, see {@link org.aya.tyck.unify.TermComparator}.
+   */
+  public final int height;
+  /** Whether this function is arithmetic on literals, recognized on demand, null if not yet known */
+  public volatile @Nullable NatArith arith;
 
   public FnDef(
     @NotNull DefVar<FnDef, TeleDecl.FnDecl> ref, @NotNull ImmutableSeq<Term.Param> telescope,
     @NotNull Term result,
     @NotNull EnumSet<Modifier> modifiers,
-    @NotNull Either<Term, ImmutableSeq<Term.Matching>> body
+    @NotNull Either<Term, ImmutableSeq<Term.Matching>> body,
+    int height
+  ) {
+    this(ref, telescope, result, modifiers, Lazy.value(Body.of(modifiers, body)), height);
+  }
+
+  /** @param body computed when the function is unfolded or visited for the first time */
+  public FnDef(
+    @NotNull DefVar<FnDef, TeleDecl.FnDecl> ref, @NotNull ImmutableSeq<Term.Param> telescope,
+    @NotNull Term result,
+    @NotNull EnumSet<Modifier> modifiers,
+    @NotNull Supplier<Either<Term, ImmutableSeq<Term.Matching>>> body,
+    int height
+  ) {
+    this(ref, telescope, result, modifiers, Lazy.of(() -> Body.of(modifiers, body.get())), height);
+  }
+
+  private FnDef(
+    @NotNull DefVar<FnDef, TeleDecl.FnDecl> ref, @NotNull ImmutableSeq<Term.Param> telescope,
+    @NotNull Term result, @NotNull EnumSet<Modifier> modifiers,
+    @NotNull Lazy<Body> body, int height
   ) {
     super(telescope, result);
     this.modifiers = modifiers;
+    this.height = height;
     ref.core = this;
     this.ref = ref;
     this.body = body;
   }
 
+  /** @param tree the clauses compiled once, null if not a pattern matching function or not compilable */
+  private record Body(@NotNull Either<Term, ImmutableSeq<Term.Matching>> body, @Nullable DecisionTree tree) {
+    static @NotNull Body of(@NotNull EnumSet<Modifier> modifiers, @NotNull Either<Term, ImmutableSeq<Term.Matching>> body) {
+      return new Body(body, body.isRight()
+        ? DecisionTree.compile(modifiers.contains(Modifier.Overlap), body.getRightValue())
+        : null);
+    }
+  }
+
+  public @NotNull Either<Term, ImmutableSeq<Term.Matching>> body() {
+    return body.get().body;
+  }
+
+  /** @return the clauses of {@link #body()} compiled once, null if not a pattern matching function or not compilable */
+  public @Nullable DecisionTree tree() {
+    return body.get().tree;
+  }
+
   public static <T> BiFunction<Term, Either<Term, ImmutableSeq<Term.Matching>>, T>
   factory(BiFunction<Term, Either<Term, ImmutableSeq<Term.Matching>>, T> function) {
     return function;
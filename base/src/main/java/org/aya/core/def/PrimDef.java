@@ -289,6 +289,7 @@ public final class PrimDef extends TopLevelDef<Term> {
           ImmutableSeq.of(ID.I));
     }
 
+    /** Guarded by this, primitives may be declared while other SCCs are checked in parallel */
     private final @NotNull EnumMap<@NotNull ID, @NotNull PrimDef> defs = new EnumMap<>(ID.class);
 
     private final @NotNull Map<@NotNull ID, @NotNull PrimSeed> seeds;
@@ -312,7 +313,7 @@ public final class PrimDef extends TopLevelDef<Term> {
         .toImmutableMap();
     }
 
-    public @NotNull PrimDef factory(@NotNull ID name, @NotNull DefVar<PrimDef, TeleDecl.PrimDecl> ref) {
+    public synchronized @NotNull PrimDef factory(@NotNull ID name, @NotNull DefVar<PrimDef, TeleDecl.PrimDecl> ref) {
       assert !have(name);
       var rst = seeds.get(name).supply(ref);
       defs.put(name, rst);
@@ -327,11 +328,11 @@ public final class PrimDef extends TopLevelDef<Term> {
       return getCall(id, ImmutableSeq.empty());
     }
 
-    public @NotNull Option<PrimDef> getOption(@NotNull ID name) {
+    public synchronized @NotNull Option<PrimDef> getOption(@NotNull ID name) {
       return Option.ofNullable(defs.get(name));
     }
 
-    public boolean have(@NotNull ID name) {
+    public synchronized boolean have(@NotNull ID name) {
       return defs.containsKey(name);
     }
 
@@ -340,11 +341,11 @@ public final class PrimDef extends TopLevelDef<Term> {
       return false;
     }
 
-    public @NotNull PrimDef getOrCreate(@NotNull ID name, @NotNull DefVar<PrimDef, TeleDecl.PrimDecl> ref) {
+    public synchronized @NotNull PrimDef getOrCreate(@NotNull ID name, @NotNull DefVar<PrimDef, TeleDecl.PrimDecl> ref) {
       return getOption(name).getOrElse(() -> factory(name, ref));
     }
 
-    public @NotNull Option<ImmutableSeq<@NotNull ID>> checkDependency(@NotNull ID name) {
+    public synchronized @NotNull Option<ImmutableSeq<@NotNull ID>> checkDependency(@NotNull ID name) {
       return seeds.getOption(name).map(seed -> seed.dependency().filterNot(this::have));
     }
 
@@ -352,11 +353,11 @@ public final class PrimDef extends TopLevelDef<Term> {
       return seeds.get(name).unfold.apply(primCall, state);
     }
 
-    public void clear() {
+    public synchronized void clear() {
       defs.clear();
     }
 
-    public void clear(@NotNull ID name) {
+    public synchronized void clear(@NotNull ID name) {
       defs.remove(name);
     }
   }
@@ -0,0 +1,257 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.core.nbe;
+
+import kala.collection.SeqLike;
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.core.pat.Pat;
+import org.aya.core.term.*;
+import org.aya.core.visitor.Expander;
+import org.aya.core.visitor.Subst;
+import org.aya.generic.Modifier;
+import org.aya.generic.util.NormalizeMode;
+import org.aya.generic.util.InternalException;
+import org.aya.guest0x0.cubical.Formula;
+import org.aya.tyck.TyckState;
+import org.aya.util.Arg;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Normalization by evaluation, an alternative to {@link Expander.Normalizer}.
+ * Unfolding a definition binds the arguments in an environment
+ * instead of renaming and substituting the whole body.
+ * Fresh names are only generated when reading back under binders.
+ *
+ * @see org.aya.generic.util.NormalizeMode#NBE
+ * @see Value
+ */
+public record Evaluator(@NotNull TyckState state) {
+  public @NotNull Term normalize(@NotNull Term term) {
+    return quote(eval(term, Value.Env.EMPTY));
+  }
+
+  public @NotNull Value eval(@NotNull Term term, @NotNull Value.Env env) {
+    return switch (term) {
+      case RefTerm(var ref) -> {
+        var value = env.get(ref);
+        yield value != null ? value : new Value.Var(ref);
+      }
+      case LamTerm(var param, var body) -> new Value.Lam(param, env, body);
+      case PiTerm(var param, var body) -> new Value.Pi(param, env, body);
+      case TupTerm(var items) -> new Value.Tup(items.map(item -> eval(item, env)));
+      case AppTerm(var of, var arg) -> app(eval(of, env), new Arg<>(eval(arg.term(), env), arg.explicit()));
+      case ProjTerm(var of, var ix) -> proj(eval(of, env), ix);
+      case DataCall data -> new Value.Data(data.ref(), data.ulift(), evalArgs(data.args(), env));
+      case ConCall con -> {
+        var head = con.head();
+        var value = new Value.Con(head.dataRef(), head.ref(), head.ulift(),
+          evalArgs(head.dataArgs(), env), evalArgs(con.conArgs(), env));
+        var def = head.ref().core;
+        if (def == null || def.clauses().clauses().isEmpty()) yield value;
+        // Constructors with boundaries are rare, reuse the existing implementation
+        var unfolded = new Expander.WHNFer(state).apply(quote(value));
+        yield unfolded instanceof ConCall ? value : eval(unfolded, Value.Env.EMPTY);
+      }
+      case FnCall fn -> {
+        var args = evalArgs(fn.args(), env);
+        var def = fn.ref().core;
+        if (def == null || def.modifiers.contains(Modifier.Opaque)) yield new Value.Fn(fn.ref(), fn.ulift(), args);
+        yield def.body().fold(
+          body -> eval(body.lift(fn.ulift()), bind(def.telescope, args)),
+          clauses -> {
+            var unfolded = unfoldClauses(def.modifiers.contains(Modifier.Overlap), args, fn.ulift(), clauses);
+            return unfolded != null ? unfolded : new Value.Fn(fn.ref(), fn.ulift(), args);
+          });
+      }
+      case PrimCall prim -> {
+        var args = evalArgs(prim.args(), env);
+        var call = new PrimCall(prim.ref(), prim.ulift(), quoteArgs(args));
+        var unfolded = state.primFactory().unfold(prim.id(), call, state);
+        yield unfolded == call ? new Value.Prim(prim.ref(), prim.ulift(), args) : eval(unfolded, Value.Env.EMPTY);
+      }
+      case MetaTerm hole -> {
+        var meta = hole.ref();
+        var solution = state.metas().getOrNull(meta);
+        var contextArgs = evalArgs(hole.contextArgs(), env);
+        var args = evalArgs(hole.args(), env);
+        if (solution == null) yield new Value.Hole(meta, contextArgs, args);
+        yield eval(solution, bind(meta.fullTelescope().toImmutableSeq(), contextArgs.appendedAll(args)));
+      }
+      default -> new Value.Delayed(term, env);
+    };
+  }
+
+  private @NotNull ImmutableSeq<Arg<Value>> evalArgs(@NotNull ImmutableSeq<Arg<Term>> args, @NotNull Value.Env env) {
+    return args.map(arg -> new Arg<>(eval(arg.term(), env), arg.explicit()));
+  }
+
+  private static @NotNull Value.Env bind(@NotNull SeqLike<Term.Param> tele, @NotNull SeqLike<Arg<Value>> args) {
+    var env = Value.Env.EMPTY;
+    for (var pair : tele.view().zip(args)) env = env.put(pair._1.ref(), pair._2.term());
+    return env;
+  }
+
+  private @NotNull Value app(@NotNull Value of, @NotNull Arg<Value> arg) {
+    return switch (of) {
+      case Value.Lam lam -> lam.apply(this, arg.term());
+      case Value.Hole hole when hole.args().sizeLessThan(hole.ref().telescope) ->
+        new Value.Hole(hole.ref(), hole.contextArgs(), hole.args().appended(arg));
+      default -> new Value.App(of, arg);
+    };
+  }
+
+  private @NotNull Value proj(@NotNull Value of, int ix) {
+    if (of instanceof Value.Tup tup) return tup.items().get(ix - 1);
+    return new Value.Proj(of, ix);
+  }
+
+  /// region Pattern Matching
+
+  /** @return null if stuck or no clause matches */
+  private @Nullable Value unfoldClauses(
+    boolean orderIndependent, @NotNull ImmutableSeq<Arg<Value>> args,
+    int ulift, @NotNull ImmutableSeq<Term.Matching> clauses
+  ) {
+    for (var matchy : clauses) {
+      Value.Env env;
+      try {
+        env = matchMany(matchy.patterns(), args.map(Arg::term), Value.Env.EMPTY);
+      } catch (Mismatch mismatch) {
+        if (!orderIndependent && mismatch.isBlocked) return null;
+        continue;
+      }
+      return eval(matchy.body().lift(ulift), env);
+    }
+    return null;
+  }
+
+  private @NotNull Value.Env matchMany(
+    @NotNull ImmutableSeq<Pat> pats, @NotNull ImmutableSeq<Value> values, @NotNull Value.Env env
+  ) throws Mismatch {
+    assert pats.sizeEquals(values);
+    for (int i = 0; i < pats.size(); i++) env = match(pats.get(i), values.get(i), env);
+    return env;
+  }
+
+  /** @see org.aya.core.pat.PatMatcher */
+  private @NotNull Value.Env match(@NotNull Pat pat, @NotNull Value value, @NotNull Value.Env env) throws Mismatch {
+    return switch (pat) {
+      case Pat.Bind bind -> env.put(bind.bind(), value);
+      case Pat.Ctor ctor -> switch (whnf(value)) {
+        case Value.Con con -> {
+          if (ctor.ref() != con.ref()) throw new Mismatch(false);
+          yield matchMany(ctor.params(), con.conArgs().map(Arg::term), env);
+        }
+        case Value.Delayed(IntegerTerm lit, var litEnv) -> match(ctor, eval(lit.constructorForm(), litEnv), env);
+        case Value.Delayed(ListTerm lit, var litEnv) -> match(ctor, eval(lit.constructorForm(), litEnv), env);
+        default -> throw new Mismatch(true);
+      };
+      case Pat.Tuple tuple -> {
+        if (!(whnf(value) instanceof Value.Tup tup)) throw new Mismatch(true);
+        yield matchMany(tuple.pats(), tup.items(), env);
+      }
+      case Pat.End end -> {
+        if (!(quote(value).asFormula() instanceof Formula.Lit<Term>(var one) && one == end.isOne()))
+          throw new Mismatch(true);
+        yield env;
+      }
+      case Pat.ShapedInt lit -> {
+        if (value instanceof Value.Delayed(IntegerTerm litTerm, var ignored)) {
+          if (!lit.compareUntyped(litTerm)) throw new Mismatch(false);
+          yield env;
+        }
+        yield match(lit.constructorForm(), value, env);
+      }
+      case Pat.Absurd ignored -> throw new InternalException("unreachable");
+      case Pat.Meta ignored -> throw new InternalException("Pat.Meta is not allowed");
+    };
+  }
+
+  /**
+   * A delayed term may still reduce to a constructor or a tuple, like a path application
+   * or a solved {@link MetaPatTerm}, so it is reduced the way {@link org.aya.core.pat.PatMatcher} does.
+   */
+  private @NotNull Value whnf(@NotNull Value value) {
+    if (!(value instanceof Value.Delayed(var term, var env)) || term instanceof IntegerTerm || term instanceof ListTerm)
+      return value;
+    var closed = close(term, env);
+    var whnf = closed.normalize(state, NormalizeMode.WHNF);
+    while (whnf instanceof MetaPatTerm metaPat) {
+      var inlined = metaPat.inline();
+      if (inlined == metaPat) break;
+      whnf = inlined.normalize(state, NormalizeMode.WHNF);
+    }
+    return whnf == closed ? value : eval(whnf, Value.Env.EMPTY);
+  }
+
+  private static final class Mismatch extends Exception {
+    public final boolean isBlocked;
+
+    private Mismatch(boolean isBlocked) {
+      super(null, null, false, false);
+      this.isBlocked = isBlocked;
+    }
+  }
+
+  /// endregion
+
+  /// region Read Back
+
+  public @NotNull Term quote(@NotNull Value value) {
+    return switch (value) {
+      case Value.Var(var ref) -> new RefTerm(ref);
+      case Value.Lam lam -> {
+        var param = lam.param();
+        var fresh = param.renameVar();
+        var body = eval(lam.body(), lam.env().put(param.ref(), new Value.Var(fresh)));
+        yield new LamTerm(new Term.Param(fresh, quote(eval(param.type(), lam.env())), param.explicit()), quote(body));
+      }
+      case Value.Pi pi -> {
+        var param = pi.param();
+        var fresh = param.renameVar();
+        var body = eval(pi.body(), pi.env().put(param.ref(), new Value.Var(fresh)));
+        yield new PiTerm(new Term.Param(fresh, quote(eval(param.type(), pi.env())), param.explicit()), quote(body));
+      }
+      case Value.Tup(var items) -> new TupTerm(items.map(this::quote));
+      case Value.Data data -> new DataCall(data.ref(), data.ulift(), quoteArgs(data.args()));
+      case Value.Con con -> new ConCall(con.dataRef(), con.ref(),
+        quoteArgs(con.dataArgs()), con.ulift(), quoteArgs(con.conArgs()));
+      case Value.App(var of, var arg) -> {
+        var app = new AppTerm(quote(of), new Arg<>(quote(arg.term()), arg.explicit()));
+        // The head may be something the evaluator cannot apply, like an erased term
+        var made = AppTerm.make(app);
+        yield made == app ? app : normalize(made);
+      }
+      case Value.Proj(var of, var ix) -> {
+        var proj = new ProjTerm(quote(of), ix);
+        var made = ProjTerm.proj(proj);
+        yield made == proj ? proj : normalize(made);
+      }
+      case Value.Fn fn -> new FnCall(fn.ref(), fn.ulift(), quoteArgs(fn.args()));
+      case Value.Prim prim -> new PrimCall(prim.ref(), prim.ulift(), quoteArgs(prim.args()));
+      case Value.Hole hole -> new MetaTerm(hole.ref(), quoteArgs(hole.contextArgs()), quoteArgs(hole.args()));
+      case Value.Delayed(var term, var env) -> new Expander.Normalizer(state).apply(close(term, env));
+    };
+  }
+
+  /** @return <code>term</code> with the values in <code>env</code> read back and substituted */
+  private @NotNull Term close(@NotNull Term term, @NotNull Value.Env env) {
+    if (env.isEmpty()) return term;
+    var subst = new Subst();
+    for (var e = env; !e.isEmpty(); e = e.parent()) {
+      var ref = e.var();
+      assert ref != null && e.value() != null;
+      // Inner bindings shadow outer ones
+      if (!subst.map().containsKey(ref) && term.findUsages(ref) > 0)
+        subst.addDirectly(ref, quote(e.value()));
+    }
+    return term.subst(subst);
+  }
+
+  private @NotNull ImmutableSeq<Arg<Term>> quoteArgs(@NotNull ImmutableSeq<Arg<Value>> args) {
+    return args.map(arg -> new Arg<>(quote(arg.term()), arg.explicit()));
+  }
+
+  /// endregion
+}
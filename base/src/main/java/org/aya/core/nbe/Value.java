@@ -0,0 +1,104 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.core.nbe;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.concrete.stmt.TeleDecl;
+import org.aya.core.Meta;
+import org.aya.core.def.CtorDef;
+import org.aya.core.def.DataDef;
+import org.aya.core.def.FnDef;
+import org.aya.core.def.PrimDef;
+import org.aya.core.term.Term;
+import org.aya.ref.AnyVar;
+import org.aya.ref.DefVar;
+import org.aya.ref.LocalVar;
+import org.aya.util.Arg;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The semantic domain of {@link Evaluator}.
+ * Binders are represented as closures, so instantiating them is O(1)
+ * instead of a substitution over the whole body.
+ *
+ * @see Evaluator#quote(Value) for the read-back
+ */
+public sealed interface Value {
+  /** @param body the body of the lambda, to be evaluated in <code>env</code> extended with the parameter */
+  record Lam(@NotNull Term.Param param, @NotNull Env env, @NotNull Term body) implements Value {
+    public @NotNull Value apply(@NotNull Evaluator evaluator, @NotNull Value arg) {
+      return evaluator.eval(body, env.put(param.ref(), arg));
+    }
+  }
+
+  record Pi(@NotNull Term.Param param, @NotNull Env env, @NotNull Term body) implements Value {}
+
+  record Tup(@NotNull ImmutableSeq<Value> items) implements Value {}
+
+  record Data(
+    @NotNull DefVar<DataDef, TeleDecl.DataDecl> ref, int ulift,
+    @NotNull ImmutableSeq<Arg<Value>> args
+  ) implements Value {}
+
+  record Con(
+    @NotNull DefVar<DataDef, TeleDecl.DataDecl> dataRef,
+    @NotNull DefVar<CtorDef, TeleDecl.DataCtor> ref, int ulift,
+    @NotNull ImmutableSeq<Arg<Value>> dataArgs,
+    @NotNull ImmutableSeq<Arg<Value>> conArgs
+  ) implements Value {}
+
+  /** A free variable, which is also what binders are instantiated with when reading back. */
+  record Var(@NotNull LocalVar ref) implements Value {}
+
+  /** Application of a neutral value. */
+  record App(@NotNull Value of, @NotNull Arg<Value> arg) implements Value {}
+
+  record Proj(@NotNull Value of, int ix) implements Value {}
+
+  /** A function call that cannot be unfolded (yet). */
+  record Fn(
+    @NotNull DefVar<FnDef, TeleDecl.FnDecl> ref, int ulift,
+    @NotNull ImmutableSeq<Arg<Value>> args
+  ) implements Value {}
+
+  record Prim(
+    @NotNull DefVar<PrimDef, TeleDecl.PrimDecl> ref, int ulift,
+    @NotNull ImmutableSeq<Arg<Value>> args
+  ) implements Value {}
+
+  /** An unsolved meta. */
+  record Hole(
+    @NotNull Meta ref,
+    @NotNull ImmutableSeq<Arg<Value>> contextArgs,
+    @NotNull ImmutableSeq<Arg<Value>> args
+  ) implements Value {}
+
+  /**
+   * Terms that the evaluator does not have a semantic counterpart for (cubical primitives, records, etc.).
+   * They are read back by substituting the environment and using {@link org.aya.core.visitor.Expander.Normalizer}.
+   */
+  record Delayed(@NotNull Term term, @NotNull Env env) implements Value {}
+
+  /**
+   * A persistent association list. Environments are tiny (the size of a telescope or a clause),
+   * so a linear lookup is cheaper than hashing.
+   */
+  record Env(@Nullable Env parent, @Nullable LocalVar var, @Nullable Value value) {
+    public static final @NotNull Env EMPTY = new Env(null, null, null);
+
+    public @NotNull Env put(@NotNull LocalVar var, @NotNull Value value) {
+      return new Env(this, var, value);
+    }
+
+    public @Nullable Value get(@NotNull AnyVar var) {
+      for (var env = this; env.parent != null; env = env.parent)
+        if (env.var == var) return env.value;
+      return null;
+    }
+
+    public boolean isEmpty() {
+      return parent == null;
+    }
+  }
+}
@@ -0,0 +1,284 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.core.pat;
+
+import kala.collection.SeqLike;
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableMap;
+import kala.control.Option;
+import org.aya.concrete.stmt.TeleDecl;
+import org.aya.core.def.CtorDef;
+import org.aya.core.term.*;
+import org.aya.core.visitor.Subst;
+import org.aya.ref.DefVar;
+import org.aya.ref.LocalVar;
+import org.aya.util.Arg;
+import org.aya.util.error.WithPos;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Pattern matching clauses compiled into a decision tree, so unfolding a function
+ * inspects every (sub)argument at most once and dispatches on its head constructor,
+ * instead of running {@link PatMatcher} on each clause in turn.
+ * <p>
+ * The tree is faithful to {@link org.aya.core.visitor.DeltaExpander#tryUnfoldClauses}:
+ * clauses are tried in order, and the patterns of a clause are inspected from left to right,
+ * so a call gets stuck in exactly the same cases.
+ *
+ * @param registers the arguments, followed by the subterms of them that are inspected
+ * @see org.aya.core.def.FnDef#tree
+ */
+public record DecisionTree(int registers, @NotNull Node root) {
+  /** Larger trees are not worth it, we fall back to {@link PatMatcher} then. */
+  private static final int MAX_SIZE = 512;
+
+  public sealed interface Node {}
+
+  /** The clause matches, each one of <code>vars</code> is bound to the corresponding register. */
+  public record Leaf(@NotNull Term.Matching clause, @NotNull ImmutableSeq<LocalVar> vars, int @NotNull [] regs)
+    implements Node {}
+
+  /** Either blocked or no clause matches. */
+  public enum Stuck implements Node {INSTANCE}
+
+  /**
+   * @param otherwise when the head is a constructor that is not in <code>branches</code>,
+   *                  null if we are matching a tuple
+   * @param blocked   when the head is not a constructor (or a tuple)
+   */
+  public record Switch(
+    int reg, @NotNull ImmutableSeq<Branch> branches,
+    @Nullable Node otherwise, @NotNull Node blocked
+  ) implements Node {}
+
+  /**
+   * @param ctor     null for tuples
+   * @param children the registers storing the arguments of the constructor
+   */
+  public record Branch(
+    @Nullable DefVar<CtorDef, TeleDecl.DataCtor> ctor,
+    int @NotNull [] children, @NotNull Node next
+  ) {}
+
+  /** @return null if the clauses contain patterns we don't compile (literals and intervals) */
+  public static @Nullable DecisionTree compile(boolean orderIndependent, @NotNull ImmutableSeq<Term.Matching> clauses) {
+    if (clauses.isEmpty()) return null;
+    var compiler = new Compiler(orderIndependent, clauses);
+    for (int i = 0; i < clauses.first().patterns().size(); i++) compiler.paths.append(ImmutableSeq.of(i));
+    try {
+      var root = compiler.clause(0, MutableMap.create());
+      return new DecisionTree(compiler.paths.size(), root);
+    } catch (Unsupported ignored) {
+      return null;
+    }
+  }
+
+  /**
+   * @param pre applied to a term before its head is inspected
+   * @see org.aya.core.visitor.DeltaExpander#tryUnfoldClauses
+   */
+  public @NotNull Option<WithPos<Term>> tryUnfold(
+    @NotNull SeqLike<Arg<Term>> args, int ulift,
+    @NotNull UnaryOperator<Term> pre
+  ) {
+    var regs = new Term[registers];
+    var heads = new Term[registers];
+    for (int i = 0; i < args.size(); i++) regs[i] = args.get(i).term();
+    var node = root;
+    while (true) switch (node) {
+      case Stuck ignored -> {
+        return Option.none();
+      }
+      case Leaf leaf -> {
+        var subst = new Subst();
+        for (int i = 0; i < leaf.regs.length; i++) subst.addDirectly(leaf.vars.get(i), regs[leaf.regs[i]]);
+        var matchy = leaf.clause;
+        return Option.some(new WithPos<>(matchy.sourcePos(), matchy.body().instantiate(subst, ulift)));
+      }
+      case Switch sw -> {
+        var head = heads[sw.reg];
+        if (head == null) head = heads[sw.reg] = head(regs[sw.reg], pre);
+        node = sw.blocked;
+        if (head instanceof ConCall con && sw.otherwise != null) {
+          node = sw.otherwise;
+          for (var branch : sw.branches)
+            if (branch.ctor == con.ref()) {
+              var conArgs = con.conArgs();
+              for (int i = 0; i < branch.children.length; i++) {
+                regs[branch.children[i]] = conArgs.get(i).term();
+                heads[branch.children[i]] = null;
+              }
+              node = branch.next;
+              break;
+            }
+        } else if (head instanceof TupTerm tup && sw.otherwise == null) {
+          var branch = sw.branches.first();
+          for (int i = 0; i < branch.children.length; i++) {
+            regs[branch.children[i]] = tup.items().get(i);
+            heads[branch.children[i]] = null;
+          }
+          node = branch.next;
+        }
+      }
+    }
+  }
+
+  /** @see PatMatcher for how literals and solved meta patterns are treated */
+  private static @NotNull Term head(@NotNull Term term, @NotNull UnaryOperator<Term> pre) {
+    term = pre.apply(term);
+    return switch (term) {
+      case IntegerTerm lit -> head(lit.constructorForm(), pre);
+      case ListTerm lit -> head(lit.constructorForm(), pre);
+      case MetaPatTerm metaPat when metaPat.ref().solution().get() != null ->
+        head(metaPat.ref().solution().get().toTerm(), pre);
+      default -> term;
+    };
+  }
+
+  /// region Compilation
+
+  private static final class Unsupported extends RuntimeException {
+    private Unsupported() {
+      super(null, null, false, false);
+    }
+  }
+
+  /** What we know about the head of a register on the current path of the tree. */
+  private sealed interface Fact {}
+  private record Is(@Nullable DefVar<CtorDef, TeleDecl.DataCtor> ctor) implements Fact {}
+  private record IsNot(@NotNull ImmutableSeq<DefVar<CtorDef, TeleDecl.DataCtor>> ctors) implements Fact {}
+
+  /** The patterns of the current clause that are not yet inspected. */
+  private record Todo(@NotNull Pat pat, int reg, @Nullable Todo next) {}
+  private record Bound(@NotNull LocalVar var, int reg, @Nullable Bound next) {}
+
+  private static final class Compiler {
+    private final boolean orderIndependent;
+    private final @NotNull ImmutableSeq<Term.Matching> clauses;
+    /** Indexed by registers, where is the register in the arguments */
+    private final @NotNull MutableList<ImmutableSeq<Integer>> paths = MutableList.create();
+    private final @NotNull MutableMap<Long, Integer> children = MutableMap.create();
+    private int size = 0;
+
+    private Compiler(boolean orderIndependent, @NotNull ImmutableSeq<Term.Matching> clauses) {
+      this.orderIndependent = orderIndependent;
+      this.clauses = clauses;
+    }
+
+    private @NotNull Node clause(int ix, @NotNull MutableMap<Integer, Fact> known) {
+      if (ix >= clauses.size()) return Stuck.INSTANCE;
+      Todo todo = null;
+      var pats = clauses.get(ix).patterns();
+      for (int i = pats.size() - 1; i >= 0; i--) todo = new Todo(pats.get(i), i, todo);
+      return match(ix, todo, null, known);
+    }
+
+    private @NotNull Node match(int ix, @Nullable Todo todo, @Nullable Bound bound, @NotNull MutableMap<Integer, Fact> known) {
+      if (++size > MAX_SIZE) throw new Unsupported();
+      while (todo != null) {
+        var pat = todo.pat;
+        var reg = todo.reg;
+        todo = todo.next;
+        switch (pat) {
+          case Pat.Bind bind -> bound = new Bound(bind.bind(), reg, bound);
+          case Pat.Ctor ctor -> {
+            var fact = known.getOrNull(reg);
+            if (fact instanceof Is is) {
+              if (is.ctor != ctor.ref()) return clause(ix + 1, known);
+              todo = push(reg, ctor.params(), todo);
+            } else if (fact instanceof IsNot isNot && isNot.ctors.contains(ctor.ref())) {
+              return clause(ix + 1, known);
+            } else return split(ix, reg, ctor, todo, bound, known);
+          }
+          case Pat.Tuple tuple -> {
+            if (known.getOrNull(reg) instanceof Is) todo = push(reg, tuple.pats(), todo);
+            else {
+              var inspected = MutableMap.from(known);
+              inspected.put(reg, new Is(null));
+              var next = match(ix, push(reg, tuple.pats(), todo), bound, inspected);
+              var branch = new Branch(null, children(reg, tuple.pats().size()), next);
+              return new Switch(reg, ImmutableSeq.of(branch), null, blocked(ix, known));
+            }
+          }
+          default -> throw new Unsupported();
+        }
+      }
+      var vars = MutableList.<LocalVar>create();
+      for (var b = bound; b != null; b = b.next) vars.append(b.var);
+      var regs = new int[vars.size()];
+      var i = 0;
+      for (var b = bound; b != null; b = b.next) regs[i++] = b.reg;
+      return new Leaf(clauses.get(ix), vars.toImmutableSeq(), regs);
+    }
+
+    /** Inspect the head of <code>reg</code>, also for the constructors that later clauses are interested in. */
+    private @NotNull Node split(
+      int ix, int reg, @NotNull Pat.Ctor pat, @Nullable Todo todo,
+      @Nullable Bound bound, @NotNull MutableMap<Integer, Fact> known
+    ) {
+      var excluded = known.getOrNull(reg) instanceof IsNot isNot ? isNot.ctors : ImmutableSeq.<DefVar<CtorDef, TeleDecl.DataCtor>>empty();
+      var heads = MutableList.of(pat);
+      var path = paths.get(reg);
+      for (var later : clauses.view().drop(ix + 1)) {
+        if (patAt(later.patterns(), path) instanceof Pat.Ctor ctor
+          && ctor.type().ref() == pat.type().ref()
+          && !excluded.contains(ctor.ref())
+          && heads.noneMatch(head -> head.ref() == ctor.ref())) heads.append(ctor);
+      }
+      var branches = heads.view().map(head -> {
+        var inspected = MutableMap.from(known);
+        inspected.put(reg, new Is(head.ref()));
+        var next = head == pat
+          ? match(ix, push(reg, pat.params(), todo), bound, inspected)
+          : clause(ix + 1, inspected);
+        return new Branch(head.ref(), children(reg, head.params().size()), next);
+      }).toImmutableSeq();
+      var otherwise = MutableMap.from(known);
+      otherwise.put(reg, new IsNot(excluded.appendedAll(heads.view().map(Pat.Ctor::ref))));
+      return new Switch(reg, branches, clause(ix + 1, otherwise), blocked(ix, known));
+    }
+
+    private @NotNull Node blocked(int ix, @NotNull MutableMap<Integer, Fact> known) {
+      return orderIndependent ? clause(ix + 1, known) : Stuck.INSTANCE;
+    }
+
+    private @Nullable Todo push(int reg, @NotNull ImmutableSeq<Pat> pats, @Nullable Todo todo) {
+      for (int i = pats.size() - 1; i >= 0; i--) todo = new Todo(pats.get(i), child(reg, i), todo);
+      return todo;
+    }
+
+    private int @NotNull [] children(int reg, int arity) {
+      var regs = new int[arity];
+      for (int i = 0; i < arity; i++) regs[i] = child(reg, i);
+      return regs;
+    }
+
+    /** Subterms at the same position share a register, no matter which constructor they come from. */
+    private int child(int reg, int ix) {
+      return children.getOrPut(((long) reg << 32) | ix, () -> {
+        paths.append(paths.get(reg).appended(ix));
+        return paths.size() - 1;
+      });
+    }
+
+    private static @Nullable Pat patAt(@NotNull ImmutableSeq<Pat> pats, @NotNull ImmutableSeq<Integer> path) {
+      var pat = pats.get(path.first());
+      for (var ix : path.view().drop(1)) {
+        var sub = switch (pat) {
+          case Pat.Ctor ctor -> ctor.params();
+          case Pat.Tuple tuple -> tuple.pats();
+          default -> null;
+        };
+        if (sub == null || ix >= sub.size()) return null;
+        pat = sub.get(ix);
+      }
+      return pat;
+    }
+  }
+
+  /// endregion
+}
@@ -32,6 +32,8 @@ import org.jetbrains.annotations.Debug;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.math.BigInteger;
+
 /**
  * @author kiva, ice1000
  */
@@ -193,7 +195,7 @@ public sealed interface Pat extends AyaDocile {
   }
 
   record ShapedInt(
-    @Override int repr,
+    @Override @NotNull BigInteger repr,
     @Override @NotNull ShapeRecognition recognition,
     @NotNull DataCall type,
     boolean explicit
@@ -222,7 +224,7 @@ public sealed interface Pat extends AyaDocile {
       return new Pat.Ctor(explicit, suc.ref, ImmutableSeq.of(pat.term()), type);
     }
 
-    @Override public @NotNull Pat destruct(int repr) {
+    @Override public @NotNull Pat destruct(@NotNull BigInteger repr) {
       return new Pat.ShapedInt(repr, this.recognition, this.type, true);
     }
   }
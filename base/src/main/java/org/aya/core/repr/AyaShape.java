@@ -52,20 +52,21 @@ public sealed interface AyaShape {
     }
   }
 
+  /** Shared by the SCCs checked in parallel, so the accesses to {@link #discovered} are synchronized */
   class Factory {
     public @NotNull MutableMap<GenericDef, ShapeRecognition> discovered = MutableLinkedHashMap.of();
 
-    public @NotNull ImmutableSeq<Tuple2<GenericDef, ShapeRecognition>> findImpl(@NotNull AyaShape shape) {
+    public synchronized @NotNull ImmutableSeq<Tuple2<GenericDef, ShapeRecognition>> findImpl(@NotNull AyaShape shape) {
       return discovered.view().map(Tuple::of)
         .filter(t -> t._2.shape() == shape)
         .toImmutableSeq();
     }
 
-    public @NotNull Option<ShapeRecognition> find(@NotNull Def def) {
+    public synchronized @NotNull Option<ShapeRecognition> find(@NotNull Def def) {
       return discovered.getOption(def);
     }
 
-    public void bonjour(@NotNull GenericDef def, @NotNull ShapeRecognition shape) {
+    public synchronized void bonjour(@NotNull GenericDef def, @NotNull ShapeRecognition shape) {
       // TODO[literal]: what if a def has multiple shapes?
       discovered.put(def, shape);
     }
@@ -77,7 +78,7 @@ public sealed interface AyaShape {
         .forEach(shape -> bonjour(def, shape));
     }
 
-    public void importAll(@NotNull Factory other) {
+    public synchronized void importAll(@NotNull Factory other) {
       discovered.putAll(other.discovered);
     }
   }
@@ -0,0 +1,220 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.core.repr;
+
+import kala.collection.SeqLike;
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.core.def.CtorDef;
+import org.aya.core.def.FnDef;
+import org.aya.core.term.*;
+import org.aya.core.visitor.Expander;
+import org.aya.core.visitor.VarSummary;
+import org.aya.ref.LocalVar;
+import org.aya.tyck.TyckState;
+import org.aya.util.Arg;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigInteger;
+
+/**
+ * Binary functions on {@link AyaShape#NAT_SHAPE} that are recognized as arithmetic,
+ * so calls on literals compute on {@link BigInteger} instead of unfolding the unary recursion.
+ * <p>
+ * A function is recognized by its defining equations, which are checked by unfolding it
+ * on fresh variables, say, <code>f 0 y = y</code> and <code>f (suc x) y = suc (f x y)</code> for addition.
+ * By induction, the function agrees with the native operation on all literals.
+ *
+ * @param yes the result of a comparison when it holds, null for arithmetic
+ * @param no  the result of a comparison when it does not hold, null for arithmetic
+ * @see FnDef#arith
+ */
+public record NatArith(@NotNull Kind kind, @Nullable Term yes, @Nullable Term no) {
+  public static final @NotNull NatArith NONE = new NatArith(Kind.NONE, null, null);
+
+  public enum Kind {
+    NONE, ADD, MUL,
+    /** Truncated subtraction */
+    SUB,
+    LE, LT, EQ,
+  }
+
+  private NatArith(@NotNull Kind kind) {
+    this(kind, null, null);
+  }
+
+  /** @return null if <code>def</code> is not arithmetic or the arguments are not literals */
+  public static @Nullable Term tryCompute(
+    @NotNull FnDef def, @NotNull SeqLike<Arg<Term>> args,
+    @NotNull TyckState state
+  ) {
+    if (!args.sizeEquals(2)) return null;
+    IntegerTerm lit = null;
+    for (var arg : args) if (arg.term() instanceof IntegerTerm i) lit = i;
+    if (lit == null || lit.recognition().shape() != AyaShape.NAT_SHAPE) return null;
+    var arith = recognize(def, lit, state);
+    if (arith.kind == Kind.NONE) return null;
+    var x = asNat(args.get(0).term(), lit);
+    var y = asNat(args.get(1).term(), lit);
+    if (x == null || y == null) return null;
+    return arith.compute(x, y, lit);
+  }
+
+  private @Nullable Term compute(@NotNull BigInteger x, @NotNull BigInteger y, @NotNull IntegerTerm lit) {
+    return switch (kind) {
+      case NONE -> null;
+      case ADD -> lit.destruct(x.add(y));
+      case MUL -> lit.destruct(x.multiply(y));
+      case SUB -> lit.destruct(x.subtract(y).max(BigInteger.ZERO));
+      case LE -> x.compareTo(y) <= 0 ? yes : no;
+      case LT -> x.compareTo(y) < 0 ? yes : no;
+      case EQ -> x.equals(y) ? yes : no;
+    };
+  }
+
+  /** @return the literal represented by a term, possibly with some constructors on top */
+  private static @Nullable BigInteger asNat(@NotNull Term term, @NotNull IntegerTerm lit) {
+    var zero = lit.ctorRef(CodeShape.MomentId.ZERO);
+    var suc = lit.ctorRef(CodeShape.MomentId.SUC);
+    var sucs = 0L;
+    while (term instanceof ConCall con && con.ref() == suc) {
+      sucs++;
+      term = con.conArgs().first().term();
+    }
+    BigInteger base;
+    if (term instanceof IntegerTerm i && i.recognition().shape() == AyaShape.NAT_SHAPE) base = i.repr();
+    else if (term instanceof ConCall con && con.ref() == zero) base = BigInteger.ZERO;
+    else return null;
+    return base.add(BigInteger.valueOf(sucs));
+  }
+
+  /** Recognition happens at most once per function, the result is cached in {@link FnDef#arith} */
+  private static @NotNull NatArith recognize(@NotNull FnDef def, @NotNull IntegerTerm lit, @NotNull TyckState state) {
+    var arith = def.arith;
+    if (arith != null) return arith;
+    // Guard against recursive recognition, the function is not arithmetic until proven otherwise
+    def.arith = NONE;
+    arith = new Recognizer(def, lit, new Expander.WHNFer(state)).recognize();
+    def.arith = arith;
+    return arith;
+  }
+
+  private static final class Recognizer {
+    private final @NotNull FnDef def;
+    private final @NotNull IntegerTerm lit;
+    private final @NotNull TyckState state;
+    private final @NotNull Expander.WHNFer whnf;
+    private final @NotNull CtorDef zero;
+    private final @NotNull CtorDef suc;
+    private final @NotNull Term x = new RefTerm(new LocalVar("x"));
+    private final @NotNull Term y = new RefTerm(new LocalVar("y"));
+
+    private Recognizer(@NotNull FnDef def, @NotNull IntegerTerm lit, @NotNull Expander.WHNFer whnf) {
+      this.def = def;
+      this.lit = lit;
+      this.state = whnf.state();
+      this.whnf = whnf;
+      this.zero = lit.ctorRef(CodeShape.MomentId.ZERO).core;
+      this.suc = lit.ctorRef(CodeShape.MomentId.SUC).core;
+    }
+
+    private @NotNull NatArith recognize() {
+      var tele = def.telescope;
+      if (!tele.sizeEquals(2) || !isNat(tele.get(0).type()) || !isNat(tele.get(1).type())) return NONE;
+      if (isNat(def.result)) {
+        if (isAdd()) return new NatArith(Kind.ADD);
+        if (isMul()) return new NatArith(Kind.MUL);
+        if (isSub()) return new NatArith(Kind.SUB);
+        return NONE;
+      }
+      if (!same(unfold(suc(x), suc(y)), call(def, x, y))) return NONE;
+      // f 0 y = yes, f (suc x) 0 = no
+      var yes = unfold(zero(), y);
+      var no = unfold(suc(x), zero());
+      if (isConst(yes) && isConst(no)) return new NatArith(Kind.LE, yes, no);
+      // f x 0 = no, f 0 (suc y) = yes
+      no = unfold(x, zero());
+      yes = unfold(zero(), suc(y));
+      if (isConst(yes) && isConst(no)) return new NatArith(Kind.LT, yes, no);
+      // f 0 0 = yes, f 0 (suc y) = no = f (suc x) 0
+      yes = unfold(zero(), zero());
+      no = unfold(zero(), suc(y));
+      if (isConst(yes) && isConst(no) && same(unfold(suc(x), zero()), no))
+        return new NatArith(Kind.EQ, yes, no);
+      return NONE;
+    }
+
+    private boolean isAdd() {
+      var fxy = call(def, x, y);
+      // Recursion on the first argument, then on the second
+      if (same(unfold(zero(), y), y)) {
+        var step = unfold(suc(x), y);
+        if (same(step, suc(fxy)) || same(step, call(def, x, suc(y)))) return true;
+      }
+      if (same(unfold(x, zero()), x)) {
+        var step = unfold(x, suc(y));
+        return same(step, suc(fxy)) || same(step, call(def, suc(x), y));
+      }
+      return false;
+    }
+
+    private boolean isMul() {
+      var fxy = call(def, x, y);
+      if (isZero(unfold(zero(), y)) && isAddOf(unfold(suc(x), y), y, fxy)) return true;
+      return isZero(unfold(x, zero())) && isAddOf(unfold(x, suc(y)), x, fxy);
+    }
+
+    private boolean isSub() {
+      return same(unfold(x, zero()), x)
+        && isZero(unfold(zero(), suc(y)))
+        && same(unfold(suc(x), suc(y)), call(def, x, y));
+    }
+
+    /** @return true if <code>term</code> is the sum of <code>a</code> and <code>b</code>, in any order */
+    private boolean isAddOf(@NotNull Term term, @NotNull Term a, @NotNull Term b) {
+      if (!(term instanceof FnCall fn) || fn.ref() == def.ref) return false;
+      var g = fn.ref().core;
+      if (g == null || !fn.args().sizeEquals(2) || recognize(g, lit, state).kind != Kind.ADD) return false;
+      var l = fn.args().get(0).term();
+      var r = fn.args().get(1).term();
+      return same(l, a) && same(r, b) || same(l, b) && same(r, a);
+    }
+
+    private boolean isNat(@NotNull Term type) {
+      return type instanceof DataCall data && data.ref() == lit.type().ref();
+    }
+
+    private boolean isZero(@NotNull Term term) {
+      return term instanceof IntegerTerm i && i.repr().signum() == 0
+        || term instanceof ConCall con && con.ref() == zero.ref;
+    }
+
+    private boolean same(@NotNull Term actual, @NotNull Term expected) {
+      return isZero(expected) ? isZero(actual) : actual.equals(expected);
+    }
+
+    /** Closed terms that are not stuck on the arguments */
+    private static boolean isConst(@NotNull Term term) {
+      return !VarSummary.hasLocals(term) && !VarSummary.hasMetas(term);
+    }
+
+    private @NotNull Term zero() {
+      return lit.makeZero(zero);
+    }
+
+    private @NotNull Term suc(@NotNull Term term) {
+      return lit.makeSuc(suc, new Arg<>(term, true));
+    }
+
+    private @NotNull Term unfold(@NotNull Term a, @NotNull Term b) {
+      return whnf.apply(call(def, a, b));
+    }
+
+    private static @NotNull Term call(@NotNull FnDef fn, @NotNull Term a, @NotNull Term b) {
+      var tele = fn.telescope;
+      return new FnCall(fn.ref, 0, ImmutableSeq.of(
+        new Arg<>(a, tele.get(0).explicit()),
+        new Arg<>(b, tele.get(1).explicit())));
+    }
+  }
+}
@@ -0,0 +1,1166 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.core.serde;
+
+import kala.collection.immutable.ImmutableMap;
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableLinkedHashMap;
+import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableMap;
+import kala.control.Either;
+import kala.control.Option;
+import org.aya.core.def.PrimDef;
+import org.aya.core.repr.CodeShape;
+import org.aya.generic.Modifier;
+import org.aya.generic.SortKind;
+import org.aya.generic.util.Lazy;
+import org.aya.guest0x0.cubical.Formula;
+import org.aya.guest0x0.cubical.Partial;
+import org.aya.guest0x0.cubical.Restr;
+import org.aya.util.binop.Assoc;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The binary format of .ayac files. A file consists of
+ * <ol>
+ *   <li>the magic number and the {@link #VERSION},</li>
+ *   <li>the {@link Stamp}, which is read without decoding the rest of the file,</li>
+ *   <li>the string table, each string is written once per file,</li>
+ *   <li>the module table, module names as indices into the string table,</li>
+ *   <li>the fields of the {@link CompiledAya}.</li>
+ * </ol>
+ * Tags, sizes, enum ordinals and indices into the tables are written as variable-length integers,
+ * so most of them take a single byte.
+ * A {@link SerDef.QName} is a module index and a string index.
+ * <p>
+ * A term written more than once, which is the same {@link SerTerm} object since the {@link Serializer}
+ * interns them, is written in full once, and referenced by its index afterwards.
+ * The shared terms are numbered in the order they are completely written, and read as {@link SerTerm.Shared},
+ * so they are deserialized once. A section can reference the shared terms written before it,
+ * but not the other way around, since the sections are decoded separately.
+ * <p>
+ * The bodies of functions and the clauses of constructors are sections prefixed by their size in bytes,
+ * so they are skipped when the file is read and decoded when they are first unfolded.
+ * The file is mapped into memory where possible, and replaced atomically when written,
+ * so the sections that are not yet decoded never see a half-written file.
+ * <p>
+ * The interface hash is computed from the same encoding, with the local variables numbered per file,
+ * and without the bodies of opaque functions and the fingerprints, which cannot affect the importers.
+ * The bodies of the other functions are included, since the importers may unfold them.
+ * <p>
+ * Bump {@link #VERSION} whenever the serialized classes or the order of their tags change,
+ * files written by other versions are rejected.
+ *
+ * @see CompiledAya
+ */
+public final class AyacFormat {
+  private static final int MAGIC = 0x41594143; // "AYAC"
+  /** The magic number, the version and the {@link Stamp} */
+  private static final int HEADER_SIZE = Integer.BYTES * 2 + Long.BYTES * 2;
+  // FNV-1a, like DeclFingerprint
+  private static final long OFFSET = 0xcbf29ce484222325L;
+  private static final long PRIME = 0x100000001b3L;
+  public static final int VERSION = 4;
+
+  private static final SortKind[] SORT_KINDS = SortKind.values();
+  private static final Modifier[] MODIFIERS = Modifier.values();
+  private static final PrimDef.ID[] PRIM_IDS = PrimDef.ID.values();
+  private static final Assoc[] ASSOCS = Assoc.values();
+  private static final CodeShape.MomentId[] MOMENT_IDS = CodeShape.MomentId.values();
+  private static final SerDef.SerAyaShape[] SHAPES = SerDef.SerAyaShape.values();
+  /** Mapped files cannot be deleted or replaced on Windows until they are garbage collected */
+  private static final boolean MAP_FILES = !System.getProperty("os.name", "").startsWith("Windows");
+
+  private AyacFormat() {
+  }
+
+  /**
+   * The hashes stored in the header of a file, 0 if unknown.
+   *
+   * @param sourceHash    the {@link #hash} of the source file
+   * @param interfaceHash the hash of what the importers of the module can see: its definitions
+   *                      (except the bodies of opaque functions), operators, exports and re-exports,
+   *                      and the interface hashes of its imports, since the definitions unfold to theirs
+   */
+  public record Stamp(long sourceHash, long interfaceHash) {
+  }
+
+  /** @return the 64-bit FNV-1a hash of the bytes, never 0, which means unknown */
+  public static long hash(byte @NotNull [] bytes) {
+    return known(mix(OFFSET, ByteBuffer.wrap(bytes)));
+  }
+
+  /** @return the hash of the hashes in order, 0 if any of them is unknown */
+  public static long combine(@NotNull ImmutableSeq<Long> hashes) {
+    if (hashes.contains(0L)) return 0;
+    var hash = OFFSET;
+    for (var h : hashes) hash = mix(hash, h);
+    return known(hash);
+  }
+
+  /**
+   * @param importsHash the {@link #combine}d interface hashes of the imports
+   * @return 0 if the imports are unknown
+   * @see Stamp#interfaceHash()
+   */
+  public static long interfaceHash(@NotNull CompiledAya compiledAya, long importsHash) {
+    if (importsHash == 0) return 0;
+    var hash = OFFSET;
+    for (var buffer : new Writer(true).write(compiledAya, new Stamp(0, 0))) hash = mix(hash, buffer);
+    return known(mix(hash, importsHash));
+  }
+
+  private static long mix(long hash, @NotNull ByteBuffer buffer) {
+    for (int i = buffer.position(); i < buffer.limit(); i++) hash = (hash ^ (buffer.get(i) & 0xff)) * PRIME;
+    return hash;
+  }
+
+  private static long mix(long hash, long value) {
+    for (int i = 0; i < Long.BYTES; i++, value >>>= 8) hash = (hash ^ (value & 0xff)) * PRIME;
+    return hash;
+  }
+
+  private static long known(long hash) {
+    return hash == 0 ? 1 : hash;
+  }
+
+  public static void write(@NotNull CompiledAya compiledAya, @NotNull Path path) throws IOException {
+    write(compiledAya, 0, 0, path);
+  }
+
+  /**
+   * @param sourceHash  the {@link #hash} of the source file
+   * @param importsHash see {@link #interfaceHash}
+   */
+  public static void write(
+    @NotNull CompiledAya compiledAya, long sourceHash, long importsHash,
+    @NotNull Path path
+  ) throws IOException {
+    Files.createDirectories(path.toAbsolutePath().getParent());
+    var stamp = new Stamp(sourceHash, interfaceHash(compiledAya, importsHash));
+    var buffers = new Writer(false).write(compiledAya, stamp);
+    var temp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+      StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      var remaining = Arrays.stream(buffers).mapToLong(ByteBuffer::remaining).sum();
+      while (remaining > 0) remaining -= channel.write(buffers);
+    }
+    // the old file may still be mapped by a loaded module
+    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  public static byte @NotNull [] toBytes(@NotNull CompiledAya compiledAya) {
+    var buffers = new Writer(false).write(compiledAya, new Stamp(0, 0));
+    var bytes = ByteBuffer.allocate(Arrays.stream(buffers).mapToInt(ByteBuffer::remaining).sum());
+    for (var buffer : buffers) bytes.put(buffer);
+    return bytes.array();
+  }
+
+  public static @NotNull CompiledAya read(@NotNull Path path) throws IOException {
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      var size = channel.size();
+      if (size > Integer.MAX_VALUE) throw new IOException("Compiled Aya file too large: " + path);
+      if (MAP_FILES) return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+      var buffer = ByteBuffer.allocate((int) size);
+      while (buffer.hasRemaining()) if (channel.read(buffer) < 0) break;
+      return read(buffer.flip());
+    }
+  }
+
+  /** @throws IOException if the buffer is not a compiled Aya file of this version */
+  public static @NotNull CompiledAya read(@NotNull ByteBuffer buffer) throws IOException {
+    try {
+      stamp(buffer);
+      return new Reader(buffer).compiledAya();
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated compiled Aya file", e);
+    }
+  }
+
+  /**
+   * Reads the header of a file only.
+   *
+   * @throws IOException if the file is not a compiled Aya file of this version
+   */
+  public static @NotNull Stamp readStamp(@NotNull Path path) throws IOException {
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      var buffer = ByteBuffer.allocate(HEADER_SIZE);
+      while (buffer.hasRemaining()) if (channel.read(buffer) < 0) break;
+      return stamp(buffer.flip());
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated compiled Aya file", e);
+    }
+  }
+
+  private static @NotNull Stamp stamp(@NotNull ByteBuffer buffer) throws IOException {
+    if (buffer.getInt() != MAGIC) throw new IOException("Not a compiled Aya file");
+    var version = buffer.getInt();
+    if (version != VERSION)
+      throw new IOException("Compiled by an incompatible version: " + version + ", expected " + VERSION);
+    return new Stamp(buffer.getLong(), buffer.getLong());
+  }
+
+  /** A growable byte array */
+  private static final class Sink {
+    private byte[] bytes;
+    private int size = 0;
+
+    Sink(int capacity) {
+      bytes = new byte[capacity];
+    }
+
+    private void ensure(int more) {
+      if (size + more > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + more));
+    }
+
+    void u8(int b) {
+      ensure(1);
+      bytes[size++] = (byte) b;
+    }
+
+    void varInt(int value) {
+      ensure(5);
+      while ((value & ~0x7F) != 0) {
+        bytes[size++] = (byte) (value & 0x7F | 0x80);
+        value >>>= 7;
+      }
+      bytes[size++] = (byte) value;
+    }
+
+    void bytes(byte @NotNull [] array) {
+      varInt(array.length);
+      ensure(array.length);
+      System.arraycopy(array, 0, bytes, size, array.length);
+      size += array.length;
+    }
+
+    void append(@NotNull Sink sink) {
+      varInt(sink.size);
+      ensure(sink.size);
+      System.arraycopy(sink.bytes, 0, bytes, size, sink.size);
+      size += sink.size;
+    }
+
+    @NotNull ByteBuffer buffer() {
+      return ByteBuffer.wrap(bytes, 0, size);
+    }
+  }
+
+  private static final class Writer {
+    /** Whether to write what the interface hash is computed from, see {@link AyacFormat} */
+    private final boolean signature;
+    /** The local variables numbered per file, used by {@link #signature} only */
+    private final @NotNull MutableMap<Integer, Integer> locals = MutableMap.create();
+    private @NotNull Sink body = new Sink(4096);
+    private final @NotNull MutableMap<String, Integer> strings = MutableMap.create();
+    private final @NotNull MutableList<String> stringTable = MutableList.create();
+    private final @NotNull MutableMap<ImmutableSeq<String>, Integer> modules = MutableMap.create();
+    private final @NotNull MutableList<ImmutableSeq<String>> moduleTable = MutableList.create();
+    /** The places where the terms are written in full, in order, see {@link #term} */
+    private final @NotNull MutableList<Site> sites = MutableList.create();
+    /** The number of {@link #sites} visited by the second pass, -1 in the first pass */
+    private int visited = -1;
+    private @NotNull Scope scope = new Scope(null);
+
+    Writer(boolean signature) {
+      this.signature = signature;
+    }
+
+    /** A term written in full */
+    private static final class Site {
+      /** Whether it is referenced later, found by the first pass */
+      boolean shared;
+      int index;
+    }
+
+    /** The terms written in the file or a section, which can be referenced there */
+    private static final class Scope {
+      private final @Nullable Scope outer;
+      private final @NotNull IdentityHashMap<SerTerm, Site> sites = new IdentityHashMap<>();
+      /** The number of shared terms visible here */
+      private int size;
+
+      Scope(@Nullable Scope outer) {
+        this.outer = outer;
+        size = outer == null ? 0 : outer.size;
+      }
+
+      @Nullable Site get(@NotNull SerTerm term) {
+        for (var scope = this; scope != null; scope = scope.outer) {
+          var site = scope.sites.get(term);
+          if (site != null) return site;
+        }
+        return null;
+      }
+    }
+
+    /** @return the header with the string table, the module table, and the body */
+    ByteBuffer @NotNull [] write(@NotNull CompiledAya compiledAya, @NotNull Stamp stamp) {
+      // The first pass finds the terms referenced later, the second one writes them
+      compiledAya(compiledAya);
+      body = new Sink(4096);
+      scope = new Scope(null);
+      visited = 0;
+      compiledAya(compiledAya);
+      // modules first, they add to the strings
+      var modules = new Sink(256);
+      modules.varInt(moduleTable.size());
+      moduleTable.forEach(mod -> {
+        modules.varInt(mod.size());
+        mod.forEach(s -> modules.varInt(string(s)));
+      });
+      var header = new Sink(4096);
+      header.u8(MAGIC >>> 24);
+      header.u8(MAGIC >>> 16);
+      header.u8(MAGIC >>> 8);
+      header.u8(MAGIC);
+      header.u8(VERSION >>> 24);
+      header.u8(VERSION >>> 16);
+      header.u8(VERSION >>> 8);
+      header.u8(VERSION);
+      for (var hash : new long[]{stamp.sourceHash(), stamp.interfaceHash()})
+        for (int shift = Long.SIZE - 8; shift >= 0; shift -= 8) header.u8((int) (hash >>> shift));
+      header.varInt(stringTable.size());
+      stringTable.forEach(s -> header.bytes(s.getBytes(StandardCharsets.UTF_8)));
+      return new ByteBuffer[]{header.buffer(), modules.buffer(), body.buffer()};
+    }
+
+    private int string(@NotNull String s) {
+      return strings.getOrPut(s, () -> {
+        stringTable.append(s);
+        return stringTable.size() - 1;
+      });
+    }
+
+    private void str(@NotNull String s) {
+      body.varInt(string(s));
+    }
+
+    private void module(@NotNull ImmutableSeq<String> mod) {
+      body.varInt(modules.getOrPut(mod, () -> {
+        moduleTable.append(mod);
+        return moduleTable.size() - 1;
+      }));
+    }
+
+    private void bool(boolean b) {
+      body.u8(b ? 1 : 0);
+    }
+
+    private void signed(int value) {
+      body.varInt(value << 1 ^ value >> 31);
+    }
+
+    private void u64(long value) {
+      for (int i = 0; i < Long.BYTES; i++, value >>>= 8) body.u8((int) value);
+    }
+
+    private void integer(@NotNull BigInteger integer) {
+      body.bytes(integer.toByteArray());
+    }
+
+    /** Writes the content prefixed by its size, see {@link Reader#section} */
+    private void section(@NotNull Runnable content) {
+      var outer = body;
+      var outerScope = scope;
+      body = new Sink(256);
+      scope = new Scope(outerScope);
+      content.run();
+      outer.append(body);
+      body = outer;
+      scope = outerScope;
+    }
+
+    private <T> void seq(@NotNull ImmutableSeq<T> seq, @NotNull Consumer<T> element) {
+      body.varInt(seq.size());
+      seq.forEach(element);
+    }
+
+    private <K, V> void map(
+      @NotNull ImmutableMap<K, V> map,
+      @NotNull Consumer<K> key,
+      @NotNull Consumer<V> value
+    ) {
+      body.varInt(map.size());
+      map.forEach((k, v) -> {
+        key.accept(k);
+        value.accept(v);
+      });
+    }
+
+    private void qname(@NotNull SerDef.QName name) {
+      module(name.mod());
+      str(name.name());
+    }
+
+    private void compiledAya(@NotNull CompiledAya compiledAya) {
+      seq(compiledAya.imports(), this::module);
+      seq(compiledAya.exports(), this::qname);
+      map(compiledAya.reExports(), this::module, useHide -> {
+        bool(useHide.isUsing());
+        seq(useHide.names(), this::str);
+        map(useHide.renames(), this::str, this::str);
+      });
+      seq(compiledAya.serDefs(), this::def);
+      seq(compiledAya.serOps(), op -> {
+        qname(op.name());
+        body.varInt(op.assoc().ordinal());
+        bind(op.bind());
+      });
+      map(compiledAya.opRename(), this::qname, op -> {
+        str(op.name());
+        body.varInt(op.assoc().ordinal());
+        bind(op.bind());
+      });
+      if (!signature) map(compiledAya.fingerprints(), this::qname, this::u64);
+    }
+
+    private void bind(@NotNull SerDef.SerBind bind) {
+      seq(bind.loosers(), this::qname);
+      seq(bind.tighters(), this::qname);
+    }
+
+    private void def(@NotNull SerDef def) {
+      switch (def) {
+        case SerDef.Fn fn -> {
+          body.varInt(0);
+          qname(fn.name());
+          params(fn.telescope());
+          if (!signature || !fn.modifiers().contains(Modifier.Opaque)) section(() -> {
+            var fnBody = fn.body().get();
+            if (fnBody.isLeft()) {
+              bool(true);
+              term(fnBody.getLeftValue());
+            } else {
+              bool(false);
+              seq(fnBody.getRightValue(), this::clause);
+            }
+          });
+          var modifiers = 0;
+          for (var modifier : fn.modifiers()) modifiers |= 1 << modifier.ordinal();
+          body.varInt(modifiers);
+          term(fn.result());
+          signed(fn.height());
+        }
+        case SerDef.Ctor ctor -> {
+          body.varInt(1);
+          ctor(ctor);
+        }
+        case SerDef.Data data -> {
+          body.varInt(2);
+          qname(data.name());
+          params(data.telescope());
+          sort(data.resultLift());
+          seq(data.bodies(), this::ctor);
+        }
+        case SerDef.Field field -> {
+          body.varInt(3);
+          field(field);
+        }
+        case SerDef.Struct struct -> {
+          body.varInt(4);
+          qname(struct.name());
+          params(struct.telescope());
+          sort(struct.resultLift());
+          seq(struct.fields(), this::field);
+        }
+        case SerDef.Prim prim -> {
+          body.varInt(5);
+          module(prim.module());
+          body.varInt(prim.name().ordinal());
+        }
+      }
+    }
+
+    private void ctor(@NotNull SerDef.Ctor ctor) {
+      qname(ctor.data());
+      qname(ctor.self());
+      seq(ctor.pats(), this::pat);
+      params(ctor.ownerTele());
+      params(ctor.selfTele());
+      section(() -> partial(ctor.clauses().get()));
+      term(ctor.result());
+      bool(ctor.coerce());
+    }
+
+    private void field(@NotNull SerDef.Field field) {
+      qname(field.struct());
+      qname(field.self());
+      params(field.ownerTele());
+      params(field.selfTele());
+      term(field.result());
+      bool(field.body().isDefined());
+      if (field.body().isDefined()) term(field.body().get());
+      bool(field.coerce());
+    }
+
+    private void shape(@NotNull SerDef.SerShapeResult shape) {
+      body.varInt(shape.shape().ordinal());
+      map(shape.captures(), moment -> body.varInt(moment.ordinal()), this::qname);
+    }
+
+    private void pat(@NotNull SerPat pat) {
+      switch (pat) {
+        case SerPat.Absurd absurd -> {
+          body.varInt(0);
+          bool(absurd.explicit());
+        }
+        case SerPat.Tuple tuple -> {
+          body.varInt(1);
+          bool(tuple.explicit());
+          seq(tuple.pats(), this::pat);
+        }
+        case SerPat.Bind bind -> {
+          body.varInt(2);
+          bool(bind.explicit());
+          local(bind.var());
+          term(bind.ty());
+        }
+        case SerPat.Ctor ctor -> {
+          body.varInt(3);
+          bool(ctor.explicit());
+          qname(ctor.name());
+          seq(ctor.params(), this::pat);
+          call(ctor.ty());
+        }
+        case SerPat.End end -> {
+          body.varInt(4);
+          bool(end.isOne());
+          bool(end.explicit());
+        }
+        case SerPat.ShapedInt lit -> {
+          body.varInt(5);
+          integer(lit.integer());
+          bool(lit.explicit());
+          shape(lit.shape());
+          call(lit.type());
+        }
+      }
+    }
+
+    private void clause(@NotNull SerPat.Clause clause) {
+      seq(clause.pats(), this::pat);
+      term(clause.body());
+    }
+
+    private void local(@NotNull SerTerm.SimpVar var) {
+      // the numbers are shared by the modules compiled together, so they depend on the order of compilation
+      signed(signature ? locals.getOrPut(var.var(), locals::size) : var.var());
+      str(var.name());
+    }
+
+    private void param(@NotNull SerTerm.SerParam param) {
+      bool(param.explicit());
+      local(param.var());
+      term(param.term());
+    }
+
+    private void params(@NotNull ImmutableSeq<SerTerm.SerParam> params) {
+      seq(params, this::param);
+    }
+
+    private void arg(@NotNull SerTerm.SerArg arg) {
+      term(arg.arg());
+      bool(arg.explicit());
+    }
+
+    private void args(@NotNull ImmutableSeq<SerTerm.SerArg> args) {
+      seq(args, this::arg);
+    }
+
+    private void callData(@NotNull SerTerm.CallData data) {
+      signed(data.ulift());
+      args(data.args());
+    }
+
+    private void call(@NotNull SerTerm.Data data) {
+      qname(data.name());
+      callData(data.data());
+    }
+
+    private void sort(@NotNull SerTerm.Sort sort) {
+      body.varInt(sort.kind().ordinal());
+      signed(sort.lift());
+    }
+
+    private void cube(@NotNull SerTerm.SerCube cube) {
+      seq(cube.params(), this::local);
+      term(cube.type());
+      partial(cube.partial());
+    }
+
+    private void partial(@NotNull Partial<SerTerm> partial) {
+      switch (partial) {
+        case Partial.Const<SerTerm> sad -> {
+          body.varInt(0);
+          term(sad.u());
+        }
+        case Partial.Split<SerTerm> hap -> {
+          body.varInt(1);
+          seq(hap.clauses(), side -> {
+            conj(side.cof());
+            term(side.u());
+          });
+        }
+      }
+    }
+
+    private void restr(@NotNull Restr<SerTerm> restr) {
+      switch (restr) {
+        case Restr.Disj<SerTerm> disj -> {
+          body.varInt(0);
+          seq(disj.orz(), this::conj);
+        }
+        case Restr.Const<SerTerm>(var one) -> {
+          body.varInt(1);
+          bool(one);
+        }
+      }
+    }
+
+    private void conj(@NotNull Restr.Conj<SerTerm> conj) {
+      seq(conj.ands(), cond -> {
+        term(cond.inst());
+        bool(cond.isOne());
+      });
+    }
+
+    private void formula(@NotNull Formula<SerTerm> formula) {
+      switch (formula) {
+        case Formula.Conn<SerTerm> conn -> {
+          body.varInt(0);
+          bool(conn.isAnd());
+          term(conn.l());
+          term(conn.r());
+        }
+        case Formula.Inv<SerTerm> inv -> {
+          body.varInt(1);
+          term(inv.i());
+        }
+        case Formula.Lit<SerTerm>(var one) -> {
+          body.varInt(2);
+          bool(one);
+        }
+      }
+    }
+
+    private void term(@NotNull SerTerm term) {
+      var site = scope.get(term);
+      if (site != null) {
+        site.shared = true;
+        body.varInt(29);
+        body.varInt(site.index);
+        return;
+      }
+      if (visited < 0) sites.append(site = new Site());
+      else site = sites.get(visited++);
+      if (site.shared) body.varInt(30);
+      content(term);
+      // The first pass does not know which terms are shared, so it remembers all of them
+      if (visited < 0 || site.shared) {
+        site.index = scope.size++;
+        scope.sites.put(term, site);
+      }
+    }
+
+    private void content(@NotNull SerTerm term) {
+      switch (term) {
+        case SerTerm.Shared shared -> content(shared.term());
+        case SerTerm.Pi pi -> {
+          body.varInt(0);
+          param(pi.param());
+          term(pi.body());
+        }
+        case SerTerm.Sigma sigma -> {
+          body.varInt(1);
+          params(sigma.params());
+        }
+        case SerTerm.Sort sort -> {
+          body.varInt(2);
+          sort(sort);
+        }
+        case SerTerm.Ref ref -> {
+          body.varInt(3);
+          local(ref.var());
+        }
+        case SerTerm.Lam lam -> {
+          body.varInt(4);
+          param(lam.param());
+          term(lam.body());
+        }
+        case SerTerm.New neu -> {
+          body.varInt(5);
+          qname(neu.call().name());
+          callData(neu.call().data());
+          map(neu.map(), this::qname, this::term);
+        }
+        case SerTerm.Proj proj -> {
+          body.varInt(6);
+          term(proj.of());
+          signed(proj.ix());
+        }
+        case SerTerm.Match match -> {
+          body.varInt(7);
+          seq(match.of(), this::term);
+          seq(match.clauses(), this::clause);
+        }
+        case SerTerm.App app -> {
+          body.varInt(8);
+          term(app.of());
+          arg(app.arg());
+        }
+        case SerTerm.Struct struct -> {
+          body.varInt(9);
+          qname(struct.name());
+          callData(struct.data());
+        }
+        case SerTerm.Fn fn -> {
+          body.varInt(10);
+          qname(fn.name());
+          callData(fn.data());
+        }
+        case SerTerm.Data data -> {
+          body.varInt(11);
+          call(data);
+        }
+        case SerTerm.Prim prim -> {
+          body.varInt(12);
+          qname(prim.name());
+          body.varInt(prim.id().ordinal());
+          callData(prim.data());
+        }
+        case SerTerm.Con con -> {
+          body.varInt(13);
+          qname(con.dataRef());
+          qname(con.selfRef());
+          callData(con.dataArgs());
+          args(con.conArgs());
+        }
+        case SerTerm.Tup tup -> {
+          body.varInt(14);
+          seq(tup.components(), this::term);
+        }
+        case SerTerm.Access access -> {
+          body.varInt(15);
+          term(access.of());
+          qname(access.ref());
+          args(access.structArgs());
+          args(access.fieldArgs());
+        }
+        case SerTerm.FieldRef field -> {
+          body.varInt(16);
+          qname(field.name());
+        }
+        case SerTerm.Interval ignored -> body.varInt(17);
+        case SerTerm.Mula mula -> {
+          body.varInt(18);
+          formula(mula.formula());
+        }
+        case SerTerm.ShapedInt lit -> {
+          body.varInt(19);
+          integer(lit.integer());
+          shape(lit.shape());
+          call(lit.type());
+        }
+        case SerTerm.ShapedList list -> {
+          body.varInt(20);
+          seq(list.repr(), this::term);
+          shape(list.shape());
+          call(list.type());
+        }
+        case SerTerm.Str str -> {
+          body.varInt(21);
+          str(str.string());
+        }
+        case SerTerm.PartEl el -> {
+          body.varInt(22);
+          partial(el.partial());
+          term(el.rhsType());
+        }
+        case SerTerm.PartTy ty -> {
+          body.varInt(23);
+          term(ty.type());
+          restr(ty.restr());
+        }
+        case SerTerm.Path path -> {
+          body.varInt(24);
+          cube(path.cube());
+        }
+        case SerTerm.PathLam lam -> {
+          body.varInt(25);
+          seq(lam.params(), this::local);
+          term(lam.body());
+        }
+        case SerTerm.PathApp app -> {
+          body.varInt(26);
+          term(app.of());
+          args(app.args());
+          cube(app.cube());
+        }
+        case SerTerm.Coe coe -> {
+          body.varInt(27);
+          term(coe.type());
+          restr(coe.restr());
+        }
+        case SerTerm.Erased erased -> {
+          body.varInt(28);
+          term(erased.type());
+          bool(erased.isProp());
+        }
+      }
+    }
+  }
+
+  private static final class Reader {
+    private final @NotNull ByteBuffer buffer;
+    private final String @NotNull [] strings;
+    private final ImmutableSeq<String> @NotNull [] modules;
+    /** The names are shared, indexed by the module and the name, also used to lock the sections */
+    private final @NotNull MutableMap<Long, SerDef.QName> names;
+    /** The shared terms read here, numbered from {@link #base}, see {@link Writer#term} */
+    private final @NotNull MutableList<SerTerm> shared = MutableList.create();
+    /** The reader of the file if this reads a section, which has the shared terms before {@link #base} */
+    private final @Nullable Reader outer;
+    private final int base;
+
+    @SuppressWarnings("unchecked") Reader(@NotNull ByteBuffer buffer) {
+      this.buffer = buffer;
+      names = MutableMap.create();
+      outer = null;
+      base = 0;
+      strings = new String[varInt()];
+      for (int i = 0; i < strings.length; i++) {
+        var bytes = new byte[varInt()];
+        buffer.get(bytes);
+        strings[i] = new String(bytes, StandardCharsets.UTF_8);
+      }
+      modules = new ImmutableSeq[varInt()];
+      for (int i = 0; i < modules.length; i++) modules[i] = seq(this::str);
+    }
+
+    private Reader(
+      @NotNull ByteBuffer buffer, String @NotNull [] strings, ImmutableSeq<String> @NotNull [] modules,
+      @NotNull MutableMap<Long, SerDef.QName> names, @NotNull Reader outer, int base
+    ) {
+      this.buffer = buffer;
+      this.strings = strings;
+      this.modules = modules;
+      this.names = names;
+      this.outer = outer;
+      this.base = base;
+    }
+
+    private int varInt() {
+      var result = 0;
+      for (int shift = 0; shift < 35; shift += 7) {
+        var b = buffer.get();
+        result |= (b & 0x7F) << shift;
+        if (b >= 0) return result;
+      }
+      throw new SerDef.DeserializeException("Malformed integer in compiled Aya file");
+    }
+
+    private int signed() {
+      var value = varInt();
+      return value >>> 1 ^ -(value & 1);
+    }
+
+    private boolean bool() {
+      return buffer.get() != 0;
+    }
+
+    private long u64() {
+      var value = 0L;
+      for (int i = 0; i < Long.BYTES; i++) value |= (buffer.get() & 0xFFL) << (i * 8);
+      return value;
+    }
+
+    private @NotNull BigInteger integer() {
+      var bytes = new byte[varInt()];
+      buffer.get(bytes);
+      return new BigInteger(bytes);
+    }
+
+    private int index(int size) {
+      var index = varInt();
+      if (index >= size) throw new SerDef.DeserializeException("Bad index in compiled Aya file: " + index);
+      return index;
+    }
+
+    private <E extends Enum<E>> @NotNull E enumOf(E @NotNull [] values) {
+      return values[index(values.length)];
+    }
+
+    private @NotNull String str() {
+      return strings[index(strings.length)];
+    }
+
+    private @NotNull ImmutableSeq<String> module() {
+      return modules[index(modules.length)];
+    }
+
+    private @NotNull SerDef.QName qname() {
+      var mod = index(modules.length);
+      var name = index(strings.length);
+      return names.getOrPut((long) mod << 32 | name, () -> new SerDef.QName(modules[mod], strings[name]));
+    }
+
+    /** Skips a section, and decodes it on first use, see {@link Writer#section} */
+    private <T> @NotNull Lazy<T> section(@NotNull Function<Reader, T> content) {
+      var size = varInt();
+      var start = buffer.position();
+      if (size > buffer.remaining()) throw new BufferUnderflowException();
+      buffer.position(start + size);
+      var base = this.base + shared.size();
+      return Lazy.of(() -> {
+        // the sections may be decoded by the definitions checked in parallel
+        synchronized (names) {
+          var reader = new Reader(buffer.slice(start, size), strings, modules, names, this, base);
+          try {
+            var value = content.apply(reader);
+            if (reader.buffer.hasRemaining()) throw new SerDef.DeserializeException("Trailing bytes in compiled Aya file");
+            return value;
+          } catch (BufferUnderflowException e) {
+            throw new SerDef.DeserializeException("Truncated compiled Aya file");
+          }
+        }
+      });
+    }
+
+    private <T> @NotNull ImmutableSeq<T> seq(@NotNull Supplier<T> element) {
+      var size = varInt();
+      if (size == 0) return ImmutableSeq.empty();
+      var list = MutableList.<T>create();
+      for (int i = 0; i < size; i++) list.append(element.get());
+      return list.toImmutableSeq();
+    }
+
+    private <K, V> @NotNull ImmutableMap<K, V> map(@NotNull Supplier<K> key, @NotNull Supplier<V> value) {
+      var size = varInt();
+      if (size == 0) return ImmutableMap.empty();
+      var map = MutableLinkedHashMap.<K, V>of();
+      for (int i = 0; i < size; i++) {
+        var k = key.get();
+        map.put(k, value.get());
+      }
+      return ImmutableMap.from(map);
+    }
+
+    private @NotNull CompiledAya compiledAya() {
+      var imports = seq(this::module);
+      var exports = seq(this::qname);
+      var reExports = map(this::module, () -> new CompiledAya.SerUseHide(bool(), seq(this::str), map(this::str, this::str)));
+      var serDefs = seq(this::def);
+      var serOps = seq(() -> new SerDef.SerOp(qname(), enumOf(ASSOCS), bind()));
+      var opRename = map(this::qname, () -> new SerDef.SerRenamedOp(str(), enumOf(ASSOCS), bind()));
+      var fingerprints = map(this::qname, this::u64);
+      if (buffer.hasRemaining()) throw new SerDef.DeserializeException("Trailing bytes in compiled Aya file");
+      return new CompiledAya(imports, exports, reExports, serDefs, serOps, opRename, fingerprints);
+    }
+
+    private @NotNull SerDef.SerBind bind() {
+      var loosers = seq(this::qname);
+      var tighters = seq(this::qname);
+      return loosers.isEmpty() && tighters.isEmpty() ? SerDef.SerBind.EMPTY : new SerDef.SerBind(loosers, tighters);
+    }
+
+    private @NotNull SerDef def() {
+      return switch (varInt()) {
+        case 0 -> {
+          var name = qname();
+          var telescope = params();
+          Lazy<Either<SerTerm, ImmutableSeq<SerPat.Clause>>> body = section(reader -> reader.bool()
+            ? Either.left(reader.term())
+            : Either.right(reader.seq(reader::clause)));
+          var modifiers = EnumSet.noneOf(Modifier.class);
+          var mask = varInt();
+          for (var modifier : MODIFIERS) if ((mask & 1 << modifier.ordinal()) != 0) modifiers.add(modifier);
+          yield new SerDef.Fn(name, telescope, body, modifiers, term(), signed());
+        }
+        case 1 -> ctor();
+        case 2 -> new SerDef.Data(qname(), params(), sort(), seq(this::ctor));
+        case 3 -> field();
+        case 4 -> new SerDef.Struct(qname(), params(), sort(), seq(this::field));
+        case 5 -> new SerDef.Prim(module(), enumOf(PRIM_IDS));
+        default -> throw badTag("definition");
+      };
+    }
+
+    private @NotNull SerDef.Ctor ctor() {
+      return new SerDef.Ctor(qname(), qname(), seq(this::pat), params(), params(),
+        section(Reader::split), term(), bool());
+    }
+
+    private @NotNull SerDef.Field field() {
+      return new SerDef.Field(qname(), qname(), params(), params(), term(),
+        bool() ? Option.some(term()) : Option.none(), bool());
+    }
+
+    private @NotNull SerDef.SerShapeResult shape() {
+      return new SerDef.SerShapeResult(enumOf(SHAPES), map(() -> enumOf(MOMENT_IDS), this::qname));
+    }
+
+    private @NotNull SerPat pat() {
+      return switch (varInt()) {
+        case 0 -> new SerPat.Absurd(bool());
+        case 1 -> new SerPat.Tuple(bool(), seq(this::pat));
+        case 2 -> new SerPat.Bind(bool(), local(), term());
+        case 3 -> new SerPat.Ctor(bool(), qname(), seq(this::pat), call());
+        case 4 -> new SerPat.End(bool(), bool());
+        case 5 -> new SerPat.ShapedInt(integer(), bool(), shape(), call());
+        default -> throw badTag("pattern");
+      };
+    }
+
+    private @NotNull SerPat.Clause clause() {
+      return new SerPat.Clause(seq(this::pat), term());
+    }
+
+    private @NotNull SerTerm.SimpVar local() {
+      return new SerTerm.SimpVar(signed(), str());
+    }
+
+    private @NotNull SerTerm.SerParam param() {
+      return new SerTerm.SerParam(bool(), local(), term());
+    }
+
+    private @NotNull ImmutableSeq<SerTerm.SerParam> params() {
+      return seq(this::param);
+    }
+
+    private @NotNull SerTerm.SerArg arg() {
+      return new SerTerm.SerArg(term(), bool());
+    }
+
+    private @NotNull ImmutableSeq<SerTerm.SerArg> args() {
+      return seq(this::arg);
+    }
+
+    private @NotNull SerTerm.CallData callData() {
+      return new SerTerm.CallData(signed(), args());
+    }
+
+    private @NotNull SerTerm.Data call() {
+      return new SerTerm.Data(qname(), callData());
+    }
+
+    private @NotNull SerTerm.Sort sort() {
+      return new SerTerm.Sort(enumOf(SORT_KINDS), signed());
+    }
+
+    private @NotNull SerTerm.SerCube cube() {
+      return new SerTerm.SerCube(seq(this::local), term(), partial());
+    }
+
+    private @NotNull Partial<SerTerm> partial() {
+      return switch (varInt()) {
+        case 0 -> new Partial.Const<>(term());
+        case 1 -> new Partial.Split<>(sides());
+        default -> throw badTag("partial element");
+      };
+    }
+
+    private @NotNull Partial.Split<SerTerm> split() {
+      if (varInt() != 1) throw badTag("constructor clauses");
+      return new Partial.Split<>(sides());
+    }
+
+    private @NotNull ImmutableSeq<Restr.Side<SerTerm>> sides() {
+      return seq(() -> new Restr.Side<>(conj(), term()));
+    }
+
+    private @NotNull Restr<SerTerm> restr() {
+      return switch (varInt()) {
+        case 0 -> new Restr.Disj<>(seq(this::conj));
+        case 1 -> new Restr.Const<>(bool());
+        default -> throw badTag("restriction");
+      };
+    }
+
+    private @NotNull Restr.Conj<SerTerm> conj() {
+      return new Restr.Conj<>(seq(() -> new Restr.Cond<>(term(), bool())));
+    }
+
+    private @NotNull Formula<SerTerm> formula() {
+      return switch (varInt()) {
+        case 0 -> new Formula.Conn<>(bool(), term(), term());
+        case 1 -> new Formula.Inv<>(term());
+        case 2 -> new Formula.Lit<>(bool());
+        default -> throw badTag("formula");
+      };
+    }
+
+    private @NotNull SerTerm term() {
+      return switch (varInt()) {
+        case 0 -> new SerTerm.Pi(param(), term());
+        case 1 -> new SerTerm.Sigma(params());
+        case 2 -> sort();
+        case 3 -> new SerTerm.Ref(local());
+        case 4 -> new SerTerm.Lam(param(), term());
+        case 5 -> new SerTerm.New(new SerTerm.Struct(qname(), callData()), map(this::qname, this::term));
+        case 6 -> new SerTerm.Proj(term(), signed());
+        case 7 -> new SerTerm.Match(seq(this::term), seq(this::clause));
+        case 8 -> new SerTerm.App(term(), arg());
+        case 9 -> new SerTerm.Struct(qname(), callData());
+        case 10 -> new SerTerm.Fn(qname(), callData());
+        case 11 -> call();
+        case 12 -> new SerTerm.Prim(qname(), enumOf(PRIM_IDS), callData());
+        case 13 -> new SerTerm.Con(qname(), qname(), callData(), args());
+        case 14 -> new SerTerm.Tup(seq(this::term));
+        case 15 -> new SerTerm.Access(term(), qname(), args(), args());
+        case 16 -> new SerTerm.FieldRef(qname());
+        case 17 -> new SerTerm.Interval();
+        case 18 -> new SerTerm.Mula(formula());
+        case 19 -> new SerTerm.ShapedInt(integer(), shape(), call());
+        case 20 -> new SerTerm.ShapedList(seq(this::term), shape(), call());
+        case 21 -> new SerTerm.Str(str());
+        case 22 -> new SerTerm.PartEl(partial(), term());
+        case 23 -> new SerTerm.PartTy(term(), restr());
+        case 24 -> new SerTerm.Path(cube());
+        case 25 -> new SerTerm.PathLam(seq(this::local), term());
+        case 26 -> new SerTerm.PathApp(term(), args(), cube());
+        case 27 -> new SerTerm.Coe(term(), restr());
+        case 28 -> new SerTerm.Erased(term(), bool());
+        case 29 -> shared(varInt());
+        case 30 -> {
+          var term = new SerTerm.Shared(term());
+          shared.append(term);
+          yield term;
+        }
+        default -> throw badTag("term");
+      };
+    }
+
+    private @NotNull SerTerm shared(int index) {
+      if (index < base) {
+        assert outer != null;
+        return outer.shared(index);
+      }
+      if (index - base >= shared.size())
+        throw new SerDef.DeserializeException("Bad index in compiled Aya file: " + index);
+      return shared.get(index - base);
+    }
+
+    private @NotNull SerDef.DeserializeException badTag(@NotNull String what) {
+      return new SerDef.DeserializeException("Bad " + what + " in compiled Aya file");
+    }
+  }
+}
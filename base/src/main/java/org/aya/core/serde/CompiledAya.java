@@ -2,6 +2,7 @@
 // Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
 package org.aya.core.serde;
 
+import kala.collection.SeqView;
 import kala.collection.immutable.ImmutableMap;
 import kala.collection.immutable.ImmutableSeq;
 import kala.collection.mutable.MutableList;
@@ -10,7 +11,10 @@ import kala.tuple.Tuple;
 import kala.tuple.Tuple3;
 import org.aya.concrete.desugar.AyaBinOpSet;
 import org.aya.concrete.stmt.BindBlock;
+import org.aya.concrete.stmt.Command;
+import org.aya.concrete.stmt.Decl;
 import org.aya.concrete.stmt.Stmt;
+import org.aya.concrete.stmt.TeleDecl;
 import org.aya.concrete.stmt.UseHide;
 import org.aya.core.def.DataDef;
 import org.aya.core.def.GenericDef;
@@ -25,6 +29,7 @@ import org.aya.resolve.error.NameProblem;
 import org.aya.resolve.module.ModuleLoader;
 import org.aya.resolve.visitor.StmtResolver;
 import org.aya.resolve.visitor.StmtShallowResolver;
+import org.aya.tyck.order.DeclFingerprint;
 import org.aya.util.binop.OpDecl;
 import org.aya.util.error.SourcePos;
 import org.jetbrains.annotations.NotNull;
@@ -35,7 +40,9 @@ import java.util.function.Function;
 /**
  * The .ayac file representation.
  *
+ * @param fingerprints see {@link DeclFingerprint}, the unknown ones are not stored
  * @author kiva
+ * @see AyacFormat
  */
 public record CompiledAya(
   @NotNull ImmutableSeq<ImmutableSeq<String>> imports,
@@ -43,7 +50,8 @@ public record CompiledAya(
   @NotNull ImmutableMap<ImmutableSeq<String>, SerUseHide> reExports,
   @NotNull ImmutableSeq<SerDef> serDefs,
   @NotNull ImmutableSeq<SerDef.SerOp> serOps,
-  @NotNull ImmutableMap<SerDef.QName, SerDef.SerRenamedOp> opRename
+  @NotNull ImmutableMap<SerDef.QName, SerDef.SerRenamedOp> opRename,
+  @NotNull ImmutableMap<SerDef.QName, Long> fingerprints
 ) implements Serializable {
   /** @see org.aya.concrete.stmt.UseHide */
   record SerUseHide(
@@ -73,7 +81,7 @@ public record CompiledAya(
       throw new UnsupportedOperationException();
     }
 
-    var serialization = new Serialization(state, resolveInfo, MutableList.create(), MutableList.create());
+    var serialization = new Serialization(state, new Serializer(state), resolveInfo, MutableList.create(), MutableList.create());
     serialization.ser(defs);
 
     var modName = ctx.moduleName();
@@ -97,12 +105,17 @@ public record CompiledAya(
         })
         .filter(Tuple3::head) // should not serialize publicly renamed ops from upstreams
         .map(Tuple3::tail)
+        .toImmutableMap(),
+      defs.view().flatMap(CompiledAya::members)
+        .filter(ref -> ref.fingerprint != 0)
+        .map(ref -> Tuple.of(state.def(ref), ref.fingerprint))
         .toImmutableMap()
     );
   }
 
   private record Serialization(
     @NotNull Serializer.State state,
+    @NotNull Serializer serializer,
     @NotNull ResolveInfo resolveInfo,
     @NotNull MutableList<SerDef> serDefs,
     @NotNull MutableList<SerDef.SerOp> serOps
@@ -112,7 +125,7 @@ public record CompiledAya(
     }
 
     private void serDef(@NotNull GenericDef def) {
-      var serDef = new Serializer(state).serialize(def);
+      var serDef = serializer.serialize(def);
       serDefs.append(serDef);
       serOp(serDef, def);
       switch (serDef) {
@@ -137,6 +150,61 @@ public record CompiledAya(
     }
   }
 
+  /** @return the definition and its constructors or fields */
+  private static @NotNull SeqView<DefVar<?, ?>> members(@NotNull GenericDef def) {
+    return switch (def) {
+      case DataDef data -> SeqView.<DefVar<?, ?>>of(data.ref).appendedAll(data.body.view().map(ctor -> ctor.ref));
+      case StructDef struct -> SeqView.<DefVar<?, ?>>of(struct.ref).appendedAll(struct.fields.view().map(field -> field.ref));
+      default -> SeqView.<DefVar<?, ?>>of(def.ref());
+    };
+  }
+
+  /**
+   * Makes the references to the definitions of a module compiled from source, deserialized later, resolve to them.
+   * They replace the ones of the previous build, so the reused definitions refer to the ones checked again.
+   *
+   * @see #reuse(ResolveInfo, SerTerm.DeState)
+   */
+  public static void register(@NotNull ResolveInfo resolveInfo, @NotNull SerTerm.DeState state) {
+    topLevels(resolveInfo.program())
+      .filterNot(decl -> decl instanceof TeleDecl.PrimDecl)
+      .flatMap(DeclFingerprint::defs)
+      .forEach(state::register);
+  }
+
+  /**
+   * Deserializes the definitions of the previous build of a module whose fingerprints did not change
+   * into the definitions of the module compiled again, so they are not checked again.
+   * The module should be {@link #register}ed first.
+   *
+   * @see ResolveInfo#reused()
+   */
+  public void reuse(@NotNull ResolveInfo resolveInfo, @NotNull SerTerm.DeState deState) {
+    var state = deState.forFile();
+    var decls = MutableMap.<SerDef.QName, Decl.TopLevel>create();
+    topLevels(resolveInfo.program()).forEach(decl -> {
+      var ref = decl.ref();
+      if (ref.module != null) decls.put(new SerDef.QName(ref.module, ref.name()), decl);
+    });
+    serDefs.forEach(serDef -> {
+      if (serDef instanceof SerDef.Prim) return;
+      var name = nameOf(serDef);
+      var decl = decls.getOrNull(name);
+      if (decl == null || decl instanceof TeleDecl.PrimDecl) return;
+      var fingerprint = decl.ref().fingerprint;
+      if (fingerprint == 0 || fingerprint != fingerprints.getOrDefault(name, 0L)) return;
+      resolveInfo.reused().put(decl, serDef.de(state));
+    });
+  }
+
+  private static @NotNull SeqView<Decl.TopLevel> topLevels(@NotNull ImmutableSeq<Stmt> program) {
+    return program.view().flatMap(stmt -> switch (stmt) {
+      case Decl.TopLevel decl -> SeqView.of(decl);
+      case Command.Module module -> topLevels(module.contents());
+      default -> SeqView.<Decl.TopLevel>empty();
+    });
+  }
+
   private static SerDef.QName nameOf(@NotNull SerDef def) {
     return switch (def) {
       case SerDef.Fn fn -> fn.name();
@@ -148,7 +216,8 @@ public record CompiledAya(
     };
   }
 
-  public @NotNull ResolveInfo toResolveInfo(@NotNull ModuleLoader loader, @NotNull PhysicalModuleContext context, @NotNull SerTerm.DeState state) {
+  public @NotNull ResolveInfo toResolveInfo(@NotNull ModuleLoader loader, @NotNull PhysicalModuleContext context, @NotNull SerTerm.DeState deState) {
+    var state = deState.forFile();
     var resolveInfo = new ResolveInfo(state.primFactory(), context, ImmutableSeq.empty(), new AyaBinOpSet(context.reporter()));
     shallowResolve(loader, resolveInfo);
     serDefs.forEach(serDef -> de(resolveInfo.shapeFactory(), context, serDef, state));
@@ -241,6 +310,10 @@ public record CompiledAya(
     var drop = mod.size();
     var def = serDef.de(state);
     assert def.ref().core != null;
+    members(def).forEach(ref -> {
+      assert ref.module != null;
+      ref.fingerprint = fingerprints.getOrDefault(new SerDef.QName(ref.module, ref.name()), 0L);
+    });
     shapeFactory.bonjour(def);
     switch (serDef) {
       case SerDef.Fn fn -> {
@@ -15,6 +15,7 @@ import org.aya.core.repr.ShapeRecognition;
 import org.aya.generic.Constants;
 import org.aya.generic.Modifier;
 import org.aya.generic.util.InternalException;
+import org.aya.generic.util.Lazy;
 import org.aya.guest0x0.cubical.Partial;
 import org.aya.ref.DefVar;
 import org.aya.util.binop.Assoc;
@@ -36,18 +37,21 @@ public sealed interface SerDef extends Serializable {
     }
   }
 
+  /** The body is decoded on first use, see {@link AyacFormat} */
   record Fn(
     @NotNull QName name,
     @NotNull ImmutableSeq<SerTerm.SerParam> telescope,
-    @NotNull Either<SerTerm, ImmutableSeq<SerPat.Clause>> body,
+    @NotNull Lazy<Either<SerTerm, ImmutableSeq<SerPat.Clause>>> body,
     @NotNull EnumSet<Modifier> modifiers,
-    @NotNull SerTerm result
+    @NotNull SerTerm result,
+    int height
   ) implements SerDef {
     @Override public @NotNull Def de(SerTerm.@NotNull DeState state) {
       return new FnDef(
         state.def(name), telescope.map(tele -> tele.de(state)),
         result.de(state), modifiers,
-        body.map(term -> term.de(state), mischa -> mischa.map(clause -> clause.de(state))));
+        () -> body.get().map(term -> term.de(state), mischa -> mischa.map(clause -> clause.de(state))),
+        height);
     }
   }
 
@@ -56,14 +60,14 @@ public sealed interface SerDef extends Serializable {
     @NotNull ImmutableSeq<SerPat> pats,
     @NotNull ImmutableSeq<SerTerm.SerParam> ownerTele,
     @NotNull ImmutableSeq<SerTerm.SerParam> selfTele,
-    @NotNull Partial.Split<SerTerm> clauses,
+    @NotNull Lazy<Partial.Split<SerTerm>> clauses,
     @NotNull SerTerm result, boolean coerce
   ) implements SerDef {
     @Override public @NotNull CtorDef de(SerTerm.@NotNull DeState state) {
       return new CtorDef(
         state.resolve(data), state.def(self), pats.map(pat -> pat.de(state)),
         ownerTele.map(tele -> tele.de(state)), selfTele.map(tele -> tele.de(state)),
-        clauses.fmap(t -> t.de(state)),
+        Lazy.of(() -> clauses.get().fmap(t -> t.de(state))),
         result.de(state), coerce);
     }
   }
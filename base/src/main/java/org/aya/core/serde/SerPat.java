@@ -9,6 +9,7 @@ import org.aya.util.error.SourcePos;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.Serializable;
+import java.math.BigInteger;
 
 /**
  * @author ice1000
@@ -64,7 +65,7 @@ public sealed interface SerPat extends Serializable {
   }
 
   record ShapedInt(
-    int integer,
+    @NotNull BigInteger integer,
     boolean explicit,
     @NotNull SerDef.SerShapeResult shape,
     @NotNull SerTerm.Data type
@@ -18,13 +18,19 @@ import org.aya.ref.DefVar;
 import org.aya.ref.LocalVar;
 import org.aya.util.Arg;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.Serializable;
+import java.math.BigInteger;
 
 /**
  * @author ice1000
  */
 public sealed interface SerTerm extends Serializable, Restr.TermLike<SerTerm> {
+  /**
+   * Shared by the modules loaded in parallel, so the caches are accessed in synchronized blocks.
+   * The definitions are shared by all files, the local variables are numbered per file, see {@link #forFile()}.
+   */
   record DeState(
     @NotNull MutableMap<Seq<String>, MutableMap<String, DefVar<?, ?>>> defCache,
     @NotNull MutableMap<Integer, LocalVar> localCache,
@@ -34,33 +40,52 @@ public sealed interface SerTerm extends Serializable, Restr.TermLike<SerTerm> {
       this(MutableMap.create(), MutableMap.create(), primFactory);
     }
 
+    /** @return a state resolving to the same definitions, for the local variables of another file */
+    public @NotNull DeState forFile() {
+      return new DeState(defCache, MutableMap.create(), primFactory);
+    }
+
     public @NotNull LocalVar var(@NotNull SimpVar var) {
-      return localCache.getOrPut(var.var, () -> new LocalVar(var.name));
+      synchronized (localCache) {
+        return localCache.getOrPut(var.var, () -> new LocalVar(var.name));
+      }
     }
 
     @SuppressWarnings("unchecked") public <V extends DefVar<?, ?>>
     @NotNull V resolve(@NotNull SerDef.QName name) {
-      return (V) defCache
-        .getOrPut(name.mod(), MutableHashMap::new)
-        .getOrPut(name.name(), () -> {
-          var empty = DefVar.empty(name.name());
-          empty.module = name.mod();
-          return empty;
-        });
+      synchronized (defCache) {
+        return (V) defCache
+          .getOrPut(name.mod(), MutableHashMap::new)
+          .getOrPut(name.name(), () -> {
+            var empty = DefVar.empty(name.name());
+            empty.module = name.mod();
+            return empty;
+          });
+      }
     }
 
     <V extends DefVar<?, ?>> @NotNull V def(@NotNull SerDef.QName name) {
       return resolve(name);
     }
 
+    /** Makes the references to the name of <code>defVar</code> deserialized later resolve to it */
+    public void register(@NotNull DefVar<?, ?> defVar) {
+      assert defVar.module != null;
+      synchronized (defCache) {
+        defCache.getOrPut(defVar.module, MutableHashMap::new).put(defVar.name(), defVar);
+      }
+    }
+
     public void putPrim(
       @NotNull ImmutableSeq<String> mod,
       @NotNull PrimDef.ID id,
       @NotNull DefVar<?, ?> defVar
     ) {
-      var old = defCache.getOrPut(mod, MutableHashMap::new).put(id.id, defVar);
-      if (old.isDefined()) throw new SerDef.DeserializeException("Same prim deserialized twice: " + id.id);
-      defVar.module = mod;
+      synchronized (defCache) {
+        var old = defCache.getOrPut(mod, MutableHashMap::new).put(id.id, defVar);
+        if (old.isDefined()) throw new SerDef.DeserializeException("Same prim deserialized twice: " + id.id);
+        defVar.module = mod;
+      }
     }
   }
 
@@ -221,7 +246,7 @@ public sealed interface SerTerm extends Serializable, Restr.TermLike<SerTerm> {
   }
 
   record ShapedInt(
-    int integer,
+    @NotNull BigInteger integer,
     @NotNull SerDef.SerShapeResult shape,
     @NotNull SerTerm.Data type
   ) implements SerTerm {
@@ -315,4 +340,32 @@ public sealed interface SerTerm extends Serializable, Restr.TermLike<SerTerm> {
       return new ErasedTerm(type.de(state), isProp);
     }
   }
+
+  /**
+   * A term written once and referenced again in a compiled Aya file, see {@link AyacFormat}.
+   * It is deserialized once, so the deserialized terms are shared as well.
+   * Compared by identity, unlike the records.
+   */
+  final class Shared implements SerTerm {
+    private final @NotNull SerTerm term;
+    /** Deserialized with the {@link DeState} of the module, which is the same for all its terms */
+    private transient @Nullable Term de;
+
+    public Shared(@NotNull SerTerm term) {
+      this.term = term;
+    }
+
+    public @NotNull SerTerm term() {
+      return term;
+    }
+
+    @Override public synchronized @NotNull Term de(@NotNull DeState state) {
+      if (de == null) de = term.de(state);
+      return de;
+    }
+
+    @Override public String toString() {
+      return term.toString();
+    }
+  }
 }
@@ -10,6 +10,7 @@ import org.aya.core.def.*;
 import org.aya.core.pat.Pat;
 import org.aya.core.term.*;
 import org.aya.generic.util.InternalException;
+import org.aya.generic.util.Lazy;
 import org.aya.guest0x0.cubical.Partial;
 import org.aya.ref.DefVar;
 import org.aya.ref.LocalVar;
@@ -17,19 +18,35 @@ import org.aya.util.Arg;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.IdentityHashMap;
+
 /**
+ * Used for the definitions of one module. Equal terms are serialized to the same {@link SerTerm},
+ * so they are written once per file, see {@link AyacFormat}.
+ *
+ * @param interned the serialized terms, each equal term is mapped to the first one serialized
+ * @param memo     the terms already serialized, so the terms shared in memory are serialized once
  * @author ice1000
  */
-public record Serializer(@NotNull Serializer.State state) {
+public record Serializer(
+  @NotNull Serializer.State state,
+  @NotNull MutableMap<SerTerm, SerTerm> interned,
+  @NotNull IdentityHashMap<Term, SerTerm> memo
+) {
+  public Serializer(@NotNull Serializer.State state) {
+    this(state, MutableMap.create(), new IdentityHashMap<>());
+  }
+
   public @NotNull SerDef serialize(@NotNull GenericDef def) {
     return switch (def) {
       case ClassDef classDef -> throw new UnsupportedOperationException("TODO");
       case FnDef fn -> new SerDef.Fn(
         state.def(fn.ref),
         serializeParams(fn.telescope),
-        fn.body.map(this::serialize, matchings -> matchings.map(this::serialize)),
+        Lazy.value(fn.body().map(this::serialize, matchings -> matchings.map(this::serialize))),
         fn.modifiers,
-        serialize(fn.result)
+        serialize(fn.result),
+        fn.height
       );
       case FieldDef field -> new SerDef.Field(
         state.def(field.structRef),
@@ -62,7 +79,7 @@ public record Serializer(@NotNull Serializer.State state) {
         serializePats(ctor.pats),
         serializeParams(ctor.ownerTele),
         serializeParams(ctor.selfTele),
-        ctor.clauses.fmap(this::serialize),
+        Lazy.value(ctor.clauses().fmap(this::serialize)),
         serialize(ctor.result),
         ctor.coerce
       );
@@ -74,6 +91,15 @@ public record Serializer(@NotNull Serializer.State state) {
   }
 
   private @NotNull SerTerm serialize(@NotNull Term term) {
+    var ser = memo.get(term);
+    if (ser != null) return ser;
+    var fresh = doSerialize(term);
+    ser = interned.getOrPut(fresh, () -> fresh);
+    memo.put(term, ser);
+    return ser;
+  }
+
+  private @NotNull SerTerm doSerialize(@NotNull Term term) {
     return switch (term) {
       case IntegerTerm lit -> new SerTerm.ShapedInt(lit.repr(),
         SerDef.SerShapeResult.serialize(state, lit.recognition()),
@@ -183,6 +209,10 @@ public record Serializer(@NotNull Serializer.State state) {
     return new SerTerm.SerArg(serialize(termArg.term()), termArg.explicit());
   }
 
+  /**
+   * Used for one module, so the local variables of a compiled core are numbered the same way
+   * whichever modules are saved before it, see {@link SerTerm.DeState#forFile()}
+   */
   public record State(@NotNull MutableMap<LocalVar, Integer> localCache) {
     public State() {
       this(MutableMap.create());
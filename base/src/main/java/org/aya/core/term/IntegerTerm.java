@@ -9,8 +9,10 @@ import org.aya.util.Arg;
 import org.aya.generic.Shaped;
 import org.jetbrains.annotations.NotNull;
 
+import java.math.BigInteger;
+
 public record IntegerTerm(
-  @Override int repr,
+  @Override @NotNull BigInteger repr,
   @Override @NotNull ShapeRecognition recognition,
   @Override @NotNull DataCall type
 ) implements StableWHNF, Shaped.Nat<Term> {
@@ -24,7 +26,7 @@ public record IntegerTerm(
       ImmutableSeq.of(term));
   }
 
-  @Override public @NotNull Term destruct(int repr) {
+  @Override public @NotNull Term destruct(@NotNull BigInteger repr) {
     return new IntegerTerm(repr, this.recognition, this.type);
   }
 }
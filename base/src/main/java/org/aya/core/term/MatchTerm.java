@@ -16,7 +16,7 @@ public record MatchTerm(
     for (var clause : clauses) {
       var subst = PatMatcher.tryBuildSubstTerms(false, clause.patterns(), discriminant.view());
       if (subst.isOk()) {
-        return Option.some(clause.body().rename().subst(subst.get()));
+        return Option.some(clause.body().instantiate(subst.get(), 0));
       } else if (subst.getErr()) return Option.none();
     }
     return Option.none();
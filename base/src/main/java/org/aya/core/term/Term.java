@@ -9,6 +9,7 @@ import kala.collection.mutable.MutableList;
 import kala.collection.mutable.MutableMap;
 import kala.tuple.Tuple;
 import kala.tuple.Tuple3;
+import org.aya.core.nbe.Evaluator;
 import org.aya.core.pat.Pat;
 import org.aya.core.visitor.*;
 import org.aya.distill.BaseDistiller;
@@ -224,6 +225,15 @@ public sealed interface Term extends AyaDocile, Restr.TermLike<Term>
     return new EndoTerm.Renamer().apply(this);
   }
 
+  /**
+   * Instantiates the body of a definition or a clause being unfolded,
+   * which is <code>rename().lift(ulift).subst(subst)</code>.
+   * The substitution is eager, there is no pending-substitution term yet.
+   */
+  default @NotNull Term instantiate(@NotNull Subst subst, int ulift) {
+    return rename().lift(ulift).subst(subst);
+  }
+
   default int findUsages(@NotNull AnyVar var) {
     return new TermFolder.Usages(var).apply(this);
   }
@@ -244,12 +254,18 @@ public sealed interface Term extends AyaDocile, Restr.TermLike<Term>
     return switch (mode) {
       case NULL -> this;
       case NF -> new Expander.Normalizer(state).apply(this);
-      case WHNF -> new Expander.WHNFer(state).apply(this);
+      case WHNF -> state.whnfCache().apply(state, this);
+      case NBE -> new Evaluator(state).normalize(this);
     };
   }
 
   default @NotNull Term freezeHoles(@Nullable TyckState state) {
     return new EndoTerm() {
+      @Override public @NotNull Term apply(@NotNull Term term) {
+        if (!VarSummary.hasMetas(term)) return term;
+        return EndoTerm.super.apply(term);
+      }
+
       @Override public @NotNull Term pre(@NotNull Term term) {
         return term instanceof MetaTerm hole && state != null
           ? state.metas().getOption(hole.ref()).map(this::pre).getOrDefault(term)
@@ -342,7 +358,9 @@ public sealed interface Term extends AyaDocile, Restr.TermLike<Term>
     }
 
     public @NotNull Param subst(@NotNull Subst subst, int ulift) {
-      return new Param(ref, type.subst(subst, ulift), explicit);
+      var type = this.type.subst(subst, ulift);
+      if (type == this.type) return this;
+      return new Param(ref, type, explicit);
     }
   }
 
@@ -8,11 +8,13 @@ import kala.collection.mutable.MutableMap;
 import kala.control.Option;
 import kala.tuple.Tuple;
 import org.aya.core.pat.PatMatcher;
+import org.aya.core.repr.NatArith;
 import org.aya.core.term.*;
 import org.aya.guest0x0.cubical.Partial;
 import org.aya.util.Arg;
 import org.aya.generic.Modifier;
 import org.aya.tyck.TyckState;
+import org.aya.tyck.trace.Profiler;
 import org.aya.util.error.WithPos;
 import org.jetbrains.annotations.NotNull;
 
@@ -30,11 +32,27 @@ public interface DeltaExpander extends EndoTerm {
   }
 
   @Override default @NotNull Term post(@NotNull Term term) {
+    var profiler = Profiler.current();
+    if (profiler == null) return unfold(term);
+    var ref = switch (term) {
+      case Callable.DefCall call -> call.ref();
+      case MetaTerm ignored -> Profiler.META;
+      default -> null;
+    };
+    if (ref == null) return unfold(term);
+    var start = System.nanoTime();
+    var unfolded = unfold(term);
+    if (unfolded != term) profiler.unfolded(ref, System.nanoTime() - start);
+    return unfolded;
+  }
+
+  /** @see Profiler for the counting version */
+  private @NotNull Term unfold(@NotNull Term term) {
     return switch (term) {
       case ConCall con -> {
         var def = con.ref().core;
         if (def == null) yield con;
-        var sat = AyaRestrSimplifier.INSTANCE.mapSplit(def.clauses, t ->
+        var sat = AyaRestrSimplifier.INSTANCE.mapSplit(def.clauses(), t ->
           t.subst(buildSubst(def.selfTele, con.args())));
         if (sat instanceof Partial.Const<Term> c) yield apply(c.u());
         yield con;
@@ -42,9 +60,17 @@ public interface DeltaExpander extends EndoTerm {
       case FnCall fn -> {
         var def = fn.ref().core;
         if (def == null || def.modifiers.contains(Modifier.Opaque)) yield fn;
-        yield def.body.fold(
-          lamBody -> apply(lamBody.rename().lift(fn.ulift()).subst(buildSubst(def.telescope(), fn.args()))),
-          clauses -> tryUnfoldClauses(def.modifiers.contains(Modifier.Overlap), fn.args(), fn.ulift(), clauses)
+        var body = def.body();
+        if (body.isRight()) {
+          var computed = NatArith.tryCompute(def, fn.args(), state());
+          if (computed != null) yield apply(computed.lift(fn.ulift()));
+        }
+        var tree = def.tree();
+        yield body.fold(
+          lamBody -> apply(lamBody.instantiate(buildSubst(def.telescope(), fn.args()), fn.ulift())),
+          clauses -> (tree != null
+            ? tree.tryUnfold(fn.args(), fn.ulift(), this)
+            : tryUnfoldClauses(def.modifiers.contains(Modifier.Overlap), fn.args(), fn.ulift(), clauses))
             .map(unfolded -> apply(unfolded.data())).getOrDefault(fn));
       }
       case PrimCall prim -> state().primFactory().unfold(prim.id(), prim, state());
@@ -73,7 +99,7 @@ public interface DeltaExpander extends EndoTerm {
     for (var matchy : clauses) {
       var subst = PatMatcher.tryBuildSubstTerms(false, matchy.patterns(), args.view().map(Arg::term), this);
       if (subst.isOk()) {
-        var newBody = matchy.body().rename().lift(ulift).subst(subst.get());
+        var newBody = matchy.body().instantiate(subst.get(), ulift);
         return Option.some(new WithPos<>(matchy.sourcePos(), newBody));
       } else if (!orderIndependent && subst.getErr()) return Option.none();
     }
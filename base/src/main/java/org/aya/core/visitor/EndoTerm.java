@@ -34,8 +34,27 @@ public interface EndoTerm extends UnaryOperator<Term> {
     return post(pre(term).descent(this));
   }
 
+  /**
+   * An endomorphism that is applied by {@link TermTraversal}, without recursing on the Java stack.
+   * Subterms are not transformed by calling {@link #apply} recursively,
+   * so implementations hook into {@link #enter} and {@link #exit} instead of overriding it.
+   */
+  interface StackSafe extends EndoTerm {
+    /** @return false if the term is left untouched, then neither {@link #pre} nor {@link #post} is called */
+    default boolean enter(@NotNull Term term) {
+      return true;
+    }
+
+    /** Called after {@link #post} on the terms that were entered */
+    default void exit(@NotNull Term term) {}
+
+    @Override default @NotNull Term apply(@NotNull Term term) {
+      return TermTraversal.apply(this, term);
+    }
+  }
+
   /** Not an IntelliJ Renamer. */
-  record Renamer(@NotNull Subst subst) implements EndoTerm {
+  record Renamer(@NotNull Subst subst) implements StackSafe {
     public Renamer() {
       this(new Subst(MutableMap.create()));
     }
@@ -74,7 +93,20 @@ public interface EndoTerm extends UnaryOperator<Term> {
   /**
    * Performs capture-avoiding substitution.
    */
-  record Substituter(@NotNull Subst subst) implements BetaExpander {
+  record Substituter(@NotNull Subst subst, long mask) implements BetaExpander, StackSafe {
+    public Substituter(@NotNull Subst subst) {
+      this(subst, VarSummary.mask(subst.map().keysView()));
+    }
+
+    /** Subterms that neither mention the substituted variables nor have redexes are left untouched. */
+    @Override public boolean enter(@NotNull Term term) {
+      return VarSummary.mayChange(term, mask);
+    }
+
+    @Override public @NotNull Term apply(@NotNull Term term) {
+      return StackSafe.super.apply(term);
+    }
+
     @Override public @NotNull Term post(@NotNull Term term) {
       return switch (term) {
         case RefTerm ref when ref.var() == LocalVar.IGNORED -> throw new InternalException("found usage of ignored var");
@@ -90,10 +122,10 @@ public interface EndoTerm extends UnaryOperator<Term> {
   }
 
   /** A lift but in American English. */
-  record Elevator(int lift) implements EndoTerm {
+  record Elevator(int lift) implements StackSafe {
     @Override public @NotNull Term apply(@NotNull Term term) {
       if (lift == 0) return term;
-      return EndoTerm.super.apply(term);
+      return StackSafe.super.apply(term);
     }
 
     @Override public @NotNull Term post(@NotNull Term term) {
@@ -16,16 +16,17 @@ import java.util.function.Consumer;
  * @author wsx
  */
 public interface TermConsumer extends Consumer<Term> {
+  /** @return false if the term is skipped with its subterms, then neither {@link #pre} nor {@link #post} is called */
+  default boolean enter(@NotNull Term term) {
+    return true;
+  }
+
   default void pre(@NotNull Term term) {}
 
   default void post(@NotNull Term term) {}
 
+  /** Stack-safe, subterms are not visited by calling this method recursively, see {@link TermTraversal} */
   default void accept(@NotNull Term term) {
-    pre(term);
-    term.descent(t -> {
-      accept(t);
-      return t;
-    });
-    post(term);
+    TermTraversal.accept(this, term);
   }
 }
@@ -58,6 +58,21 @@ public interface TermFolder<R> extends Function<Term, R> {
     @Override public @NotNull Integer fold(@NotNull Integer count, @NotNull AnyVar v) {
       return v == var ? count + 1 : count;
     }
+
+    /** Stack-safe, and skips the subterms that cannot contain the variable, see {@link VarSummary} */
+    @Override public @NotNull Integer apply(@NotNull Term term) {
+      var count = new int[]{0};
+      new TermConsumer() {
+        @Override public boolean enter(@NotNull Term term) {
+          return VarSummary.mayContain(term, var);
+        }
+
+        @Override public void pre(@NotNull Term term) {
+          count[0] = fold(count[0], term);
+        }
+      }.accept(term);
+      return count[0];
+    }
   }
 
   /**
@@ -84,10 +99,10 @@ public interface TermFolder<R> extends Function<Term, R> {
         case FnDef fn -> tele(fn.telescope)
           .concat(apply(fn.result))
           .concat(withBody
-            ? fn.body.fold(this, clauses -> clauses.view().flatMap(this::matchy))
+            ? fn.body().fold(this, clauses -> clauses.view().flatMap(this::matchy))
             : SeqView.empty());
         case CtorDef ctor ->
-          tele(ctor.selfTele).concat(withBody ? ctor.clauses.termsView().flatMap(this) : SeqView.empty());
+          tele(ctor.selfTele).concat(withBody ? ctor.clauses().termsView().flatMap(this) : SeqView.empty());
         case StructDef struct ->
           tele(struct.telescope).concat(withBody ? struct.fields.flatMap(this::apply) : SeqView.empty());
         case FieldDef field -> tele(field.telescope())
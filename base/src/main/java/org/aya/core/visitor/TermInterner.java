@@ -0,0 +1,129 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.core.visitor;
+
+import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableMap;
+import org.aya.core.term.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.function.Predicate;
+
+/**
+ * Hash-consing of core terms: structurally equal terms are represented by the same object,
+ * so that comparing them is an identity check. Binders are compared by identity as well,
+ * so alpha-equivalent terms with different binders are never merged.
+ * <p>
+ * Terms are interned bottom-up, so the subterms of a node are already shared
+ * and the node can be hashed and compared shallowly (by the identity of its subterms).
+ * The table only keeps weak references, interned terms are collected as usual.
+ * One interner is shared by the definitions checked in parallel, so {@link #apply} is synchronized.
+ *
+ * @see org.aya.tyck.TyckState#interner()
+ */
+public final class TermInterner implements EndoTerm.StackSafe {
+  private final @NotNull Table structural = new Table();
+  private int hits = 0;
+
+  /** @return the shared representative of <code>term</code> */
+  public @NotNull Term intern(@NotNull Term term) {
+    return apply(term);
+  }
+
+  @Override public synchronized @NotNull Term apply(@NotNull Term term) {
+    return StackSafe.super.apply(term);
+  }
+
+  @Override public @NotNull Term post(@NotNull Term term) {
+    var children = children(term);
+    var hash = shallowHash(term, children);
+    var found = structural.find(hash, candidate -> candidate == term
+      || candidate.getClass() == term.getClass() && sameElements(children, children(candidate)) && candidate.equals(term));
+    if (found != null) {
+      if (found != term) hits++;
+      return found;
+    }
+    structural.add(hash, term);
+    return term;
+  }
+
+  /** @return how many times a term is replaced by an existing one */
+  public synchronized int hits() {
+    return hits;
+  }
+
+  private static @NotNull MutableList<Term> children(@NotNull Term term) {
+    var children = MutableList.<Term>create();
+    term.descent(child -> {
+      children.append(child);
+      return child;
+    });
+    return children;
+  }
+
+  private static boolean sameElements(@NotNull MutableList<Term> l, @NotNull MutableList<Term> r) {
+    return l.sameElements(r, true);
+  }
+
+  /** The data that is not a subterm, only the cheap ones. Equal terms must have equal hashes. */
+  private static int shallowHash(@NotNull Term term, @NotNull MutableList<Term> children) {
+    var hash = term.getClass().hashCode();
+    hash = 31 * hash + switch (term) {
+      case Callable.DefCall call -> 31 * call.ref().hashCode() + call.ulift();
+      case Callable call -> call.ref().hashCode();
+      case RefTerm ref -> ref.var().hashCode();
+      case RefTerm.Field field -> field.ref().hashCode();
+      case SortTerm sort -> sort.hashCode();
+      case IntegerTerm lit -> lit.repr().hashCode();
+      case ProjTerm proj -> proj.ix();
+      case StringTerm str -> str.string().hashCode();
+      default -> 0;
+    };
+    for (var child : children) hash = 31 * hash + System.identityHashCode(child);
+    return hash;
+  }
+
+  /** A hash table of weak references, with the hashes computed by the caller. */
+  private static final class Table {
+    private final @NotNull MutableMap<Integer, MutableList<Entry>> buckets = MutableMap.create();
+    private final @NotNull ReferenceQueue<Term> queue = new ReferenceQueue<>();
+
+    private static final class Entry extends WeakReference<Term> {
+      private final int hash;
+
+      private Entry(@NotNull Term term, int hash, @NotNull ReferenceQueue<Term> queue) {
+        super(term, queue);
+        this.hash = hash;
+      }
+    }
+
+    private @Nullable Term find(int hash, @NotNull Predicate<Term> equals) {
+      expunge();
+      var bucket = buckets.getOrNull(hash);
+      if (bucket == null) return null;
+      for (var entry : bucket) {
+        var term = entry.get();
+        if (term != null && equals.test(term)) return term;
+      }
+      return null;
+    }
+
+    private void add(int hash, @NotNull Term term) {
+      buckets.getOrPut(hash, MutableList::create).append(new Entry(term, hash, queue));
+    }
+
+    private void expunge() {
+      for (Reference<? extends Term> ref; (ref = queue.poll()) != null; ) {
+        var entry = (Entry) ref;
+        var bucket = buckets.getOrNull(entry.hash);
+        if (bucket == null) continue;
+        bucket.removeIf(e -> e == entry);
+        if (bucket.isEmpty()) buckets.remove(entry.hash);
+      }
+    }
+  }
+}
@@ -0,0 +1,170 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.core.visitor;
+
+import org.aya.core.term.Term;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+
+/**
+ * Stack-safe traversals of terms, using an explicit work stack instead of the Java stack,
+ * so deep terms (like unary numerals or long lists) do not overflow.
+ * <p>
+ * The subterms of a node are the ones {@link Term#descent} visits, in the same order.
+ * They are collected by a {@link Term#descent} that changes nothing, onto a stack shared by all the nodes,
+ * and the node is rebuilt by a second one that replays the transformed subterms, only if some of them changed.
+ * The frames are reused by the nodes at the same depth, so a node costs no allocation unless it changes.
+ * The order of {@code pre} and {@code post} calls is the same as the recursive traversal.
+ *
+ * @see EndoTerm.StackSafe
+ * @see TermConsumer
+ */
+public final class TermTraversal {
+  /** A node whose subterms are being visited */
+  private static final class Frame {
+    private Term term;
+    private Term pre;
+    /** Where the subterms of the node start in {@link #children}, they end where the next frame starts */
+    private int start;
+    private int next;
+    private boolean changed;
+  }
+
+  private final @Nullable EndoTerm.StackSafe endo;
+  /** The subterms of the nodes on the stack */
+  private Term[] children = new Term[16];
+  /** What {@link #children} are transformed into, used by {@link #endo} only */
+  private Term[] results;
+  private int size = 0;
+  private Frame[] frames = new Frame[8];
+  private int depth = 0;
+  /** The next subterm replayed by {@link #replay} */
+  private int replayed;
+  private final @NotNull UnaryOperator<Term> collect = this::collect;
+  private final @NotNull UnaryOperator<Term> replay = this::replay;
+
+  private TermTraversal(@Nullable EndoTerm.StackSafe endo) {
+    this.endo = endo;
+    results = endo == null ? null : new Term[children.length];
+  }
+
+  private @NotNull Term collect(@NotNull Term child) {
+    if (size == children.length) {
+      children = Arrays.copyOf(children, size * 2);
+      if (results != null) results = Arrays.copyOf(results, size * 2);
+    }
+    children[size++] = child;
+    return child;
+  }
+
+  /** @return whether the term has subterms, which are pushed onto {@link #children} */
+  private boolean push(@NotNull Term term, @NotNull Term pre) {
+    var start = size;
+    pre.descent(collect);
+    if (size == start) return false;
+    if (depth == frames.length) frames = Arrays.copyOf(frames, depth * 2);
+    var frame = frames[depth];
+    if (frame == null) frame = frames[depth] = new Frame();
+    depth++;
+    frame.term = term;
+    frame.pre = pre;
+    frame.start = start;
+    frame.next = start;
+    frame.changed = false;
+    return true;
+  }
+
+  private @NotNull Term replay(@NotNull Term child) {
+    var i = replayed;
+    // descent is expected to visit the same subterms, in case it does not, fall back to a fresh traversal
+    if (i >= size || children[i] != child) {
+      assert endo != null;
+      return endo.apply(child);
+    }
+    replayed++;
+    return results[i];
+  }
+
+  /** @see EndoTerm.StackSafe#apply */
+  public static @NotNull Term apply(@NotNull EndoTerm.StackSafe f, @NotNull Term term) {
+    if (!f.enter(term)) return term;
+    var traversal = new TermTraversal(f);
+    var pre = f.pre(term);
+    if (!traversal.push(term, pre)) {
+      var result = f.post(pre);
+      f.exit(term);
+      return result;
+    }
+    return traversal.apply(f);
+  }
+
+  private @NotNull Term apply(@NotNull EndoTerm.StackSafe f) {
+    while (true) {
+      var frame = frames[depth - 1];
+      if (frame.next < size) {
+        var i = frame.next++;
+        var child = children[i];
+        if (!f.enter(child)) {
+          results[i] = child;
+          continue;
+        }
+        var pre = f.pre(child);
+        if (push(child, pre)) continue;
+        var result = f.post(pre);
+        f.exit(child);
+        results[i] = result;
+        if (result != child) frame.changed = true;
+        continue;
+      }
+      depth--;
+      var term = frame.term;
+      var rebuilt = frame.pre;
+      if (frame.changed) {
+        replayed = frame.start;
+        rebuilt = rebuilt.descent(replay);
+      }
+      size = frame.start;
+      frame.term = frame.pre = null;
+      var result = f.post(rebuilt);
+      f.exit(term);
+      if (depth == 0) return result;
+      var parent = frames[depth - 1];
+      results[parent.next - 1] = result;
+      if (result != term) parent.changed = true;
+    }
+  }
+
+  /** @see TermConsumer#accept */
+  public static void accept(@NotNull TermConsumer f, @NotNull Term term) {
+    if (!f.enter(term)) return;
+    f.pre(term);
+    var traversal = new TermTraversal(null);
+    if (!traversal.push(term, term)) {
+      f.post(term);
+      return;
+    }
+    traversal.accept(f);
+  }
+
+  private void accept(@NotNull TermConsumer f) {
+    while (true) {
+      var frame = frames[depth - 1];
+      if (frame.next < size) {
+        var child = children[frame.next++];
+        if (!f.enter(child)) continue;
+        f.pre(child);
+        if (!push(child, child)) f.post(child);
+        continue;
+      }
+      depth--;
+      size = frame.start;
+      var term = frame.term;
+      frame.term = frame.pre = null;
+      f.post(term);
+      if (depth == 0) return;
+    }
+  }
+}
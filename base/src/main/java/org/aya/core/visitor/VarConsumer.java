@@ -15,7 +15,7 @@ import org.jetbrains.annotations.VisibleForTesting;
 public interface VarConsumer extends TermConsumer {
   void var(@NotNull AnyVar var);
 
-  @Override default void accept(@NotNull Term term) {
+  @Override default void pre(@NotNull Term term) {
     switch (term) {
       case RefTerm ref -> var(ref.var());
       case RefTerm.Field field -> var(field.ref());
@@ -27,7 +27,6 @@ public interface VarConsumer extends TermConsumer {
       case StructCall struct -> var(struct.ref());
       default -> {}
     }
-    TermConsumer.super.accept(term);
   }
 
   final class ScopeChecker implements VarConsumer {
@@ -56,15 +55,16 @@ public interface VarConsumer extends TermConsumer {
     }
 
     @Override public void accept(@NotNull Term term) {
+      if (!VarSummary.hasLocals(term)) return;
       switch (term) {
         case LamTerm lambda -> {
           bound.append(lambda.param().ref());
-          VarConsumer.super.accept(lambda);
+          descent(lambda);
           bound.removeLast();
         }
         case PiTerm pi -> {
           bound.append(pi.param().ref());
-          VarConsumer.super.accept(pi);
+          descent(pi);
           bound.removeLast();
         }
         case SigmaTerm sigma -> {
@@ -93,10 +93,19 @@ public interface VarConsumer extends TermConsumer {
           hole.contextArgs().forEach(arg -> checker.accept(arg.term()));
           hole.args().forEach(arg -> accept(arg.term()));
         }
-        default -> VarConsumer.super.accept(term);
+        default -> descent(term);
       }
     }
 
+    /** Recursive, so that the binders in the subterms are handled by {@link #accept} */
+    private void descent(@NotNull Term term) {
+      pre(term);
+      term.descent(t -> {
+        accept(t);
+        return t;
+      });
+    }
+
     @Contract(mutates = "this") @Override public void var(@NotNull AnyVar v) {
       if (v instanceof LocalVar local
         && !(allowed.contains(local) || bound.contains(local))
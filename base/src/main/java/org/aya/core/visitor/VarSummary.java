@@ -0,0 +1,214 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.core.visitor;
+
+import kala.collection.mutable.MutableArrayList;
+import org.aya.core.term.*;
+import org.aya.ref.AnyVar;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * A summary of the variables that may occur in a term, cached per node,
+ * so traversals looking for (or replacing) some variables can skip the subterms that cannot contain them.
+ * <p>
+ * A summary is a bloom filter over the referenced variables (the ones {@link TermFolder} folds),
+ * with extra bits recording whether there are local references, metas, or redexes at all.
+ * Terms are immutable, so a summary never goes stale.
+ * <p>
+ * The summaries are cached per thread, so the modules checked in parallel do not contend on the cache,
+ * at the cost of summarizing a term once in each thread it is used.
+ *
+ * @see TermFolder.Usages
+ * @see EndoTerm.Substituter
+ */
+public final class VarSummary {
+  private static final long METAS = 1L << 63;
+  private static final long LOCALS = 1L << 62;
+  /** Set if {@link BetaExpander#post} may change some subterm, see {@link #redex} */
+  private static final long REDEXES = 1L << 61;
+  private static final int VAR_BITS = 61;
+  /** Both flags without any variable, which is not a summary */
+  private static final long NOT_LEAF = METAS | LOCALS;
+  private static final @NotNull ThreadLocal<Table> CACHE = ThreadLocal.withInitial(Table::new);
+
+  private VarSummary() {
+  }
+
+  public static long bit(@NotNull AnyVar var) {
+    var hash = System.identityHashCode(var);
+    return 1L << Math.floorMod(hash ^ (hash >>> 16), VAR_BITS);
+  }
+
+  public static long mask(@NotNull Iterable<? extends AnyVar> vars) {
+    var mask = 0L;
+    for (var var : vars) mask |= bit(var);
+    return mask;
+  }
+
+  public static long of(@NotNull Term term) {
+    var leaf = leaf(term);
+    if (leaf != NOT_LEAF) return leaf;
+    var cache = CACHE.get();
+    var cached = cache.get(term);
+    if (cached != null) return cached.summary;
+    // Bottom-up with an explicit stack, a node is summarized when all its subterms are
+    var stack = MutableArrayList.<Term>create();
+    stack.append(term);
+    while (stack.isNotEmpty()) {
+      var top = stack.last();
+      var size = stack.size();
+      top.descent(child -> {
+        if (leaf(child) == NOT_LEAF && cache.get(child) == null) stack.append(child);
+        return child;
+      });
+      if (stack.size() > size) continue;
+      stack.removeLast();
+      if (cache.get(top) != null) continue;
+      var summary = new long[]{own(top)};
+      top.descent(child -> {
+        summary[0] |= of(child);
+        return child;
+      });
+      cache.put(top, summary[0]);
+    }
+    return cache.get(term).summary;
+  }
+
+  /** Leaves are not worth caching */
+  private static long leaf(@NotNull Term term) {
+    return switch (term) {
+      case RefTerm ref -> LOCALS | bit(ref.var());
+      case RefTerm.Field field -> LOCALS | bit(field.ref());
+      case SortTerm sort -> 0;
+      default -> NOT_LEAF;
+    };
+  }
+
+  private static long own(@NotNull Term term) {
+    var own = switch (term) {
+      case MetaTerm hole -> METAS | bit(hole.ref());
+      case Callable call -> bit(call.ref());
+      default -> 0L;
+    };
+    return redex(term) ? own | REDEXES : own;
+  }
+
+  /**
+   * @return false if {@link BetaExpander#post} leaves the term as is, provided its subterms are left as is.
+   * Conservative, the meta patterns in particular may be solved after the summary is computed.
+   */
+  private static boolean redex(@NotNull Term term) {
+    return switch (term) {
+      case AppTerm app -> app.of() instanceof LamTerm || app.of() instanceof MetaTerm || app.of() instanceof ErasedTerm;
+      case ProjTerm proj -> proj.of() instanceof TupTerm || proj.of() instanceof ErasedTerm;
+      case FormulaTerm mula -> true;
+      case PartialTyTerm ty -> true;
+      case PartialTerm partial -> true;
+      case MetaPatTerm metaPat -> true;
+      case MetaLitTerm lit -> true;
+      case MatchTerm match -> true;
+      case PAppTerm app -> true;
+      case CoeTerm coe -> true;
+      default -> false;
+    };
+  }
+
+  /** @return false if <code>var</code> definitely does not occur in <code>term</code> */
+  public static boolean mayContain(@NotNull Term term, @NotNull AnyVar var) {
+    return (of(term) & bit(var)) != 0;
+  }
+
+  /** @param mask see {@link #mask(Iterable)} */
+  public static boolean mayContainAny(@NotNull Term term, long mask) {
+    return (of(term) & mask) != 0;
+  }
+
+  /**
+   * @param mask see {@link #mask(Iterable)}
+   * @return false if substituting the variables in <code>mask</code> leaves the term as is,
+   * including the beta reductions done by {@link EndoTerm.Substituter}
+   */
+  public static boolean mayChange(@NotNull Term term, long mask) {
+    return (of(term) & (mask | REDEXES)) != 0;
+  }
+
+  public static boolean hasMetas(@NotNull Term term) {
+    return (of(term) & METAS) != 0;
+  }
+
+  public static boolean hasLocals(@NotNull Term term) {
+    return (of(term) & LOCALS) != 0;
+  }
+
+  /**
+   * Weak identity hash map from terms to summaries.
+   * We cannot use {@link java.util.WeakHashMap}, as it hashes terms structurally.
+   */
+  private static final class Table {
+    private Entry[] buckets = new Entry[1 << 12];
+    private int size = 0;
+    private final @NotNull ReferenceQueue<Term> queue = new ReferenceQueue<>();
+
+    private static final class Entry extends WeakReference<Term> {
+      private final int hash;
+      private final long summary;
+      private @Nullable Entry next;
+
+      private Entry(@NotNull Term term, int hash, long summary, @Nullable Entry next, @NotNull ReferenceQueue<Term> queue) {
+        super(term, queue);
+        this.hash = hash;
+        this.summary = summary;
+        this.next = next;
+      }
+    }
+
+    private @Nullable Entry get(@NotNull Term term) {
+      var hash = System.identityHashCode(term);
+      for (var e = buckets[hash & (buckets.length - 1)]; e != null; e = e.next)
+        if (e.hash == hash && e.get() == term) return e;
+      return null;
+    }
+
+    private void put(@NotNull Term term, long summary) {
+      expunge();
+      if (size >= buckets.length * 3 / 4) resize();
+      var hash = System.identityHashCode(term);
+      var ix = hash & (buckets.length - 1);
+      buckets[ix] = new Entry(term, hash, summary, buckets[ix], queue);
+      size++;
+    }
+
+    private void resize() {
+      var old = buckets;
+      buckets = new Entry[old.length * 2];
+      for (var head : old)
+        for (var e = head; e != null; ) {
+          var next = e.next;
+          var ix = e.hash & (buckets.length - 1);
+          e.next = buckets[ix];
+          buckets[ix] = e;
+          e = next;
+        }
+    }
+
+    private void expunge() {
+      for (Reference<? extends Term> ref; (ref = queue.poll()) != null; ) {
+        var entry = (Entry) ref;
+        var ix = entry.hash & (buckets.length - 1);
+        Entry prev = null;
+        for (var e = buckets[ix]; e != null; prev = e, e = e.next)
+          if (e == entry) {
+            if (prev == null) buckets[ix] = e.next;
+            else prev.next = e.next;
+            size--;
+            break;
+          }
+      }
+    }
+  }
+}
@@ -0,0 +1,88 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.core.visitor;
+
+import kala.value.MutableValue;
+import org.aya.core.term.*;
+import org.aya.tyck.TyckState;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Memoized {@link Expander.WHNFer}, keyed by term identity.
+ * The conversion checker normalizes the same terms over and over again,
+ * so it is worth remembering the results as long as the metas stay the same.
+ *
+ * @apiNote Owned by {@link TyckState}, which calls {@link #invalidate()} whenever a meta is solved.
+ * @see TyckState#solve
+ */
+public final class WHNFCache {
+  private final @NotNull IdentityHashMap<Term, Term> cache = new IdentityHashMap<>();
+  /** The terms known not to unfold later, see {@link #mayUnfoldLater} */
+  private final @NotNull Set<Term> settled = Collections.newSetFromMap(new IdentityHashMap<>());
+  private int hits = 0;
+  private int misses = 0;
+
+  public @NotNull Term apply(@NotNull TyckState state, @NotNull Term term) {
+    if (term instanceof StableWHNF) return term;
+    var cached = cache.get(term);
+    if (cached != null) {
+      hits++;
+      return cached;
+    }
+    misses++;
+    var whnf = new Expander.WHNFer(state).apply(term);
+    if (!mayUnfoldLater(whnf)) {
+      cache.put(term, whnf);
+      cache.put(whnf, whnf);
+    }
+    return whnf;
+  }
+
+  /**
+   * Besides metas, a stuck term can also be blocked on definitions that are still being checked
+   * or on unsolved pattern metas. Neither of them is tracked by {@link TyckState}, so we don't remember those.
+   * <p>
+   * Checked definitions and solved pattern metas stay so until the next {@link #invalidate()},
+   * so the subterms found unblocked are remembered in {@link #settled} and not visited again.
+   */
+  private boolean mayUnfoldLater(@NotNull Term term) {
+    var blocked = MutableValue.create(false);
+    new TermConsumer() {
+      @Override public boolean enter(@NotNull Term term) {
+        return !blocked.get() && !settled.contains(term);
+      }
+
+      @Override public void pre(@NotNull Term term) {
+        switch (term) {
+          case FnCall fn when fn.ref().core == null -> blocked.set(true);
+          case ConCall con when con.ref().core == null -> blocked.set(true);
+          case MetaPatTerm metaPat when metaPat.ref().solution().get() == null -> blocked.set(true);
+          default -> {}
+        }
+      }
+
+      /** Nothing is entered after a blocker is found, so the subterms of this one were all unblocked */
+      @Override public void post(@NotNull Term term) {
+        if (!blocked.get()) settled.add(term);
+      }
+    }.accept(term);
+    return blocked.get();
+  }
+
+  public void invalidate() {
+    cache.clear();
+    settled.clear();
+  }
+
+  public int hits() {
+    return hits;
+  }
+
+  public int misses() {
+    return misses;
+  }
+}
@@ -26,7 +26,7 @@ import org.jetbrains.annotations.NotNull;
 public record Zonker(
   @NotNull Tycker tycker,
   @NotNull MutableSinglyLinkedList<Term> stack
-) implements EndoTerm {
+) implements EndoTerm.StackSafe {
   public static @NotNull Zonker make(@NotNull Tycker tycker) {
     return new Zonker(tycker, MutableSinglyLinkedList.create());
   }
@@ -60,15 +60,17 @@ public record Zonker(
         }
         yield inline;
       }
-      default -> EndoTerm.super.post(term);
+      default -> StackSafe.super.post(term);
     };
   }
 
-  @Override public @NotNull Term apply(@NotNull Term term) {
+  @Override public boolean enter(@NotNull Term term) {
     stack.push(term);
-    var result = EndoTerm.super.apply(term);
+    return true;
+  }
+
+  @Override public void exit(@NotNull Term term) {
     stack.pop();
-    return result;
   }
 
   public record UnsolvedLit(
@@ -24,6 +24,7 @@ import org.aya.util.distill.DistillerOptions;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.math.BigInteger;
 import java.util.Objects;
 import java.util.function.BiFunction;
 import java.util.function.ToIntBiFunction;
@@ -237,7 +238,7 @@ public abstract class BaseDistiller<Term extends AyaDocile> {
     return Doc.linkRef(Doc.styled(color, ref.name()), ref.hashCode());
   }
 
-  public static @NotNull Doc linkLit(int literal, @NotNull AnyVar ref, @NotNull Style color) {
+  public static @NotNull Doc linkLit(@NotNull BigInteger literal, @NotNull AnyVar ref, @NotNull Style color) {
     return Doc.linkRef(Doc.styled(color, Doc.plain(String.valueOf(literal))), ref.hashCode());
   }
 
@@ -150,7 +150,7 @@ public record Codifier(
     for (var param : def.telescope) {
       me.locals.put(param.ref(), me.locals.size());
     }
-    me.term(def.body.getLeftValue());
+    me.term(def.body().getLeftValue());
     var pre = new StringBuilder(me.builder.length() + me.locals.size() * 36);
     me.locals.forEach((k, v) -> pre.append("var var")
       .append(v).append(" = new LocalVar(\"")
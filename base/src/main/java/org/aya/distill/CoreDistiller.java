@@ -19,6 +19,8 @@ import org.aya.util.Arg;
 import org.aya.util.distill.DistillerOptions;
 import org.jetbrains.annotations.NotNull;
 
+import java.math.BigInteger;
+
 /**
  * It's called distiller, and it serves as the pretty printer.
  * Credit after <a href="https://github.com/jonsterling/dreamtt/blob/main/frontend/Distiller.ml">Jon Sterling</a>
@@ -163,8 +165,8 @@ public class CoreDistiller extends BaseDistiller<Term> {
       }
       case StructCall structCall -> visitArgsCalls(structCall.ref(), STRUCT_CALL, structCall.args(), outer);
       case DataCall dataCall -> visitArgsCalls(dataCall.ref(), DATA_CALL, dataCall.args(), outer);
-      case IntegerTerm shaped -> shaped.repr() == 0
-        ? linkLit(0, shaped.ctorRef(CodeShape.MomentId.ZERO), CON_CALL)
+      case IntegerTerm shaped -> shaped.repr().signum() == 0
+        ? linkLit(BigInteger.ZERO, shaped.ctorRef(CodeShape.MomentId.ZERO), CON_CALL)
         : linkLit(shaped.repr(), shaped.ctorRef(CodeShape.MomentId.SUC), CON_CALL);
       case ListTerm shaped -> {
         var subterms = shaped.repr().map(x -> term(Outer.Free, x));
@@ -235,8 +237,8 @@ public class CoreDistiller extends BaseDistiller<Term> {
       case Pat.Tuple tuple -> Doc.licit(tuple.explicit(),
         Doc.commaList(tuple.pats().view().map(sub -> pat(sub, Outer.Free))));
       case Pat.End end -> Doc.bracedUnless(Doc.styled(KEYWORD, end.isOne() ? "1" : "0"), end.explicit());
-      case Pat.ShapedInt lit -> Doc.bracedUnless(lit.repr() == 0
-          ? linkLit(0, lit.ctorRef(CodeShape.MomentId.ZERO), CON_CALL)
+      case Pat.ShapedInt lit -> Doc.bracedUnless(lit.repr().signum() == 0
+          ? linkLit(BigInteger.ZERO, lit.ctorRef(CodeShape.MomentId.ZERO), CON_CALL)
           : linkLit(lit.repr(), lit.ctorRef(CodeShape.MomentId.SUC), CON_CALL),
         lit.explicit());
     };
@@ -254,7 +256,7 @@ public class CoreDistiller extends BaseDistiller<Term> {
           Doc.symbol(":"),
           term(Outer.Free, def.result())
         });
-        yield def.body.fold(
+        yield def.body().fold(
           term -> Doc.sep(Doc.sepNonEmpty(line1), Doc.symbol("=>"), term(Outer.Free, term)),
           clauses -> Doc.vcat(Doc.sepNonEmpty(line1), Doc.nest(2, visitClauses(clauses))));
       }
@@ -274,7 +276,7 @@ public class CoreDistiller extends BaseDistiller<Term> {
           var pats = Doc.commaList(ctor.pats.view().map(pat -> pat(pat, Outer.Free)));
           line1 = Doc.sep(Doc.symbol("|"), pats, Doc.symbol("=>"), doc);
         } else line1 = Doc.sep(Doc.symbol("|"), doc);
-        yield Doc.cblock(line1, 2, partial(options, ctor.clauses, false));
+        yield Doc.cblock(line1, 2, partial(options, ctor.clauses(), false));
       }
       case StructDef def -> Doc.vcat(Doc.sepNonEmpty(Doc.styled(KEYWORD, "struct"),
         linkDef(def.ref(), STRUCT_CALL),
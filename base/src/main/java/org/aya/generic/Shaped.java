@@ -15,6 +15,7 @@ import org.aya.tyck.unify.TermComparator;
 import org.aya.util.Arg;
 import org.jetbrains.annotations.NotNull;
 
+import java.math.BigInteger;
 import java.util.function.BiPredicate;
 
 /**
@@ -51,20 +52,20 @@ public interface Shaped<T> {
   non-sealed interface Nat<T extends AyaDocile> extends Inductive<T> {
     @NotNull T makeZero(@NotNull CtorDef zero);
     @NotNull T makeSuc(@NotNull CtorDef suc, @NotNull Arg<T> t);
-    @NotNull T destruct(int repr);
-    int repr();
+    @NotNull T destruct(@NotNull BigInteger repr);
+    @NotNull BigInteger repr();
 
     /** Untyped: compare the internal representation only */
     default <O extends AyaDocile> boolean compareUntyped(@NotNull Shaped.Nat<O> other) {
-      return repr() == other.repr();
+      return repr().equals(other.repr());
     }
 
     default @Override @NotNull T constructorForm() {
-      int repr = repr();
+      var repr = repr();
       var zero = ctorRef(CodeShape.MomentId.ZERO);
       var suc = ctorRef(CodeShape.MomentId.SUC);
-      if (repr == 0) return makeZero(zero.core);
-      return makeSuc(suc.core, new Arg<>(destruct(repr - 1), true));
+      if (repr.signum() == 0) return makeZero(zero.core);
+      return makeSuc(suc.core, new Arg<>(destruct(repr.subtract(BigInteger.ONE)), true));
     }
   }
 
@@ -0,0 +1,65 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.generic.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.Supplier;
+
+/**
+ * A value computed on first use, at most once even if it is used by several threads.
+ * Two lazy values are equal if their values are.
+ *
+ * @see org.aya.core.serde.AyacFormat
+ */
+public final class Lazy<T> implements Supplier<T> {
+  private volatile @Nullable T value;
+  private @Nullable Supplier<? extends T> supplier;
+
+  private Lazy(@Nullable T value, @Nullable Supplier<? extends T> supplier) {
+    this.value = value;
+    this.supplier = supplier;
+  }
+
+  public static <T> @NotNull Lazy<T> of(@NotNull Supplier<? extends T> supplier) {
+    return new Lazy<>(null, supplier);
+  }
+
+  public static <T> @NotNull Lazy<T> value(@NotNull T value) {
+    return new Lazy<>(value, null);
+  }
+
+  @Override public @NotNull T get() {
+    var value = this.value;
+    if (value != null) return value;
+    synchronized (this) {
+      value = this.value;
+      if (value == null) {
+        assert supplier != null;
+        value = supplier.get();
+        this.value = value;
+        // no longer needed, may hold a lot
+        supplier = null;
+      }
+      return value;
+    }
+  }
+
+  public boolean isComputed() {
+    return value != null;
+  }
+
+  @Override public boolean equals(Object o) {
+    return this == o || o instanceof Lazy<?> lazy && get().equals(lazy.get());
+  }
+
+  @Override public int hashCode() {
+    return get().hashCode();
+  }
+
+  @Override public String toString() {
+    var value = this.value;
+    return value != null ? value.toString() : "<lazy>";
+  }
+}
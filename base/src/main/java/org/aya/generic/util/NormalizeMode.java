@@ -18,4 +18,11 @@ public enum NormalizeMode {
    * Normalize until the head is canonical.
    */
   WHNF,
+  /**
+   * Fully normalize using normalization by evaluation,
+   * supposed to agree with {@link #NF}.
+   *
+   * @see org.aya.core.nbe.Evaluator
+   */
+  NBE,
 }
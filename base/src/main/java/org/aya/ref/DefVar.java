@@ -21,12 +21,20 @@ public final class DefVar<Core extends GenericDef, Concrete extends Decl> implem
   private final @NotNull String name;
   /** Initialized in parsing, so it might be null for deserialized user definitions. */
   public @UnknownNullability Concrete concrete;
-  /** Initialized in type checking or core deserialization, so it might be null for unchecked user definitions. */
-  public @UnknownNullability Core core;
+  /**
+   * Initialized in type checking or core deserialization, so it might be null for unchecked user definitions.
+   * Volatile because the definitions in a module may be checked in parallel.
+   */
+  public volatile @UnknownNullability Core core;
   /** Initialized in the resolver or core deserialization */
   public @Nullable ImmutableSeq<String> module;
   /** Initialized in the resolver or core deserialization */
   public @Nullable OpDecl opDecl;
+  /**
+   * Initialized before type checking or in core deserialization, 0 if unknown.
+   * see {@link org.aya.tyck.order.DeclFingerprint}
+   */
+  public long fingerprint;
   /**
    * Binary operators can be renamed in other modules.
    * Initialized in the resolver or core deserialization.
@@ -8,8 +8,10 @@ import kala.tuple.Tuple;
 import kala.tuple.Tuple3;
 import org.aya.concrete.desugar.AyaBinOpSet;
 import org.aya.concrete.stmt.BindBlock;
+import org.aya.concrete.stmt.Decl;
 import org.aya.concrete.stmt.Stmt;
 import org.aya.concrete.stmt.UseHide;
+import org.aya.core.def.GenericDef;
 import org.aya.core.def.PrimDef;
 import org.aya.core.repr.AyaShape;
 import org.aya.core.repr.CodeShape;
@@ -31,6 +33,8 @@ import org.jetbrains.annotations.NotNull;
  * @param reExports    modules re-exported using `public open` command.
  * @param depGraph     dependency graph of definitions. for each (v, successors) in the graph,
  *                     `successors` should be tycked first.
+ * @param reused       definitions deserialized from the previous build as they did not change, they are not tycked again.
+ *                     see {@link org.aya.tyck.order.DeclFingerprint}
  */
 @Debug.Renderer(text = "thisModule.moduleName().joinToString(\"::\")")
 public record ResolveInfo(
@@ -42,12 +46,13 @@ public record ResolveInfo(
   @NotNull MutableMap<DefVar<?, ?>, Tuple3<RenamedOpDecl, BindBlock, Boolean>> opRename,
   @NotNull MutableMap<ImmutableSeq<String>, ResolveInfo> imports,
   @NotNull MutableMap<ImmutableSeq<String>, UseHide> reExports,
-  @NotNull MutableGraph<TyckOrder> depGraph
+  @NotNull MutableGraph<TyckOrder> depGraph,
+  @NotNull MutableMap<Decl.TopLevel, GenericDef> reused
 ) {
   public ResolveInfo(@NotNull PrimDef.Factory primFactory, @NotNull ModuleContext thisModule, @NotNull ImmutableSeq<Stmt> thisProgram, @NotNull AyaBinOpSet opSet) {
     this(thisModule, thisProgram, primFactory, new AyaShape.Factory(),
       opSet, MutableMap.create(), MutableMap.create(),
-      MutableMap.create(), MutableGraph.create());
+      MutableMap.create(), MutableGraph.create(), MutableMap.create());
   }
 
   /**
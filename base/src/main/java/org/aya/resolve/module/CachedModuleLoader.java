@@ -5,17 +5,27 @@ package org.aya.resolve.module;
 import kala.collection.immutable.ImmutableSeq;
 import kala.collection.mutable.MutableMap;
 import kala.collection.mutable.MutableTreeMap;
+import kala.control.Option;
 import org.aya.concrete.stmt.QualifiedID;
 import org.aya.resolve.ResolveInfo;
 import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
+ * Thread-safe, a module is loaded once even if it is requested by several threads,
+ * others wait for the one loading it.
+ *
  * @author re-xyr
  */
 public class CachedModuleLoader<ML extends ModuleLoader> implements ModuleLoader {
+  /** Guarded by itself */
   private final @NotNull MutableMap<@NotNull String, ResolveInfo> cache = MutableTreeMap.of();
+  /** Held while loading a module */
+  private final @NotNull Map<@NotNull String, Object> locks = new ConcurrentHashMap<>();
   public final @NotNull ML loader;
 
   @Override public @NotNull Reporter reporter() {
@@ -29,6 +39,23 @@ public class CachedModuleLoader<ML extends ModuleLoader> implements ModuleLoader
   @Override public @Nullable ResolveInfo
   load(@NotNull ImmutableSeq<String> path, @NotNull ModuleLoader recurseLoader) {
     var qualified = QualifiedID.join(path);
-    return cache.getOrPut(qualified, () -> loader.load(path, recurseLoader));
+    var cached = cached(qualified);
+    if (cached != null) return cached.getOrNull();
+    synchronized (locks.computeIfAbsent(qualified, k -> new Object())) {
+      cached = cached(qualified);
+      if (cached != null) return cached.getOrNull();
+      var loaded = loader.load(path, recurseLoader);
+      synchronized (cache) {
+        cache.put(qualified, loaded);
+      }
+      return loaded;
+    }
+  }
+
+  /** @return null if not loaded yet, the result may be null if the module is not found */
+  private @Nullable Option<ResolveInfo> cached(@NotNull String qualified) {
+    synchronized (cache) {
+      return cache.containsKey(qualified) ? Option.ofNullable(cache.get(qualified)) : null;
+    }
   }
 }
@@ -11,12 +11,15 @@ import org.aya.resolve.ResolveInfo;
 import org.aya.resolve.context.ModuleContext;
 import org.aya.tyck.order.AyaOrgaTycker;
 import org.aya.tyck.order.AyaSccTycker;
+import org.aya.tyck.order.ParallelOrgaTycker;
 import org.aya.tyck.trace.Trace;
 import org.aya.util.reporter.DelayedReporter;
 import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.concurrent.ForkJoinTask;
+
 /**
  * @author re-xyr
  */
@@ -34,6 +37,18 @@ public interface ModuleLoader {
   default <E extends Exception> @NotNull ResolveInfo
   tyckModule(Trace.Builder builder, ResolveInfo resolveInfo, ModuleCallback<E> onTycked) throws E {
     var SCCs = resolveInfo.depGraph().topologicalOrder();
+    // Checked in parallel on the pool of the current thread if any, so the parallelism is bounded by it.
+    // The trace builder is not thread-safe
+    var pool = ForkJoinTask.getPool();
+    if (builder == null && pool != null && pool.getParallelism() > 1 && SCCs.sizeGreaterThan(1)) {
+      var tycker = new ParallelOrgaTycker(resolveInfo, SCCs, reporter());
+      try {
+        tycker.tyckAll(pool);
+      } finally {
+        if (onTycked != null) onTycked.onModuleTycked(resolveInfo, tycker.wellTyped());
+      }
+      return resolveInfo;
+    }
     var delayedReporter = new DelayedReporter(reporter());
     var sccTycker = new AyaOrgaTycker(AyaSccTycker.create(resolveInfo, builder, delayedReporter), resolveInfo);
     // in case we have un-messaged TyckException
@@ -12,6 +12,7 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 /**
  * Call graph is a multi-graph; each vertex represents a definition and each edge from vertex `f`
@@ -41,24 +42,35 @@ public record CallGraph<T, P>(
     return graph.allMatch((k, ts) -> ts.allMatch((x, t) -> t.isEmpty()));
   }
 
-  /** completing a call graph is just finding its transitive closure */
+  /**
+   * completing a call graph is just finding its transitive closure.
+   * The combinations with the matrices accepted before the last round are already merged,
+   * so we only combine the initial ones with the newly accepted ones.
+   */
   private static <T, P> @NotNull CallGraph<T, P> complete(@NotNull CallGraph<T, P> initial) {
     var step = initial;
+    var delta = initial;
     while (true) {
-      var comb = indirect(initial, step);
+      var comb = indirect(initial, delta);
       var tup = merge(comb, step);
       if (tup._1.isEmpty()) return step; // no better matrices are found, we are complete
+      delta = tup._1; // the newly accepted matrices
       step = tup._2; // got a partially completed call graph, try complete more
     }
   }
 
-  /** find all indirect calls and combine them together */
+  /** find all indirect calls and combine them together, the same combinations of the same call are kept once */
   private static <T, P> @NotNull CallGraph<T, P> indirect(@NotNull CallGraph<T, P> initial, @NotNull CallGraph<T, P> step) {
     var comb = CallGraph.<T, P>create();
+    var seen = MutableMap.<Integer, MutableList<CallMatrix<T, P>>>create();
     initial.graph.forEach((domain, codomains) -> codomains.forEach((codomain, mats) -> mats.forEach(mat -> {
       var indirect = step.graph.getOrNull(mat.codomain());
       if (indirect != null) indirect.forEach((indCodomain, indMats) -> indMats.forEach(ind -> {
         var combine = CallMatrix.combine(mat, ind);
+        var hash = 31 * System.identityHashCode(combine.callable()) + combine.relationsHash();
+        var same = seen.getOrPut(hash, MutableList::create);
+        if (same.anyMatch(m -> m.callable() == combine.callable() && m.sameRelations(combine))) return;
+        same.append(combine);
         comb.put(combine);
       }));
     })));
@@ -128,20 +140,32 @@ public record CallGraph<T, P>(
   public @NotNull ImmutableSeq<Diagonal<T, P>> findBadRecursion() {
     var complete = complete(this);
     var bads = MutableList.<Diagonal<T, P>>create();
+    // the verdicts only depend on the relations, which are often the same for different calls
+    var verdicts = MutableMap.<Integer, MutableList<Tuple2<CallMatrix<T, P>, Boolean>>>create();
     for (var key : complete.graph.keysView()) {
       var matrix = complete.graph.getOption(key)
         .flatMap(g -> g.getOption(key));
       if (matrix.isEmpty()) continue;
-      // idempotent calls can never get worse after completion --- they are already at the bottom.
-      var idempotent = matrix.get().view()
-        .filter(m -> CallMatrix.combine(m, m).notWorseThan(m));
-      // size-change principle: each idempotent call matrix must have a decreasing argument.
-      var bad = idempotent
+      var bad = matrix.get().view()
+        .filter(m -> isBad(m, verdicts.getOrPut(m.relationsHash(), MutableList::create)))
         .map(Diagonal::create)
-        .filterNot(diag -> diag.diagonal().anyMatch(Relation::isDecreasing))
         .toImmutableSeq();
       if (bad.isNotEmpty()) bads.appendAll(bad);
     }
     return bads.toImmutableSeq();
   }
+
+  private static <T, P> boolean isBad(
+    @NotNull CallMatrix<T, P> matrix,
+    @NotNull MutableList<Tuple2<CallMatrix<T, P>, Boolean>> known
+  ) {
+    var verdict = known.find(t -> t._1.sameRelations(matrix));
+    if (verdict.isDefined()) return verdict.get()._2;
+    // idempotent calls can never get worse after completion --- they are already at the bottom.
+    // size-change principle: each idempotent call matrix must have a decreasing argument.
+    var bad = CallMatrix.combine(matrix, matrix).notWorseThan(matrix)
+      && IntStream.range(0, matrix.rows()).noneMatch(i -> PackedRelation.isDecreasing(matrix.get(i, i)));
+    known.append(Tuple.of(matrix, bad));
+    return bad;
+  }
 }
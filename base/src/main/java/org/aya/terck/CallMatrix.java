@@ -7,15 +7,21 @@ import org.aya.core.term.Callable;
 import org.aya.generic.util.InternalException;
 import org.aya.pretty.doc.Doc;
 import org.aya.pretty.doc.Docile;
-import org.aya.util.ArrayUtil;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.Debug;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
 /**
  * A call matrix for a call `f --> g` has dimensions `arity(g) * arity(f)`.
  * Each row corresponds to one argument in the call to `g` (the codomain).
  * Each column corresponds to one formal argument of caller `f` (the domain).
+ * <p>
+ * Most of the relations are unknown, so the rows are sparse: for each row,
+ * {@link #indices} are the ascending columns of the known relations,
+ * and {@link #relations} are the relations {@link PackedRelation packed} in the same order.
  *
  * @author kiva
  * @see Relation
@@ -26,18 +32,21 @@ public record CallMatrix<Def, Param>(
   @NotNull Def domain, @NotNull Def codomain,
   @NotNull ImmutableSeq<Param> domainTele,
   @NotNull ImmutableSeq<Param> codomainTele,
-  @NotNull Relation[][] matrix
+  int @NotNull [] @NotNull [] indices,
+  int @NotNull [] @NotNull [] relations
 ) implements Docile, Selector.Candidate<CallMatrix<Def, Param>> {
+  private static final int[] EMPTY = new int[0];
+
   public CallMatrix(
     @NotNull Callable callable,
     @NotNull Def domain, @NotNull Def codomain,
     @NotNull ImmutableSeq<Param> domainTele,
     @NotNull ImmutableSeq<Param> codomainTele
   ) {
-    // TODO: sparse matrix?
     this(callable, domain, codomain, domainTele, codomainTele,
-      new Relation[codomainTele.size()][domainTele.size()]);
-    ArrayUtil.fill(matrix, Relation.unk());
+      new int[codomainTele.size()][], new int[codomainTele.size()][]);
+    Arrays.fill(indices, EMPTY);
+    Arrays.fill(relations, EMPTY);
   }
 
   public int rows() {
@@ -53,20 +62,66 @@ public record CallMatrix<Def, Param>(
     int col = domainTele.indexOf(domain);
     assert row != -1;
     assert col != -1;
-    matrix[row][col] = relation;
+    set(row, col, PackedRelation.pack(relation));
+  }
+
+  private void set(int row, int col, int relation) {
+    var index = indices[row];
+    var at = Arrays.binarySearch(index, col);
+    if (at >= 0) {
+      if (relation != PackedRelation.UNKNOWN) relations[row][at] = relation;
+      else {
+        indices[row] = remove(index, at);
+        relations[row] = remove(relations[row], at);
+      }
+    } else if (relation != PackedRelation.UNKNOWN) {
+      indices[row] = insert(index, -at - 1, col);
+      relations[row] = insert(relations[row], -at - 1, relation);
+    }
+  }
+
+  private static int @NotNull [] insert(int @NotNull [] array, int at, int value) {
+    var result = new int[array.length + 1];
+    System.arraycopy(array, 0, result, 0, at);
+    result[at] = value;
+    System.arraycopy(array, at, result, at + 1, array.length - at);
+    return result;
+  }
+
+  private static int @NotNull [] remove(int @NotNull [] array, int at) {
+    var result = new int[array.length - 1];
+    System.arraycopy(array, 0, result, 0, at);
+    System.arraycopy(array, at + 1, result, at, array.length - at - 1);
+    return result;
+  }
+
+  /** @return the packed relation at the given position */
+  public int get(int row, int col) {
+    var at = Arrays.binarySearch(indices[row], col);
+    return at >= 0 ? relations[row][at] : PackedRelation.UNKNOWN;
+  }
+
+  public @NotNull Relation relation(int row, int col) {
+    return PackedRelation.unpack(get(row, col));
   }
 
   /** Compare two call matrices by their decrease amount. */
   @Override public @NotNull Selector.DecrOrd compare(@NotNull CallMatrix<Def, Param> other) {
     if (this.domain != other.domain || this.codomain != other.codomain) return Selector.DecrOrd.Unk;
     var rel = Selector.DecrOrd.Eq;
-    for (int i = 0; i < rows(); i++)
-      for (int j = 0; j < cols(); j++) {
-        var m = this.matrix[i][j];
-        var n = other.matrix[i][j];
-        var cmp = m.compare(n);
-        rel = rel.mul(cmp);
+    // two unknowns are equal, which is the unit of mul, so we only visit the known ones in either matrix
+    for (int i = 0; i < rows() && rel != Selector.DecrOrd.Unk; i++) {
+      var lIndex = this.indices[i];
+      var rIndex = other.indices[i];
+      int l = 0, r = 0;
+      while (l < lIndex.length || r < rIndex.length) {
+        var lCol = l < lIndex.length ? lIndex[l] : Integer.MAX_VALUE;
+        var rCol = r < rIndex.length ? rIndex[r] : Integer.MAX_VALUE;
+        var m = lCol <= rCol ? this.relations[i][l++] : PackedRelation.UNKNOWN;
+        var n = rCol <= lCol ? other.relations[i][r++] : PackedRelation.UNKNOWN;
+        rel = rel.mul(PackedRelation.compare(m, n));
       }
+    }
     return rel;
   }
 
@@ -85,16 +140,48 @@ public record CallMatrix<Def, Param>(
     var BA = new CallMatrix<>(B.callable, A.domain, B.codomain,
       A.domainTele, B.codomainTele);
 
-    for (int i = 0; i < BA.rows(); i++)
-      for (int j = 0; j < BA.cols(); j++)
-        for (int k = 0; k < B.cols(); k++)
-          BA.matrix[i][j] = BA.matrix[i][j].add(B.matrix[i][k].mul(A.matrix[k][j]));
+    // multiplying by or adding an unknown changes nothing, so we only visit the known relations
+    var row = new int[BA.cols()];
+    var touched = new int[BA.cols()];
+    for (int i = 0; i < BA.rows(); i++) {
+      Arrays.fill(row, PackedRelation.UNKNOWN);
+      var size = 0;
+      var bIndex = B.indices[i];
+      for (int bk = 0; bk < bIndex.length; bk++) {
+        var k = bIndex[bk];
+        var b = B.relations[i][bk];
+        var aIndex = A.indices[k];
+        for (int aj = 0; aj < aIndex.length; aj++) {
+          var j = aIndex[aj];
+          if (row[j] == PackedRelation.UNKNOWN) touched[size++] = j;
+          row[j] = PackedRelation.add(row[j], PackedRelation.mul(b, A.relations[k][aj]));
+        }
+      }
+      var index = Arrays.copyOf(touched, size);
+      Arrays.sort(index);
+      BA.indices[i] = index;
+      BA.relations[i] = Arrays.stream(index).map(j -> row[j]).toArray();
+    }
     return BA;
   }
 
+  /** @return whether the two matrices have the same relations, regardless of the calls */
+  public boolean sameRelations(@NotNull CallMatrix<Def, Param> other) {
+    return domain == other.domain && codomain == other.codomain
+      && Arrays.deepEquals(indices, other.indices)
+      && Arrays.deepEquals(relations, other.relations);
+  }
+
+  /** @see #sameRelations(CallMatrix) */
+  public int relationsHash() {
+    return 31 * Arrays.deepHashCode(indices) + Arrays.deepHashCode(relations);
+  }
+
   public @NotNull Doc toDoc() {
-    var lines = ImmutableSeq.from(matrix)
-      .map(row -> Doc.stickySep(ImmutableSeq.from(row).map(Relation::toDoc)));
+    var lines = IntStream.range(0, rows()).mapToObj(i ->
+        Doc.stickySep(IntStream.range(0, cols()).mapToObj(j -> relation(i, j).toDoc())
+          .collect(ImmutableSeq.factory())))
+      .collect(ImmutableSeq.factory());
     return Doc.vcat(lines);
   }
 }
@@ -16,7 +16,7 @@ public record Diagonal<T, P>(
   public static <T, P> @NotNull Diagonal<T, P> create(@NotNull CallMatrix<T, P> matrix) {
     assert matrix.rows() == matrix.cols();
     var diag = IntStream.range(0, matrix.rows())
-      .mapToObj(i -> matrix.matrix()[i][i])
+      .mapToObj(i -> matrix.relation(i, i))
       .collect(ImmutableSeq.factory());
     return new Diagonal<>(matrix, diag);
   }
@@ -0,0 +1,72 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.terck;
+
+import org.aya.generic.util.InternalException;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * {@link Relation}s packed in <code>int</code>s, so that call matrices are arrays of primitives.
+ * A decrease is packed as <code>size << 1 | usable</code>,
+ * and {@link #UNKNOWN} is a value that no decrease of a reasonable size takes.
+ * The operations agree with the ones in {@link Relation}.
+ *
+ * @see CallMatrix
+ */
+public final class PackedRelation {
+  public static final int UNKNOWN = Integer.MIN_VALUE;
+
+  private PackedRelation() {
+  }
+
+  public static int pack(@NotNull Relation relation) {
+    return switch (relation) {
+      case Relation.Unknown ignored -> UNKNOWN;
+      case Relation.Decrease d -> decr(d.usable(), d.size());
+    };
+  }
+
+  public static @NotNull Relation unpack(int relation) {
+    return relation == UNKNOWN ? Relation.unk() : Relation.decr(usable(relation), size(relation));
+  }
+
+  public static int decr(boolean usable, int size) {
+    return size << 1 | (usable ? 1 : 0);
+  }
+
+  private static boolean usable(int relation) {
+    return (relation & 1) != 0;
+  }
+
+  private static int size(int relation) {
+    return relation >> 1;
+  }
+
+  /** @see Relation#mul(Relation) */
+  public static int mul(int lhs, int rhs) {
+    if (lhs == UNKNOWN || rhs == UNKNOWN) return UNKNOWN;
+    return decr(usable(lhs) || usable(rhs), size(lhs) + size(rhs));
+  }
+
+  /** @see Relation#add(Relation) */
+  public static int add(int lhs, int rhs) {
+    return switch (compare(lhs, rhs)) {
+      case Lt -> rhs;
+      case Eq, Gt -> lhs;
+      case Unk -> throw new InternalException("unreachable");
+    };
+  }
+
+  /** @see Relation#compare(Relation) */
+  public static @NotNull Selector.DecrOrd compare(int lhs, int rhs) {
+    if (lhs == UNKNOWN) return rhs == UNKNOWN ? Selector.DecrOrd.Eq : Selector.DecrOrd.Lt;
+    if (rhs == UNKNOWN) return Selector.DecrOrd.Gt;
+    return Selector.DecrOrd.compareBool(usable(lhs), usable(rhs))
+      .add(Selector.DecrOrd.compareInt(size(lhs), size(rhs)));
+  }
+
+  /** @see Relation#isDecreasing() */
+  public static boolean isDecreasing(int relation) {
+    return relation != UNKNOWN && usable(relation) && size(relation) > 0;
+  }
+}
@@ -0,0 +1,115 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.tyck;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableMap;
+import org.aya.core.Meta;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Postponed equations, indexed by the unsolved metas they mention,
+ * so that solving a meta only retries the equations that depend on it.
+ * Solved metas are queued by {@link #wake}, and the equations are taken by {@link #takeWoken()}.
+ * The changes are logged in the {@link Trail} of the state, so they are undone by {@link TyckState#rollback}.
+ *
+ * @see TyckState#addEqn
+ * @see TyckState#simplify
+ */
+public final class EqnStore {
+  private static final class Entry {
+    private final @NotNull TyckState.Eqn eqn;
+    private boolean taken = false;
+
+    private Entry(@NotNull TyckState.Eqn eqn) {
+      this.eqn = eqn;
+    }
+  }
+
+  /** In the order of addition, taken entries are removed lazily */
+  private final @NotNull MutableList<Entry> entries = MutableList.create();
+  private int taken = 0;
+  private final @NotNull MutableMap<Meta, MutableList<Entry>> dependents = MutableMap.create();
+  private final @NotNull MutableList<Meta> woken = MutableList.create();
+  private final @NotNull Trail trail;
+
+  EqnStore(@NotNull Trail trail) {
+    this.trail = trail;
+  }
+
+  /** @param metas the unsolved metas in <code>eqn</code> */
+  public void add(@NotNull TyckState.Eqn eqn, @NotNull Iterable<Meta> metas) {
+    var entry = new Entry(eqn);
+    entries.append(entry);
+    for (var meta : metas) dependents.getOrPut(meta, MutableList::create).append(entry);
+    trail.log(() -> {
+      entries.removeLast();
+      for (var meta : metas) {
+        var deps = dependents.get(meta);
+        deps.removeLast();
+        if (deps.isEmpty()) dependents.remove(meta);
+      }
+    });
+  }
+
+  /** Called when <code>meta</code> is solved */
+  public void wake(@NotNull Meta meta) {
+    if (!dependents.containsKey(meta)) return;
+    woken.append(meta);
+    trail.log(woken::removeLast);
+  }
+
+  /** @return the equations depending on the metas solved since last time, removed from the store */
+  public @NotNull ImmutableSeq<TyckState.Eqn> takeWoken() {
+    if (woken.isEmpty()) return ImmutableSeq.empty();
+    var result = MutableList.<TyckState.Eqn>create();
+    for (var meta : woken) {
+      var entries = dependents.remove(meta);
+      if (entries.isEmpty()) continue;
+      trail.log(() -> dependents.put(meta, entries.get()));
+      for (var entry : entries.get()) {
+        if (entry.taken) continue;
+        entry.taken = true;
+        taken++;
+        trail.log(() -> {
+          entry.taken = false;
+          taken--;
+        });
+        result.append(entry.eqn);
+      }
+    }
+    if (trail.recording()) {
+      var old = woken.toImmutableSeq();
+      trail.log(() -> woken.appendAll(old));
+    }
+    woken.clear();
+    if (taken > entries.size() / 2) {
+      if (trail.recording()) {
+        var old = entries.toImmutableSeq();
+        var oldTaken = taken;
+        trail.log(() -> {
+          entries.clear();
+          entries.appendAll(old);
+          taken = oldTaken;
+        });
+      }
+      entries.retainIf(entry -> !entry.taken);
+      taken = 0;
+    }
+    return result.toImmutableSeq();
+  }
+
+  public boolean isEmpty() {
+    return entries.size() == taken;
+  }
+
+  public boolean isNotEmpty() {
+    return !isEmpty();
+  }
+
+  /** @return the equations in the store, in the order of addition */
+  public @NotNull ImmutableSeq<TyckState.Eqn> toImmutableSeq() {
+    return entries.view().filterNot(entry -> entry.taken).map(entry -> entry.eqn).toImmutableSeq();
+  }
+}
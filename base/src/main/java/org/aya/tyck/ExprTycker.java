@@ -34,7 +34,7 @@ import org.aya.ref.AnyVar;
 import org.aya.ref.DefVar;
 import org.aya.ref.LocalVar;
 import org.aya.tyck.env.LocalCtx;
-import org.aya.tyck.env.MapLocalCtx;
+import org.aya.tyck.env.PersistentLocalCtx;
 import org.aya.tyck.error.*;
 import org.aya.tyck.pat.PatTycker;
 import org.aya.tyck.pat.TypedSubst;
@@ -48,6 +48,7 @@ import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.math.BigInteger;
 import java.util.Objects;
 import java.util.function.IntPredicate;
 import java.util.function.UnaryOperator;
@@ -59,7 +60,7 @@ import java.util.stream.Collectors;
  * and do <em>not</em> reuse instances of this class in the tycking of multiple {@link Decl.TopLevel}s.
  */
 public final class ExprTycker extends Tycker {
-  public @NotNull LocalCtx localCtx = new MapLocalCtx();
+  public @NotNull LocalCtx localCtx = new PersistentLocalCtx();
 
   /**
    * a `let` sequence, consider we are tycking in
@@ -258,7 +259,7 @@ public final class ExprTycker extends Tycker {
       case Expr.Hole hole -> inherit(hole, localCtx.freshHole(null, Constants.randomName(hole), hole.sourcePos())._2);
       case Expr.Error err -> TermResult.error(err.description());
       case Expr.LitInt lit -> {
-        int integer = lit.integer();
+        var integer = BigInteger.valueOf(lit.integer());
         // TODO[literal]: int literals. Currently the parser does not allow negative literals.
         var defs = shapeFactory.findImpl(AyaShape.NAT_SHAPE);
         if (defs.isEmpty()) yield fail(expr, new NoRuleError(expr, null));
@@ -72,7 +72,7 @@ public record LittleTyper(@NotNull TyckState state, @NotNull LocalCtx localCtx)
       case PiTerm pi -> {
         var paramTyRaw = whnf(term(pi.param().type()));
         var resultParam = new Term.Param(pi.param().ref(), whnf(pi.param().type()), pi.param().explicit());
-        var t = new LittleTyper(state, localCtx.deriveMap());
+        var t = new LittleTyper(state, localCtx.derive());
         yield t.localCtx.with(resultParam, () -> {
           var retTyRaw = whnf(t.term(pi.body()));
           if (paramTyRaw instanceof SortTerm paramTy && retTyRaw instanceof SortTerm retTy) {
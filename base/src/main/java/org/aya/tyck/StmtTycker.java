@@ -6,6 +6,7 @@ import kala.collection.immutable.ImmutableMap;
 import kala.collection.immutable.ImmutableSeq;
 import kala.control.Either;
 import kala.control.Option;
+import kala.value.MutableValue;
 import org.aya.concrete.Expr;
 import org.aya.concrete.Pattern;
 import org.aya.concrete.stmt.ClassDecl;
@@ -15,10 +16,12 @@ import org.aya.core.def.*;
 import org.aya.core.pat.Pat;
 import org.aya.core.repr.AyaShape;
 import org.aya.core.term.DataCall;
+import org.aya.core.term.FnCall;
 import org.aya.core.term.PiTerm;
 import org.aya.core.term.SortTerm;
 import org.aya.core.term.Term;
 import org.aya.core.visitor.Subst;
+import org.aya.core.visitor.TermConsumer;
 import org.aya.generic.Modifier;
 import org.aya.generic.SortKind;
 import org.aya.guest0x0.cubical.Partial;
@@ -57,7 +60,7 @@ public record StmtTycker(@NotNull Reporter reporter, Trace.@Nullable Builder tra
   traced(@NotNull S yeah, ExprTycker p, @NotNull BiFunction<S, ExprTycker, D> f) {
     tracing(builder -> builder.shift(new Trace.DeclT(yeah.ref(), yeah.sourcePos())));
     var parent = p.localCtx;
-    p.localCtx = parent.deriveMap();
+    p.localCtx = parent.derive();
     var r = f.apply(yeah, p);
     tracing(Trace.Builder::reduce);
     p.localCtx = parent;
@@ -76,7 +79,7 @@ public record StmtTycker(@NotNull Reporter reporter, Trace.@Nullable Builder tra
       case TeleDecl.FnDecl decl -> {
         assert signature != null;
         var factory = FnDef.factory((resultTy, body) ->
-          new FnDef(decl.ref, signature.param(), resultTy, decl.modifiers, body));
+          new FnDef(decl.ref, signature.param(), resultTy, decl.modifiers, body, height(body)));
         yield decl.body.fold(
           body -> {
             var nobody = tycker.check(body, signature.result()).wellTyped();
@@ -168,7 +171,21 @@ public record StmtTycker(@NotNull Reporter reporter, Trace.@Nullable Builder tra
     var tele = zonkTele(tycker, okTele);
     fn.signature = new Def.Signature(tele, result);
     var body = tycker.zonk(prebody);
-    return new FnDef(fn.ref, tele, result, fn.modifiers, Either.left(body));
+    return new FnDef(fn.ref, tele, result, fn.modifiers, Either.left(body), height(Either.left(body)));
+  }
+
+  /** @see FnDef#height */
+  private static int height(@NotNull Either<Term, ImmutableSeq<Term.Matching>> body) {
+    var height = MutableValue.create(0);
+    var consumer = new TermConsumer() {
+      @Override public void pre(@NotNull Term term) {
+        // Recursive calls are not checked yet, so they do not count
+        if (term instanceof FnCall fn && fn.ref().core != null)
+          height.set(Math.max(height.get(), fn.ref().core.height));
+      }
+    };
+    body.forEach(consumer, clauses -> clauses.forEach(clause -> consumer.accept(clause.body())));
+    return height.get() + 1;
   }
 
   public void tyckHeader(@NotNull Decl decl, @NotNull ExprTycker tycker) {
@@ -0,0 +1,63 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.tyck;
+
+import kala.collection.mutable.MutableList;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The undo log of a {@link TyckState}. Changes are only logged while a snapshot is taken,
+ * so taking a snapshot is O(1), and rolling back costs as much as the changes since then.
+ *
+ * @see TyckState#snapshot()
+ */
+public final class Trail {
+  private final @NotNull MutableList<Runnable> undo = MutableList.create();
+  /** The number of snapshots not yet rolled back or committed */
+  private int open = 0;
+  private int version = 0;
+
+  boolean recording() {
+    return open > 0;
+  }
+
+  /** Check {@link #recording()} first to avoid creating <code>undo</code> */
+  void log(@NotNull Runnable undo) {
+    if (open > 0) this.undo.append(undo);
+  }
+
+  /** Called when a meta is solved */
+  void changed() {
+    version++;
+  }
+
+  /** @return a number that changes whenever a meta is solved or a solution is rolled back */
+  public int version() {
+    return version;
+  }
+
+  int mark() {
+    open++;
+    return undo.size();
+  }
+
+  /** @return whether anything is undone */
+  boolean rollback(int mark) {
+    assert open > 0 && mark <= undo.size() : "Rolling back a released snapshot";
+    var changed = undo.size() > mark;
+    while (undo.size() > mark) undo.removeLast().run();
+    if (changed) version++;
+    release();
+    return changed;
+  }
+
+  void commit(int mark) {
+    assert open > 0 && mark <= undo.size() : "Committing a released snapshot";
+    release();
+  }
+
+  private void release() {
+    // The outer snapshots may still roll back the changes kept by an inner one
+    if (--open == 0) undo.clear();
+  }
+}
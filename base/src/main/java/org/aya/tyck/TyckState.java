@@ -4,37 +4,102 @@ package org.aya.tyck;
 
 import kala.collection.mutable.MutableList;
 import kala.collection.mutable.MutableMap;
+import kala.tuple.Tuple;
 import org.aya.core.Meta;
 import org.aya.core.def.PrimDef;
 import org.aya.core.term.MetaTerm;
 import org.aya.core.term.Term;
+import org.aya.core.visitor.Subst;
 import org.aya.core.visitor.TermConsumer;
-import org.aya.core.visitor.TermFolder;
+import org.aya.core.visitor.TermInterner;
+import org.aya.core.visitor.WHNFCache;
 import org.aya.generic.AyaDocile;
 import org.aya.pretty.doc.Doc;
 import org.aya.tyck.env.LocalCtx;
 import org.aya.tyck.error.HoleProblem;
+import org.aya.tyck.trace.Profiler;
 import org.aya.tyck.trace.Trace;
 import org.aya.tyck.unify.Unifier;
 import org.aya.util.Ordering;
 import org.aya.util.distill.DistillerOptions;
 import org.aya.util.error.SourcePos;
-import org.aya.util.error.WithPos;
 import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 /**
  * Currently we only deal with ambiguous equations (so no 'stuck' equations).
+ *
+ * @param trail the undo log for {@link #snapshot()}
  */
 public record TyckState(
-  @NotNull MutableList<Eqn> eqns,
-  @NotNull MutableList<WithPos<Meta>> activeMetas,
+  @NotNull EqnStore eqns,
   @NotNull MutableMap<@NotNull Meta, @NotNull Term> metas,
-  @NotNull PrimDef.Factory primFactory
+  @NotNull PrimDef.Factory primFactory,
+  @NotNull WHNFCache whnfCache,
+  @Nullable TermInterner interner,
+  @NotNull Trail trail
 ) {
+  /** Shared by the states created by {@link #TyckState(PrimDef.Factory)}, see {@link #internTerms(boolean)} */
+  private static volatile @Nullable TermInterner sharedInterner = null;
+
   public TyckState(@NotNull PrimDef.Factory primFactory) {
-    this(MutableList.create(), MutableList.create(), MutableMap.create(), primFactory);
+    this(primFactory, sharedInterner, new Trail());
+  }
+
+  /**
+   * Makes the states created from now on hash-cons the terms stored in the core definitions and the solutions of metas,
+   * with one interner shared by all of them, used by the <code>--intern-terms</code> option
+   */
+  public static void internTerms(boolean intern) {
+    sharedInterner = intern ? new TermInterner() : null;
+  }
+
+  private TyckState(@NotNull PrimDef.Factory primFactory, @Nullable TermInterner interner, @NotNull Trail trail) {
+    this(new EqnStore(trail), MutableMap.create(), primFactory, new WHNFCache(), interner, trail);
+  }
+
+  /** The solutions and equations at some point, see {@link #rollback} */
+  public record Snapshot(int mark) {
+  }
+
+  /**
+   * Takes a snapshot in O(1) before trying something that may fail. It must be released,
+   * either by {@link #rollback} or {@link #commit}, in the reverse order of taking.
+   *
+   * @see org.aya.tyck.unify.TermComparator#compareApprox
+   */
+  public @NotNull Snapshot snapshot() {
+    return new Snapshot(trail.mark());
+  }
+
+  /** Forgets the solutions, the equations and the conditions of holes since <code>snapshot</code> was taken */
+  public void rollback(@NotNull Snapshot snapshot) {
+    if (trail.rollback(snapshot.mark)) whnfCache.invalidate();
+  }
+
+  /** Keeps the changes since <code>snapshot</code> was taken, unless an outer snapshot is rolled back */
+  public void commit(@NotNull Snapshot snapshot) {
+    trail.commit(snapshot.mark);
+  }
+
+  /**
+   * Always use this method to solve a meta instead of modifying {@link #metas()} directly,
+   * because normal forms computed before the solution is known are now outdated.
+   */
+  public void solve(@NotNull Meta meta, @NotNull Term solution) {
+    if (interner != null) solution = interner.intern(solution);
+    metas.put(meta, solution);
+    if (trail.recording()) trail.log(() -> metas.remove(meta));
+    trail.changed();
+    whnfCache.invalidate();
+    eqns.wake(meta);
+  }
+
+  /** Always use this method to add a condition to a hole, so it is undone by {@link #rollback} */
+  public void addCondition(@NotNull Meta hole, @NotNull Subst subst, @NotNull Term term) {
+    hole.conditions.append(Tuple.of(subst, term));
+    if (trail.recording()) trail.log(hole.conditions::removeLast);
   }
 
   /**
@@ -44,28 +109,26 @@ public record TyckState(
     @NotNull Reporter reporter, Trace.@Nullable Builder tracer,
     @NotNull Eqn eqn, boolean trying
   ) {
+    var profiler = Profiler.current();
+    var start = profiler != null ? System.nanoTime() : 0;
     new Unifier(eqn.cmp, reporter, !trying, trying, tracer, this, eqn.pos, eqn.localCtx).checkEqn(eqn);
+    if (profiler != null) profiler.solvedEqn(eqn.pos, System.nanoTime() - start);
   }
 
-  /** @return true if <code>this.eqns</code> and <code>this.activeMetas</code> are mutated. */
+  /**
+   * Retries the equations depending on the solved metas, which may solve more metas.
+   *
+   * @return true if <code>this.eqns</code> is mutated.
+   */
   public boolean simplify(
     @NotNull Reporter reporter, @Nullable Trace.Builder tracer
   ) {
-    var removingMetas = MutableList.<WithPos<Meta>>create();
-    for (var activeMeta : activeMetas) {
-      if (metas.containsKey(activeMeta.data())) {
-        var usageCounter = new TermFolder.Usages(activeMeta.data());
-        eqns.retainIf(eqn -> {
-          if (usageCounter.apply(eqn.lhs) + usageCounter.apply(eqn.rhs) > 0) {
-            solveEqn(reporter, tracer, eqn, true);
-            return false;
-          } else return true;
-        });
-        removingMetas.append(activeMeta);
-      }
+    var mutated = false;
+    for (var woken = eqns.takeWoken(); woken.isNotEmpty(); woken = eqns.takeWoken()) {
+      mutated = true;
+      for (var eqn : woken) solveEqn(reporter, tracer, eqn, true);
     }
-    activeMetas.removeIf(removingMetas::contains);
-    return removingMetas.isNotEmpty();
+    return mutated;
   }
 
   public void solveMetas(@NotNull Reporter reporter, @Nullable Trace.Builder traceBuilder) {
@@ -81,19 +144,27 @@ public record TyckState(
     }
   }
 
+  /**
+   * A state without solutions or equations, sharing nothing mutable with this one,
+   * used to compare terms without metas on another thread.
+   */
+  public @NotNull TyckState detached() {
+    return new TyckState(primFactory, interner, new Trail());
+  }
+
   public void addEqn(@NotNull Eqn eqn) {
-    eqns.append(eqn);
-    var currentActiveMetas = activeMetas.size();
+    var blocking = MutableList.<Meta>create();
     var consumer = new TermConsumer() {
       @Override public void pre(@NotNull Term tm) {
-        if (tm instanceof MetaTerm hole && !metas.containsKey(hole.ref()))
-            activeMetas.append(new WithPos<>(eqn.pos, hole.ref()));
+        if (tm instanceof MetaTerm hole && !metas.containsKey(hole.ref()) && !blocking.contains(hole.ref()))
+          blocking.append(hole.ref());
         TermConsumer.super.pre(tm);
       }
     };
     consumer.accept(eqn.lhs);
     consumer.accept(eqn.rhs);
-    assert activeMetas.sizeGreaterThan(currentActiveMetas) : "Adding a bad equation";
+    assert blocking.isNotEmpty() : "Adding a bad equation";
+    eqns.add(eqn, blocking);
   }
 
   public record Eqn(
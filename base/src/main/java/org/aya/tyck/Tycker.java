@@ -36,8 +36,11 @@ public abstract class Tycker {
     this.traceBuilder = traceBuilder;
   }
 
+  /** @return the term stored in the core definitions, shared with equal ones if {@link TyckState#interner()} is present */
   public @NotNull Term zonk(@NotNull Term term) {
-    return Zonker.make(this).apply(term);
+    var zonked = Zonker.make(this).apply(term);
+    var interner = state.interner();
+    return interner == null ? zonked : interner.intern(zonked);
   }
 
   public void solveMetas() {
@@ -19,6 +19,7 @@ import org.aya.generic.Constants;
 import org.aya.generic.util.InternalException;
 import org.aya.ref.LocalVar;
 import org.aya.tyck.TyckState;
+import org.aya.util.Arg;
 import org.aya.util.error.SourcePos;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.Debug;
@@ -28,7 +29,7 @@ import org.jetbrains.annotations.Nullable;
 import java.util.function.Supplier;
 
 @Debug.Renderer(hasChildren = "true", childrenArray = "extract().toArray()")
-public sealed interface LocalCtx permits MapLocalCtx, SeqLocalCtx {
+public sealed interface LocalCtx permits MapLocalCtx, PersistentLocalCtx, SeqLocalCtx {
   @NotNull default Tuple2<MetaTerm, Term> freshHole(@NotNull Term type, @NotNull SourcePos sourcePos) {
     return freshHole(type, Constants.ANONYMOUS_PREFIX, sourcePos);
   }
@@ -36,7 +37,7 @@ public sealed interface LocalCtx permits MapLocalCtx, SeqLocalCtx {
   freshHole(@Nullable Term type, @NotNull String name, @NotNull SourcePos sourcePos) {
     var ctxTele = extract();
     var meta = Meta.from(ctxTele, name, type, sourcePos);
-    var hole = new MetaTerm(meta, ctxTele.map(Term.Param::toArg), meta.telescope.map(Term.Param::toArg));
+    var hole = new MetaTerm(meta, extractArgs(), meta.telescope.map(Term.Param::toArg));
     return Tuple.of(hole, LamTerm.make(meta.telescope, hole));
   }
   default <T> T with(@NotNull Term.Param param, @NotNull Supplier<T> action) {
@@ -93,6 +94,10 @@ public sealed interface LocalCtx permits MapLocalCtx, SeqLocalCtx {
     }
     return ctx.toImmutableSeq();
   }
+  /** @return the variables of {@link #extract()} as arguments */
+  default @NotNull ImmutableSeq<Arg<Term>> extractArgs() {
+    return extract().map(Term.Param::toArg);
+  }
   @Contract(mutates = "param1") void extractToLocal(@NotNull MutableList<Term.Param> dest);
   @Contract(pure = true) default @NotNull Term get(@NotNull LocalVar var) {
     var ctx = this;
@@ -110,6 +115,10 @@ public sealed interface LocalCtx permits MapLocalCtx, SeqLocalCtx {
   }
   void put(@NotNull LocalVar var, @NotNull Term term);
   boolean isEmpty();
+  /** @see PersistentLocalCtx */
+  @Contract(" -> new") default @NotNull LocalCtx derive() {
+    return new PersistentLocalCtx(this);
+  }
   @Contract(" -> new") default @NotNull MapLocalCtx deriveMap() {
     return new MapLocalCtx(MutableLinkedHashMap.of(), this);
   }
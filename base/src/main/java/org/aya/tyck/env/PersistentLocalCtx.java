@@ -0,0 +1,171 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.tyck.env;
+
+import kala.collection.SeqView;
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableMap;
+import org.aya.core.term.Term;
+import org.aya.ref.LocalVar;
+import org.aya.util.Arg;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A local context whose bindings form an immutable cons list, shared with the contexts derived from it.
+ * Each node caches the telescope up to it once extracted, so creating metas in the same context,
+ * or in a context that only extends it, does not rebuild the telescope.
+ * <p>
+ * A derived context shares the bindings of its parent as they are at the time of derivation,
+ * the bindings added to the parent later are visible to {@link #get} but not to {@link #extract()},
+ * unlike {@link MapLocalCtx}. This is how the type checker uses a derived context:
+ * the parent is not extended until the derived one is dropped.
+ * Variables are added and removed in a stack discipline, which is cheap, others cost linear time.
+ *
+ * @see LocalCtx#derive()
+ */
+public final class PersistentLocalCtx implements LocalCtx {
+  private static final class Node {
+    private final @NotNull LocalVar var;
+    private final @NotNull Term type;
+    private final @Nullable Node prev;
+    /** Cached, null if not extracted yet */
+    private @Nullable ImmutableSeq<Term.Param> tele;
+    private @Nullable ImmutableSeq<Arg<Term>> args;
+
+    private Node(@NotNull LocalVar var, @NotNull Term type, @Nullable Node prev) {
+      this.var = var;
+      this.type = type;
+      this.prev = prev;
+    }
+
+    private @NotNull Term.Param param() {
+      return new Term.Param(var, type, false);
+    }
+  }
+
+  private final @Nullable LocalCtx parent;
+  /**
+   * The bindings of the closest ancestor that is not persistent, which come before all the nodes,
+   * extracted once when the first persistent context after it is created
+   */
+  private final @NotNull Prefix prefix;
+  /** The nodes shared with the parent */
+  private final @Nullable Node base;
+  private @Nullable Node top;
+  /** The bindings above {@link #base} */
+  private final @NotNull MutableMap<LocalVar, Term> local = MutableMap.create();
+
+  public PersistentLocalCtx() {
+    this(null);
+  }
+
+  public PersistentLocalCtx(@Nullable LocalCtx parent) {
+    this.parent = parent;
+    if (parent instanceof PersistentLocalCtx persistent) {
+      this.prefix = persistent.prefix;
+      this.base = persistent.top;
+    } else {
+      this.prefix = parent == null ? Prefix.EMPTY : new Prefix(parent.extract());
+      this.base = null;
+    }
+    this.top = base;
+  }
+
+  /** The telescopes of the nodes start with it, so a node caches the whole telescope */
+  private static final class Prefix {
+    private static final @NotNull Prefix EMPTY = new Prefix(ImmutableSeq.empty());
+    private final @NotNull ImmutableSeq<Term.Param> tele;
+    private @Nullable ImmutableSeq<Arg<Term>> args;
+
+    private Prefix(@NotNull ImmutableSeq<Term.Param> tele) {
+      this.tele = tele;
+    }
+
+    private @NotNull ImmutableSeq<Arg<Term>> args() {
+      if (args == null) args = tele.map(Term.Param::toArg);
+      return args;
+    }
+  }
+
+  @Override public @Nullable LocalCtx parent() {
+    return parent;
+  }
+
+  @Override public @Nullable Term getLocal(@NotNull LocalVar var) {
+    return local.getOrNull(var);
+  }
+
+  @Override public void put(@NotNull LocalVar var, @NotNull Term term) {
+    if (local.containsKey(var)) {
+      // Overwrite in place, like the map based context
+      top = rebuild(var, term);
+    } else top = new Node(var, term, top);
+    local.put(var, term);
+  }
+
+  @Override public void remove(@NotNull SeqView<LocalVar> vars) {
+    for (var var : vars) {
+      if (!local.containsKey(var)) continue;
+      local.remove(var);
+      top = rebuild(var, null);
+    }
+  }
+
+  /** Replace the node of <code>var</code> above {@link #base}, or drop it if <code>type</code> is null */
+  private @Nullable Node rebuild(@NotNull LocalVar var, @Nullable Term type) {
+    assert top != null;
+    if (top.var == var) return type == null ? top.prev : new Node(var, type, top.prev);
+    var above = MutableList.<Node>create();
+    var node = top;
+    while (node != null && node.var != var) {
+      above.append(node);
+      node = node.prev;
+    }
+    assert node != null && node != base;
+    var result = type == null ? node.prev : new Node(var, type, node.prev);
+    for (var n : above.view().reversed()) result = new Node(n.var, n.type, result);
+    return result;
+  }
+
+  @Override public void extractToLocal(@NotNull MutableList<Term.Param> dest) {
+    var params = MutableList.<Term.Param>create();
+    for (var node = top; node != base; node = node.prev) {
+      assert node != null;
+      params.append(node.param());
+    }
+    dest.appendAll(params.view().reversed());
+  }
+
+  @Override public @NotNull ImmutableSeq<Term.Param> extract() {
+    return telescope(top);
+  }
+
+  @Override public @NotNull ImmutableSeq<Arg<Term>> extractArgs() {
+    if (top == null) return prefix.args();
+    var args = top.args;
+    if (args == null) top.args = args = telescope(top).map(Term.Param::toArg);
+    return args;
+  }
+
+  /** Computed from the closest extracted node, and cached in <code>node</code> */
+  private @NotNull ImmutableSeq<Term.Param> telescope(@Nullable Node node) {
+    if (node == null) return prefix.tele;
+    if (node.tele != null) return node.tele;
+    var uncached = MutableList.<Term.Param>create();
+    var n = node;
+    while (n != null && n.tele == null) {
+      uncached.append(n.param());
+      n = n.prev;
+    }
+    var cached = n == null ? prefix.tele : n.tele;
+    var tele = cached.appendedAll(uncached.view().reversed());
+    node.tele = tele;
+    return tele;
+  }
+
+  @Override public boolean isEmpty() {
+    return top == null && prefix.tele.isEmpty();
+  }
+}
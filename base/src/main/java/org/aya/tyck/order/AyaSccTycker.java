@@ -60,7 +60,7 @@ public record AyaSccTycker(
 
   public @NotNull ImmutableSeq<TyckOrder> tyckSCC(@NotNull ImmutableSeq<TyckOrder> scc) {
     try {
-      if (scc.isEmpty()) return ImmutableSeq.empty();
+      if (scc.isEmpty() || reused(scc)) return ImmutableSeq.empty();
       if (scc.sizeEquals(1)) checkUnit(scc.first());
       else checkMutual(scc);
       return ImmutableSeq.empty();
@@ -70,6 +70,28 @@ public record AyaSccTycker(
     }
   }
 
+  /**
+   * The definitions that did not change since the previous build are not checked again,
+   * their fingerprints include the SCC, so either all or none of the SCC are reused.
+   *
+   * @see ResolveInfo#reused()
+   */
+  private boolean reused(@NotNull ImmutableSeq<TyckOrder> scc) {
+    var reused = resolveInfo.reused();
+    if (reused.isEmpty() || !scc.allMatch(order -> {
+      var owner = ParallelOrgaTycker.owner(order.unit());
+      return owner != null && reused.containsKey(owner);
+    })) return false;
+    scc.forEach(order -> {
+      if (order instanceof TyckOrder.Body && order.unit() instanceof Decl.TopLevel decl) {
+        var def = reused.get(decl);
+        wellTyped.append(def);
+        resolveInfo.shapeFactory().bonjour(def);
+      }
+    });
+    return true;
+  }
+
   private void checkMutual(@NotNull ImmutableSeq<TyckOrder> scc) {
     var unit = scc.stream().map(TyckOrder::unit).distinct().collect(ImmutableSeq.factory());
     // the flattened dependency graph (FDG) lose information about header order, in other words,
@@ -187,7 +209,7 @@ public record AyaSccTycker(
         resolveInfo.shapeFactory().bonjour(def);
       }
       case COUNTEREXAMPLE -> {
-        var sampleReporter = sampleReporters.getOrPut(proof, BufferReporter::new);
+        var sampleReporter = sampleReporter(proof);
         var problems = sampleReporter.problems().toImmutableSeq();
         if (problems.isEmpty()) reporter.report(new CounterexampleError(decl.sourcePos(), decl.ref()));
         if (def instanceof UserDef<?> userDef) userDef.problems = problems;
@@ -206,11 +228,22 @@ public record AyaSccTycker(
 
   private @NotNull ExprTycker reuseTopLevel(@NotNull Decl.TopLevel decl) {
     // prevent counterexample errors from being reported to the user reporter
+    // the maps are shared by the SCCs checked in parallel, see ParallelOrgaTycker
     if (decl.personality() == Decl.Personality.COUNTEREXAMPLE) {
-      var reporter = sampleReporters.getOrPut(decl, BufferReporter::new);
-      return tyckerReuse.getOrPut(decl, () -> newExprTycker(reporter));
+      var reporter = sampleReporter(decl);
+      synchronized (tyckerReuse) {
+        return tyckerReuse.getOrPut(decl, () -> newExprTycker(reporter));
+      }
+    }
+    synchronized (tyckerReuse) {
+      return tyckerReuse.getOrPut(decl, this::newExprTycker);
+    }
+  }
+
+  private @NotNull CollectingReporter sampleReporter(@NotNull Decl.TopLevel decl) {
+    synchronized (sampleReporters) {
+      return sampleReporters.getOrPut(decl, BufferReporter::new);
     }
-    return tyckerReuse.getOrPut(decl, this::newExprTycker);
   }
 
   private @NotNull ExprTycker newExprTycker() {
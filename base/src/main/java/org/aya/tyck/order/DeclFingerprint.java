@@ -0,0 +1,171 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.tyck.order;
+
+import kala.collection.SeqView;
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableMap;
+import org.aya.concrete.remark.Remark;
+import org.aya.concrete.stmt.Command;
+import org.aya.concrete.stmt.Decl;
+import org.aya.concrete.stmt.Stmt;
+import org.aya.concrete.stmt.TeleDecl;
+import org.aya.concrete.visitor.StmtFolder;
+import org.aya.ref.AnyVar;
+import org.aya.ref.DefVar;
+import org.aya.resolve.ResolveInfo;
+import org.aya.util.error.SourcePos;
+import org.aya.util.terck.MutableGraph;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Comparator;
+
+/**
+ * Fingerprints of the top-level definitions of a module, so the definitions that did not change
+ * since the last build are not checked again, see {@link ResolveInfo#reused()}.
+ * <p>
+ * The fingerprint of a definition hashes its source text, the statements of the module that are not definitions
+ * (like imports and generalized variables), the definitions it references in other modules,
+ * and the definitions it depends on in this module. Mutually recursive definitions are hashed together.
+ * It is 0 if unknown, for example, when the source text is not available.
+ *
+ * @see DefVar#fingerprint
+ */
+public final class DeclFingerprint {
+  // FNV-1a
+  private static final long OFFSET = 0xcbf29ce484222325L;
+  private static final long PRIME = 0x100000001b3L;
+  private long hash = OFFSET;
+
+  private DeclFingerprint() {
+  }
+
+  private @NotNull DeclFingerprint mix(long value) {
+    for (int i = 0; i < Long.BYTES; i++, value >>>= 8) hash = (hash ^ (value & 0xff)) * PRIME;
+    return this;
+  }
+
+  private @NotNull DeclFingerprint mix(@NotNull String text) {
+    mix(text.length());
+    for (int i = 0; i < text.length(); i++) hash = (hash ^ text.charAt(i)) * PRIME;
+    return this;
+  }
+
+  private long get() {
+    // 0 means unknown
+    return hash == 0 ? 1 : hash;
+  }
+
+  /** Computes the fingerprints of the definitions in a resolved module, and stores them in the {@link DefVar}s */
+  public static void fingerprint(@NotNull ResolveInfo resolveInfo) {
+    var header = new DeclFingerprint();
+    var decls = MutableList.<Decl.TopLevel>create();
+    collect(resolveInfo.program(), header, decls);
+    var moduleName = resolveInfo.thisModule().moduleName();
+    var own = MutableMap.<Decl.TopLevel, Long>create();
+    decls.forEach(decl -> own.put(decl, own(decl, moduleName, header)));
+    // the dependencies between the top-level definitions in this module
+    var graph = MutableGraph.<Decl.TopLevel>create();
+    decls.forEach(graph::sucMut);
+    resolveInfo.depGraph().E().forEach((order, sucs) -> {
+      var from = ParallelOrgaTycker.owner(order.unit());
+      if (from == null || !own.containsKey(from)) return;
+      sucs.forEach(suc -> {
+        var to = ParallelOrgaTycker.owner(suc.unit());
+        if (to != null && to != from && own.containsKey(to)) graph.sucMut(from).append(to);
+      });
+    });
+    var index = MutableMap.<Decl.TopLevel, Integer>create();
+    decls.forEachIndexed((i, decl) -> index.put(decl, i));
+    // dependencies first
+    for (var scc : graph.topologicalOrder()) {
+      var members = scc.sorted(Comparator.comparingInt(index::get));
+      var deps = members.view()
+        .flatMap(graph::suc)
+        .filterNot(members::contains)
+        .map(dep -> dep.ref().fingerprint)
+        .toImmutableSeq()
+        .sorted(Comparator.naturalOrder());
+      var unknown = deps.contains(0L) || members.anyMatch(decl -> own.get(decl) == 0);
+      var group = new DeclFingerprint();
+      members.forEach(decl -> group.mix(own.get(decl)));
+      deps.forEach(group::mix);
+      members.forEach(decl -> {
+        var fingerprint = unknown ? 0 : new DeclFingerprint().mix(group.get()).mix(own.get(decl)).get();
+        defs(decl).forEach(def -> def.fingerprint = fingerprint);
+      });
+    }
+  }
+
+  /** Collects the top-level definitions, and hashes the other statements into <code>header</code> */
+  private static void collect(
+    @NotNull ImmutableSeq<Stmt> program, @NotNull DeclFingerprint header,
+    @NotNull MutableList<Decl.TopLevel> decls
+  ) {
+    for (var stmt : program) {
+      switch (stmt) {
+        case Decl.TopLevel decl -> decls.append(decl);
+        case Command.Module module -> {
+          header.mix(module.name());
+          collect(module.contents(), header, decls);
+        }
+        // literate comments cannot be referenced
+        case Remark ignored -> {}
+        default -> header.mix(text(stmt.sourcePos()));
+      }
+    }
+  }
+
+  /** @return the hash of the definition itself, 0 if its source text or a definition it references in other modules is unknown */
+  private static long own(
+    @NotNull Decl.TopLevel decl, @NotNull ImmutableSeq<String> moduleName,
+    @NotNull DeclFingerprint header
+  ) {
+    var text = text(decl.entireSourcePos());
+    if (text.isEmpty()) return 0;
+    var references = references(decl);
+    // unknown like the dependencies in this module, see fingerprint
+    if (references.anyMatch(ref -> ref.fingerprint == 0 && !ref.isInModule(moduleName))) return 0;
+    var fingerprint = new DeclFingerprint().mix(header.get()).mix(text);
+    references.forEach(ref -> {
+      if (ref.module != null) ref.module.forEach(fingerprint::mix);
+      fingerprint.mix(ref.name());
+      // the definitions in this module are hashed by the dependencies
+      if (!ref.isInModule(moduleName)) fingerprint.mix(ref.fingerprint);
+    });
+    return fingerprint.get();
+  }
+
+  private static @NotNull String text(@NotNull SourcePos pos) {
+    var code = pos.file().sourceCode();
+    var start = pos.tokenStartIndex();
+    var end = pos.tokenEndIndex() + 1;
+    if (start < 0 || end <= start || end > code.length()) return "";
+    return code.substring(start, end);
+  }
+
+  /** @return the referenced definitions, in the order they occur */
+  private static @NotNull ImmutableSeq<DefVar<?, ?>> references(@NotNull Decl.TopLevel decl) {
+    return new StmtFolder<MutableList<DefVar<?, ?>>>() {
+      @Override public @NotNull MutableList<DefVar<?, ?>> init() {
+        return MutableList.create();
+      }
+
+      @Override public @NotNull MutableList<DefVar<?, ?>>
+      fold(@NotNull MutableList<DefVar<?, ?>> acc, @NotNull AnyVar var, @NotNull SourcePos pos) {
+        if (var instanceof DefVar<?, ?> def) acc.append(def);
+        return acc;
+      }
+    }.apply(decl).toImmutableSeq();
+  }
+
+  /** @return the definition and its constructors or fields */
+  public static @NotNull SeqView<DefVar<?, ?>> defs(@NotNull Decl.TopLevel decl) {
+    return switch (decl) {
+      case TeleDecl.DataDecl data -> SeqView.<DefVar<?, ?>>of(data.ref).appendedAll(data.body.view().map(ctor -> ctor.ref));
+      case TeleDecl.StructDecl struct -> SeqView.<DefVar<?, ?>>of(struct.ref).appendedAll(struct.fields.view().map(field -> field.ref));
+      default -> SeqView.<DefVar<?, ?>>of(decl.ref());
+    };
+  }
+}
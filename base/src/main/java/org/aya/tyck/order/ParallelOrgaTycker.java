@@ -0,0 +1,178 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.tyck.order;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableMap;
+import kala.collection.mutable.MutableSet;
+import org.aya.concrete.stmt.Decl;
+import org.aya.concrete.stmt.TeleDecl;
+import org.aya.core.def.GenericDef;
+import org.aya.resolve.ResolveInfo;
+import org.aya.tyck.ExprTycker;
+import org.aya.tyck.StmtTycker;
+import org.aya.util.reporter.CollectingReporter;
+import org.aya.util.reporter.CountingReporter;
+import org.aya.util.reporter.DelayedReporter;
+import org.aya.util.reporter.Reporter;
+import org.aya.util.terck.MutableGraph;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Checks the SCCs of a module in parallel, each one as soon as the SCCs it depends on are checked.
+ * Failures are propagated to the usages like {@link AyaOrgaTycker},
+ * and the problems are reported in the topological order after all SCCs are checked,
+ * so the output does not depend on the scheduling.
+ * <p>
+ * The members of a data type or a structure are checked with the {@link ExprTycker} of the type,
+ * so the SCCs sharing an {@link ExprTycker} are checked one after another, in the topological order.
+ *
+ * @see AyaOrgaTycker
+ */
+public final class ParallelOrgaTycker {
+  private final @NotNull ResolveInfo resolveInfo;
+  private final @NotNull ImmutableSeq<ImmutableSeq<TyckOrder>> SCCs;
+  private final @NotNull MutableGraph<TyckOrder> usageGraph;
+  private final @NotNull Set<TyckOrder> skipped = ConcurrentHashMap.newKeySet();
+  /** Reused definitions are checked in different SCCs, we report to the SCC being checked */
+  private final @NotNull ThreadLocal<Reporter> current = new ThreadLocal<>();
+  private final @NotNull StmtTycker tycker;
+  private final @NotNull MutableMap<Decl.TopLevel, ExprTycker> tyckerReuse = MutableMap.create();
+  private final @NotNull MutableMap<Decl.TopLevel, CollectingReporter> sampleReporters = MutableMap.create();
+  private final @NotNull ImmutableSeq<DelayedReporter> reporters;
+  private final @NotNull AtomicReferenceArray<AyaSccTycker> sccTyckers;
+  private final @NotNull ImmutableSeq<ImmutableSeq<Integer>> dependents;
+  private final @NotNull AtomicIntegerArray pending;
+  /** The task checking each SCC, forked when the SCCs it depends on are checked */
+  private final @NotNull ImmutableSeq<ForkJoinTask<?>> tasks;
+  private volatile @Nullable Throwable failure;
+
+  public ParallelOrgaTycker(
+    @NotNull ResolveInfo resolveInfo,
+    @NotNull ImmutableSeq<ImmutableSeq<TyckOrder>> SCCs,
+    @NotNull Reporter outReporter
+  ) {
+    this.resolveInfo = resolveInfo;
+    this.SCCs = SCCs;
+    this.usageGraph = resolveInfo.depGraph().transpose();
+    this.tycker = new StmtTycker(problem -> current.get().report(problem), null);
+    this.reporters = SCCs.map(scc -> new DelayedReporter(outReporter));
+    this.sccTyckers = new AtomicReferenceArray<>(SCCs.size());
+    var depends = dependencies(resolveInfo.depGraph(), SCCs);
+    var dependents = SCCs.<MutableList<Integer>>map(scc -> MutableList.create());
+    this.pending = new AtomicIntegerArray(SCCs.size());
+    depends.forEachIndexed((i, deps) -> {
+      pending.set(i, deps.size());
+      deps.forEach(j -> dependents.get(j).append(i));
+    });
+    this.dependents = dependents.map(MutableList::toImmutableSeq);
+    this.tasks = SCCs.mapIndexed((i, scc) -> ForkJoinTask.adapt(() -> tyckSCC(i)));
+  }
+
+  /**
+   * @return for each SCC, the SCCs that must be checked before it,
+   * which come before it in the topological order
+   */
+  private static @NotNull ImmutableSeq<MutableSet<Integer>> dependencies(
+    @NotNull MutableGraph<TyckOrder> depGraph,
+    @NotNull ImmutableSeq<ImmutableSeq<TyckOrder>> SCCs
+  ) {
+    var index = MutableMap.<TyckOrder, Integer>create();
+    SCCs.forEachIndexed((i, scc) -> scc.forEach(order -> index.put(order, i)));
+    var lastOwned = MutableMap.<Decl.TopLevel, Integer>create();
+    return SCCs.mapIndexed((i, scc) -> {
+      var deps = MutableSet.<Integer>create();
+      scc.forEach(order -> {
+        depGraph.suc(order).forEach(dep -> {
+          var j = index.getOrNull(dep);
+          if (j != null && j != i) deps.add(j);
+        });
+        var owner = owner(order.unit());
+        if (owner == null) return;
+        var last = lastOwned.put(owner, i);
+        if (last.isDefined() && last.get() != i) deps.add(last.get());
+      });
+      return deps;
+    });
+  }
+
+  /** @return the definition whose {@link ExprTycker} is reused to check <code>unit</code> */
+  static @Nullable Decl.TopLevel owner(@NotNull TyckUnit unit) {
+    return switch (unit) {
+      case Decl.TopLevel topLevel -> topLevel;
+      case TeleDecl.DataCtor ctor -> ctor.dataRef.concrete;
+      case TeleDecl.StructField field -> field.structRef.concrete;
+      default -> null;
+    };
+  }
+
+  /**
+   * Checks the SCCs on the given pool, which may be shared with other modules,
+   * so we wait for the tasks of this module instead of the quiescence of the pool.
+   * When called on a worker of the pool, the worker runs the tasks while it waits.
+   */
+  public void tyckAll(@NotNull ForkJoinPool pool) {
+    try {
+      // collect the roots first, they may be submitted again by the tasks otherwise
+      var roots = MutableList.<Integer>create();
+      for (int i = 0; i < SCCs.size(); i++) if (pending.get(i) == 0) roots.append(i);
+      roots.forEach(i -> pool.execute(tasks.get(i)));
+      // the other tasks are forked once the SCCs they depend on are checked, even if those failed
+      tasks.forEach(ForkJoinTask::join);
+    } finally {
+      reporters.forEach(DelayedReporter::reportNow);
+    }
+    var failed = failure;
+    if (failed instanceof RuntimeException e) throw e;
+    if (failed instanceof Error e) throw e;
+    if (failed != null) throw new IllegalStateException(failed);
+  }
+
+  private void tyckSCC(int i) {
+    var sccTycker = new AyaSccTycker(tycker, CountingReporter.delegate(reporters.get(i)), resolveInfo,
+      MutableList.create(), tyckerReuse, sampleReporters);
+    sccTyckers.set(i, sccTycker);
+    // another SCC may be checked on this thread while it waits for the clauses checked in parallel
+    var outer = current.get();
+    current.set(sccTycker.reporter());
+    try {
+      // like OrgaTycker, we stop checking after an unexpected exception
+      if (failure == null) sccTycker.tyckSCC(SCCs.get(i).filterNot(skipped::contains)).forEach(this::skip);
+    } catch (Throwable e) {
+      synchronized (this) {
+        if (failure == null) failure = e;
+      }
+    } finally {
+      if (outer == null) current.remove();
+      else current.set(outer);
+      // the usages of the failed orders are skipped before they are submitted
+      dependents.get(i).forEach(j -> {
+        if (pending.decrementAndGet(j) == 0) tasks.get(j).fork();
+      });
+    }
+  }
+
+  private void skip(@NotNull TyckOrder failed) {
+    if (!skipped.add(failed)) return;
+    usageGraph.suc(failed).forEach(this::skip);
+  }
+
+  /** @return the well-typed definitions, in the topological order */
+  public @NotNull ImmutableSeq<GenericDef> wellTyped() {
+    var wellTyped = MutableList.<GenericDef>create();
+    for (int i = 0; i < sccTyckers.length(); i++) {
+      var sccTycker = sccTyckers.get(i);
+      if (sccTycker != null) wellTyped.appendAll(sccTycker.wellTyped());
+    }
+    return wellTyped.toImmutableSeq();
+  }
+}
@@ -3,7 +3,7 @@
 package org.aya.tyck.pat;
 
 import kala.collection.immutable.ImmutableSeq;
-import kala.tuple.Tuple;
+import kala.collection.mutable.MutableList;
 import org.aya.core.def.Def;
 import org.aya.core.pat.Pat;
 import org.aya.core.term.ErrorTerm;
@@ -16,10 +16,15 @@ import org.aya.guest0x0.cubical.CofThy;
 import org.aya.guest0x0.cubical.Partial;
 import org.aya.guest0x0.cubical.Restr;
 import org.aya.tyck.ExprTycker;
+import org.aya.tyck.TyckState;
 import org.aya.tyck.env.MapLocalCtx;
+import org.aya.tyck.trace.Trace;
+import org.aya.tyck.unify.Unifier;
 import org.aya.util.Ordering;
 import org.aya.util.error.SourcePos;
+import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * <code>IApplyConfluence</code> lmao
@@ -31,17 +36,23 @@ public record Conquer(
   @NotNull SourcePos sourcePos,
   @NotNull Def.Signature signature,
   boolean orderIndependent,
-  @NotNull ExprTycker tycker
+  @NotNull ExprTycker tycker,
+  @NotNull MutableList<Condition> conditions,
+  boolean noMetas
 ) {
   public static void against(
     @NotNull ImmutableSeq<Term.Matching> matchings, boolean orderIndependent,
     @NotNull ExprTycker tycker, @NotNull SourcePos pos, @NotNull Def.Signature signature
   ) {
-    var conquer = new Conquer(matchings, pos, signature, orderIndependent, tycker);
+    var noMetas = ParallelChecks.noMetas(signature.result())
+      && matchings.allMatch(matching -> ParallelChecks.noMetas(matching.body())
+      && matching.patterns().allMatch(pat -> ParallelChecks.noMetas(pat.toTerm())));
+    var conquer = new Conquer(matchings, pos, signature, orderIndependent, tycker, MutableList.create(), noMetas);
     for (int i = 0, size = matchings.size(); i < size; i++) {
       var matching = matchings.get(i);
       for (var pat : matching.patterns()) conquer.visit(pat, i);
     }
+    ParallelChecks.run(tycker, conquer.conditions.toImmutableSeq());
   }
 
   public void visit(@NotNull Pat pat, int nth) {
@@ -58,10 +69,10 @@ public record Conquer(
         );
         // The split, but typed under current context
         var clauses = (Partial.Split<Term>) AyaRestrSimplifier.INSTANCE
-          .mapSplit(ctorDef.clauses, t -> t.subst(subst));
+          .mapSplit(ctorDef.clauses(), t -> t.subst(subst));
         var faces = clauses.clauses();
         for (int i = 0, size = faces.size(); i < size; i++) {
-          checkConditions(nth, i + 1, faces.get(i), subst);
+          conditions.append(new Condition(this, nth, i + 1, faces.get(i), subst));
         }
       }
       case Pat.Tuple tuple -> {
@@ -71,36 +82,51 @@ public record Conquer(
     }
   }
 
-  private void checkConditions(int nth, int i, Restr.Side<Term> condition, Subst matchy) {
-    var ctx = new MapLocalCtx();
-    var currentClause = matchings.get(nth);
-    // We should also restrict the current clause body under `condition`.
-    // TODO: refactor the following to make it completely inside a CofThy.conv call
-    var newBody = CofThy.vdash(condition.cof(), matchy, subst -> currentClause.body().subst(subst)).get();
-    currentClause.patterns().forEach(p -> p.storeBindings(ctx));
-    // They're pre-cof
-    var cofResult = CofThy.vdash(condition.cof(), matchy, subst ->
-      new Expander.WHNFer(tycker.state).tryUnfoldClauses(orderIndependent,
-        currentClause.patterns().map(p -> p.toArg().descent(t -> t.subst(subst))),
-        0, matchings).map(w -> w.map(t -> t.subst(subst))));
-    assert cofResult.isDefined() : "Problem with partials, they have non-RefTerm in cof!";
-    var matchResult = cofResult.get();
-    if (matchResult.isEmpty()) {
-      tycker.reporter.report(new ClausesProblem.Conditions(
-        sourcePos, nth + 1, i, newBody, null, currentClause.sourcePos(), null));
-      return;
+  /** The <code>i</code>-th boundary of a constructor pattern in the <code>nth</code> clause */
+  record Condition(
+    @NotNull Conquer conquer, int nth, int i,
+    @NotNull Restr.Side<Term> condition, @NotNull Subst matchy
+  ) implements ParallelChecks.Check {
+    @Override public boolean isolated() {
+      return conquer.noMetas && ParallelChecks.noMetas(condition.u());
     }
-    var anotherClause = matchResult.get();
-    if (newBody instanceof ErrorTerm error && error.description() instanceof MetaTerm hole) {
-      hole.ref().conditions.append(Tuple.of(matchy, anotherClause.data()));
-    } else if (anotherClause.data() instanceof ErrorTerm error && error.description() instanceof MetaTerm hole) {
-      hole.ref().conditions.append(Tuple.of(matchy, newBody));
-    }
-    var unification = tycker.unifier(sourcePos, Ordering.Eq, ctx)
-      .compare(newBody, anotherClause.data(), signature.result().subst(matchy));
-    if (!unification) {
-      tycker.reporter.report(new ClausesProblem.Conditions(
-        sourcePos, nth + 1, i, newBody, anotherClause.data(), currentClause.sourcePos(), anotherClause.sourcePos()));
+
+    @Override public void check(
+      @NotNull TyckState state, @NotNull Reporter reporter,
+      Trace.@Nullable Builder traceBuilder
+    ) {
+      var ctx = new MapLocalCtx();
+      var matchings = conquer.matchings;
+      var sourcePos = conquer.sourcePos;
+      var currentClause = matchings.get(nth);
+      // We should also restrict the current clause body under `condition`.
+      // TODO: refactor the following to make it completely inside a CofThy.conv call
+      var newBody = CofThy.vdash(condition.cof(), matchy, subst -> currentClause.body().subst(subst)).get();
+      currentClause.patterns().forEach(p -> p.storeBindings(ctx));
+      // They're pre-cof
+      var cofResult = CofThy.vdash(condition.cof(), matchy, subst ->
+        new Expander.WHNFer(state).tryUnfoldClauses(conquer.orderIndependent,
+          currentClause.patterns().map(p -> p.toArg().descent(t -> t.subst(subst))),
+          0, matchings).map(w -> w.map(t -> t.subst(subst))));
+      assert cofResult.isDefined() : "Problem with partials, they have non-RefTerm in cof!";
+      var matchResult = cofResult.get();
+      if (matchResult.isEmpty()) {
+        reporter.report(new ClausesProblem.Conditions(
+          sourcePos, nth + 1, i, newBody, null, currentClause.sourcePos(), null));
+        return;
+      }
+      var anotherClause = matchResult.get();
+      if (newBody instanceof ErrorTerm error && error.description() instanceof MetaTerm hole) {
+        state.addCondition(hole.ref(), matchy, anotherClause.data());
+      } else if (anotherClause.data() instanceof ErrorTerm error && error.description() instanceof MetaTerm hole) {
+        state.addCondition(hole.ref(), matchy, newBody);
+      }
+      var unification = new Unifier(Ordering.Eq, reporter, false, true, traceBuilder, state, sourcePos, ctx)
+        .compare(newBody, anotherClause.data(), conquer.signature.result().subst(matchy));
+      if (!unification) {
+        reporter.report(new ClausesProblem.Conditions(
+          sourcePos, nth + 1, i, newBody, anotherClause.data(), currentClause.sourcePos(), anotherClause.sourcePos()));
+      }
     }
   }
 }
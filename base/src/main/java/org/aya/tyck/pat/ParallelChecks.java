@@ -0,0 +1,72 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.tyck.pat;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import org.aya.core.term.Term;
+import org.aya.core.visitor.VarSummary;
+import org.aya.tyck.Tycker;
+import org.aya.tyck.TyckState;
+import org.aya.tyck.trace.Trace;
+import org.aya.util.reporter.BufferReporter;
+import org.aya.util.reporter.Reporter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs the checks of clauses that are independent of each other, like the confluence of
+ * two adjacent clauses in a leaf of the case tree, or a boundary of a constructor pattern.
+ * <p>
+ * A check that is {@link Check#isolated()} does not see any meta, so it is run in parallel
+ * with a {@link TyckState#detached()} state and a buffered reporter. The others may solve metas
+ * or add conditions to holes, so they are run on the state of the tycker.
+ * Either way, the problems are reported in the order of the checks.
+ * They are checked one by one unless the current thread is a worker of a {@link java.util.concurrent.ForkJoinPool}.
+ *
+ * @see PatClassifier#confluence
+ * @see Conquer#against
+ */
+final class ParallelChecks {
+  private ParallelChecks() {
+  }
+
+  interface Check {
+    /** @return true if this check does not involve any meta */
+    boolean isolated();
+
+    void check(@NotNull TyckState state, @NotNull Reporter reporter, Trace.@Nullable Builder traceBuilder);
+  }
+
+  static boolean noMetas(@NotNull Term term) {
+    return !VarSummary.hasMetas(term);
+  }
+
+  static void run(@NotNull Tycker tycker, @NotNull ImmutableSeq<? extends Check> checks) {
+    // The traces are built in the order of the checks, so we do not check in parallel when tracing.
+    // Only forked on the pool of the current thread, so the parallelism is bounded by it, see `--jobs`
+    if (tycker.traceBuilder != null || !ForkJoinTask.inForkJoinPool() || checks.count(Check::isolated) < 2) {
+      checks.forEach(check -> check.check(tycker.state, tycker.reporter, tycker.traceBuilder));
+      return;
+    }
+    var tasks = MutableList.<@Nullable ForkJoinTask<BufferReporter>>create();
+    for (var check : checks) {
+      if (!check.isolated()) {
+        tasks.append(null);
+        continue;
+      }
+      tasks.append(ForkJoinTask.adapt(() -> {
+        var reporter = new BufferReporter();
+        check.check(tycker.state.detached(), reporter, null);
+        return reporter;
+      }).fork());
+    }
+    for (int i = 0; i < checks.size(); i++) {
+      var task = tasks.get(i);
+      if (task == null) checks.get(i).check(tycker.state, tycker.reporter, null);
+      else task.join().problems().forEach(tycker.reporter::report);
+    }
+  }
+}
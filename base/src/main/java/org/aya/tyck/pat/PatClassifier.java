@@ -23,7 +23,10 @@ import org.aya.ref.AnyVar;
 import org.aya.tyck.ExprTycker;
 import org.aya.tyck.TyckState;
 import org.aya.tyck.Tycker;
+import org.aya.tyck.env.LocalCtx;
 import org.aya.tyck.error.TyckOrderError;
+import org.aya.tyck.trace.Trace;
+import org.aya.tyck.unify.Unifier;
 import org.aya.util.Ordering;
 import org.aya.util.error.SourcePos;
 import org.aya.util.reporter.Reporter;
@@ -95,6 +98,7 @@ public record PatClassifier(
     @NotNull MCT<Term, PatErr> mct
   ) {
     var result = clauses.result();
+    var checks = MutableList.<Confluence>create();
     mct.forEach(results -> {
       var contents = results.contents()
         .flatMap(i -> Pat.Preclause.lift(clauses.clauses().get(i))
@@ -105,24 +109,45 @@ public record PatClassifier(
         var lhsSubst = new Subst(MutableMap.create());
         var rhsSubst = new Subst(MutableMap.create());
         var ctx = PatUnify.unifyPat(lhsInfo._2.patterns(), rhsInfo._2.patterns(),
-          lhsSubst, rhsSubst, tycker.localCtx.deriveMap());
-        domination(rhsSubst, tycker.reporter, lhsInfo._1, rhsInfo._1, rhsInfo._2);
-        domination(lhsSubst, tycker.reporter, rhsInfo._1, lhsInfo._1, lhsInfo._2);
-        var lhsTerm = lhsInfo._2.body().subst(lhsSubst);
-        var rhsTerm = rhsInfo._2.body().subst(rhsSubst);
-        // TODO: Currently all holes at this point are in an ErrorTerm
-        if (lhsTerm instanceof ErrorTerm error && error.description() instanceof MetaTerm hole) {
-          hole.ref().conditions.append(Tuple.of(lhsSubst, rhsTerm));
-        } else if (rhsTerm instanceof ErrorTerm error && error.description() instanceof MetaTerm hole) {
-          hole.ref().conditions.append(Tuple.of(rhsSubst, lhsTerm));
-        }
-        var unification = tycker.unifier(pos, Ordering.Eq, ctx).compare(lhsTerm, rhsTerm, result);
-        if (!unification) {
-          tycker.reporter.report(new ClausesProblem.Confluence(pos, lhsInfo._1 + 1, rhsInfo._1 + 1,
-            lhsTerm, rhsTerm, lhsInfo._2.sourcePos(), rhsInfo._2.sourcePos()));
-        }
+          lhsSubst, rhsSubst, tycker.localCtx.derive());
+        checks.append(new Confluence(pos, result, lhsInfo, rhsInfo, lhsSubst, rhsSubst, ctx,
+          lhsInfo._2.body().subst(lhsSubst), rhsInfo._2.body().subst(rhsSubst)));
       }
     });
+    ParallelChecks.run(tycker, checks.toImmutableSeq());
+  }
+
+  /** The confluence of two adjacent clauses in a leaf of the case tree, under their own context */
+  private record Confluence(
+    @NotNull SourcePos pos, @NotNull Term result,
+    @NotNull IntObjTuple2<Term.Matching> lhsInfo, @NotNull IntObjTuple2<Term.Matching> rhsInfo,
+    @NotNull Subst lhsSubst, @NotNull Subst rhsSubst, @NotNull LocalCtx ctx,
+    @NotNull Term lhsTerm, @NotNull Term rhsTerm
+  ) implements ParallelChecks.Check {
+    @Override public boolean isolated() {
+      return !(lhsTerm instanceof ErrorTerm) && !(rhsTerm instanceof ErrorTerm)
+        && ParallelChecks.noMetas(lhsTerm) && ParallelChecks.noMetas(rhsTerm) && ParallelChecks.noMetas(result);
+    }
+
+    @Override public void check(
+      @NotNull TyckState state, @NotNull Reporter reporter,
+      Trace.@Nullable Builder traceBuilder
+    ) {
+      domination(rhsSubst, reporter, lhsInfo._1, rhsInfo._1, rhsInfo._2);
+      domination(lhsSubst, reporter, rhsInfo._1, lhsInfo._1, lhsInfo._2);
+      // TODO: Currently all holes at this point are in an ErrorTerm
+      if (lhsTerm instanceof ErrorTerm error && error.description() instanceof MetaTerm hole) {
+        state.addCondition(hole.ref(), lhsSubst, rhsTerm);
+      } else if (rhsTerm instanceof ErrorTerm error && error.description() instanceof MetaTerm hole) {
+        state.addCondition(hole.ref(), rhsSubst, lhsTerm);
+      }
+      var unification = new Unifier(Ordering.Eq, reporter, false, true, traceBuilder, state, pos, ctx)
+        .compare(lhsTerm, rhsTerm, result);
+      if (!unification) {
+        reporter.report(new ClausesProblem.Confluence(pos, lhsInfo._1 + 1, rhsInfo._1 + 1,
+          lhsTerm, rhsTerm, lhsInfo._2.sourcePos(), rhsInfo._2.sourcePos()));
+      }
+    }
   }
 
   private static void domination(Subst rhsSubst, Reporter reporter, int lhsIx, int rhsIx, Term.Matching matching) {
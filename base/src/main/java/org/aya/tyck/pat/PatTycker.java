@@ -44,6 +44,7 @@ import org.aya.util.reporter.Problem;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.math.BigInteger;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -174,7 +175,7 @@ public final class PatTycker {
 
   public LhsResult checkLhs(Pattern.Clause match, Def.Signature signature, boolean inProp) {
     var parent = exprTycker.localCtx;
-    exprTycker.localCtx = parent.deriveMap();
+    exprTycker.localCtx = parent.derive();
     currentClause = match;
     var step0 = visitPatterns(signature, match.patterns.view(), null, inProp);
 
@@ -300,7 +301,7 @@ public final class PatTycker {
           var data = dataCall.ref().core;
           var shape = exprTycker.shapeFactory.find(data);
           if (shape.isDefined() && shape.get().shape() == AyaShape.NAT_SHAPE)
-            yield new Pat.ShapedInt(num.number(), shape.get(), dataCall, licit);
+            yield new Pat.ShapedInt(BigInteger.valueOf(num.number()), shape.get(), dataCall, licit);
         }
         yield withError(new PatternProblem.BadLitPattern(num, term), licit, term);
       }
@@ -0,0 +1,197 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.tyck.trace;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.generic.Constants;
+import org.aya.ref.AnyVar;
+import org.aya.ref.DefVar;
+import org.aya.ref.LocalVar;
+import org.aya.util.error.SourcePos;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Opt-in counters for unfoldings and unification, to find out which definitions a slow library spends time on.
+ * There is at most one profiler running, the hooks do nothing unless {@link #start()} is called.
+ * Times are inclusive, an unfolding that unfolds other definitions is also charged for them.
+ *
+ * @see org.aya.core.visitor.DeltaExpander#post
+ * @see org.aya.tyck.unify.TermComparator#compare(org.aya.core.term.Term, org.aya.core.term.Term, org.aya.core.term.Term)
+ */
+public final class Profiler {
+  private static volatile @Nullable Profiler current;
+  /** Meta solutions are substituted like definitions are unfolded, we count them all together */
+  public static final @NotNull LocalVar META = new LocalVar("<meta solutions>");
+
+  private final long startNanos = System.nanoTime();
+  private final @NotNull Map<AnyVar, Counter> unfoldings = new ConcurrentHashMap<>();
+  private final @NotNull Map<SourcePos, Counter> unifications = new ConcurrentHashMap<>();
+  private final @NotNull Map<SourcePos, Counter> equations = new ConcurrentHashMap<>();
+  private final @NotNull LongAdder metasCreated = new LongAdder();
+  private final @NotNull LongAdder metasSolved = new LongAdder();
+  private final @NotNull LongAdder memoHits = new LongAdder();
+  private final @NotNull LongAdder memoMisses = new LongAdder();
+
+  private Profiler() {
+  }
+
+  /** @return null if profiling is disabled */
+  public static @Nullable Profiler current() {
+    return current;
+  }
+
+  /** Start a new profiler, discarding the current one */
+  public static @NotNull Profiler start() {
+    var profiler = new Profiler();
+    current = profiler;
+    return profiler;
+  }
+
+  /** @return the profiler that was running, null if none */
+  public static @Nullable Profiler stop() {
+    var profiler = current;
+    current = null;
+    return profiler;
+  }
+
+  private static final class Counter {
+    private final @NotNull LongAdder count = new LongAdder();
+    private final @NotNull LongAdder nanos = new LongAdder();
+
+    private void add(long nanos) {
+      count.increment();
+      this.nanos.add(nanos);
+    }
+  }
+
+  public void unfolded(@NotNull AnyVar var, long nanos) {
+    unfoldings.computeIfAbsent(var, v -> new Counter()).add(nanos);
+  }
+
+  public void unified(@NotNull SourcePos pos, long nanos) {
+    unifications.computeIfAbsent(pos, p -> new Counter()).add(nanos);
+  }
+
+  public void solvedEqn(@NotNull SourcePos pos, long nanos) {
+    equations.computeIfAbsent(pos, p -> new Counter()).add(nanos);
+  }
+
+  public void metaCreated() {
+    metasCreated.increment();
+  }
+
+  public void metaSolved() {
+    metasSolved.increment();
+  }
+
+  /** @see org.aya.tyck.unify.ConversionMemo */
+  public void memoized(boolean hit) {
+    (hit ? memoHits : memoMisses).increment();
+  }
+
+  public @NotNull Report report() {
+    return new Report(System.nanoTime() - startNanos,
+      metasCreated.sum(), metasSolved.sum(),
+      memoHits.sum(), memoMisses.sum(),
+      entries(unfoldings, Profiler::nameOf),
+      entries(unifications, Profiler::nameOf),
+      entries(equations, Profiler::nameOf));
+  }
+
+  private static <K> @NotNull ImmutableSeq<Entry> entries(
+    @NotNull Map<K, Counter> counters,
+    @NotNull Function<K, String> name
+  ) {
+    return ImmutableSeq.from(counters.entrySet())
+      .map(e -> new Entry(name.apply(e.getKey()), e.getValue().count.sum(), e.getValue().nanos.sum()))
+      .sorted(Comparator.comparingLong(Entry::nanos).reversed()
+        .thenComparing(Comparator.comparingLong(Entry::count).reversed())
+        .thenComparing(Entry::name));
+  }
+
+  private static @NotNull String nameOf(@NotNull AnyVar var) {
+    if (var instanceof DefVar<?, ?> defVar && defVar.module != null)
+      return defVar.module.appended(defVar.name()).joinToString(Constants.SCOPE_SEPARATOR);
+    return var.name();
+  }
+
+  private static @NotNull String nameOf(@NotNull SourcePos pos) {
+    return pos.file().display() + ":" + pos.startLine() + ":" + pos.startColumn();
+  }
+
+  public record Entry(@NotNull String name, long count, long nanos) {}
+
+  /** Entries are sorted by time, then by count */
+  public record Report(
+    long nanos, long metasCreated, long metasSolved,
+    long memoHits, long memoMisses,
+    @NotNull ImmutableSeq<Entry> unfoldings,
+    @NotNull ImmutableSeq<Entry> unifications,
+    @NotNull ImmutableSeq<Entry> equations
+  ) {
+    /** @param limit how many entries of each table are shown */
+    public @NotNull String toText(int limit) {
+      var builder = new StringBuilder();
+      builder.append("Profiled %.3f ms, %d metas created, %d solved%n"
+        .formatted(millis(nanos), metasCreated, metasSolved));
+      builder.append("Conversion memo: %d hits, %d misses%n".formatted(memoHits, memoMisses));
+      table(builder, "Unfoldings", unfoldings, limit);
+      table(builder, "Unification", unifications, limit);
+      table(builder, "Postponed equations", equations, limit);
+      return builder.toString();
+    }
+
+    private static void table(@NotNull StringBuilder builder, @NotNull String title, @NotNull ImmutableSeq<Entry> entries, int limit) {
+      builder.append("%n%s (%d in total)%n".formatted(title, entries.size()));
+      if (entries.isEmpty()) return;
+      builder.append("%12s %10s  %s%n".formatted("time (ms)", "count", "name"));
+      entries.view().take(limit).forEach(e ->
+        builder.append("%12.3f %10d  %s%n".formatted(millis(e.nanos), e.count, e.name)));
+    }
+
+    private static double millis(long nanos) {
+      return nanos / 1e6;
+    }
+
+    public @NotNull String toJson() {
+      return "{\"nanos\":" + nanos
+        + ",\"metasCreated\":" + metasCreated
+        + ",\"metasSolved\":" + metasSolved
+        + ",\"memoHits\":" + memoHits
+        + ",\"memoMisses\":" + memoMisses
+        + ",\"unfoldings\":" + json(unfoldings)
+        + ",\"unifications\":" + json(unifications)
+        + ",\"equations\":" + json(equations)
+        + "}";
+    }
+
+    private static @NotNull String json(@NotNull ImmutableSeq<Entry> entries) {
+      return entries.view().map(e -> "{\"name\":" + quote(e.name)
+        + ",\"count\":" + e.count
+        + ",\"nanos\":" + e.nanos + "}").joinToString(",", "[", "]");
+    }
+
+    private static @NotNull String quote(@NotNull String s) {
+      var builder = new StringBuilder("\"");
+      for (var c : s.toCharArray()) switch (c) {
+        case '"' -> builder.append("\\\"");
+        case '\\' -> builder.append("\\\\");
+        case '\n' -> builder.append("\\n");
+        case '\r' -> builder.append("\\r");
+        case '\t' -> builder.append("\\t");
+        default -> {
+          if (c < 0x20) builder.append("\\u%04x".formatted((int) c));
+          else builder.append(c);
+        }
+      }
+      return builder.append('"').toString();
+    }
+  }
+}
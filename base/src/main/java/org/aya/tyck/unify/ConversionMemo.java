@@ -0,0 +1,102 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.tyck.unify;
+
+import kala.collection.mutable.MutableMap;
+import kala.control.Option;
+import org.aya.core.term.Term;
+import org.aya.tyck.TyckState;
+import org.aya.tyck.trace.Profiler;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Results of the comparisons in a unification session, successful or not,
+ * so that deeply shared terms are not compared over and over again.
+ * Terms are keyed by identity, together with the {@link TermComparator.Sub#scope()} of the bound variables.
+ * <p>
+ * The {@link org.aya.tyck.Trail#version()} of the state tells whether the results are outdated:
+ * the table is cleared once a meta is solved or a solution is rolled back, so a failure is retried after solving,
+ * and a result is not remembered if the version changes during the comparison.
+ *
+ * @see TermComparator#compare(Term, Term, TermComparator.Sub, TermComparator.Sub, Term)
+ * @see TermComparator#compareUntyped(Term, Term, TermComparator.Sub, TermComparator.Sub)
+ */
+public final class ConversionMemo {
+  private final @NotNull TyckState state;
+  private final @NotNull MutableMap<Key, Boolean> typed = MutableMap.create();
+  private final @NotNull MutableMap<Key, Option<Term>> untyped = MutableMap.create();
+  private int version;
+  private int hits = 0;
+  private int misses = 0;
+
+  public ConversionMemo(@NotNull TyckState state) {
+    this.state = state;
+    this.version = state.trail().version();
+  }
+
+  /** Identity of the terms and the current bindings of the local variables */
+  record Key(@NotNull Term lhs, @NotNull Term rhs, @Nullable Term type, @NotNull Object lr, @NotNull Object rl) {
+    @Override public boolean equals(Object o) {
+      return o instanceof Key key && lhs == key.lhs && rhs == key.rhs && type == key.type
+        && lr == key.lr && rl == key.rl;
+    }
+
+    @Override public int hashCode() {
+      var hash = System.identityHashCode(lhs);
+      hash = 31 * hash + System.identityHashCode(rhs);
+      hash = 31 * hash + System.identityHashCode(type);
+      hash = 31 * hash + System.identityHashCode(lr);
+      return 31 * hash + System.identityHashCode(rl);
+    }
+  }
+
+  @NotNull Key key(@NotNull Term lhs, @NotNull Term rhs, @Nullable Term type, TermComparator.Sub lr, TermComparator.Sub rl) {
+    return new Key(lhs, rhs, type, lr.scope(), rl.scope());
+  }
+
+  /** @return the version before the comparison, pass it to {@link #putTyped} or {@link #putUntyped} */
+  int version() {
+    var now = state.trail().version();
+    if (now != version) {
+      typed.clear();
+      untyped.clear();
+      version = now;
+    }
+    return now;
+  }
+
+  @Nullable Boolean getTyped(@NotNull Key key) {
+    version();
+    return count(typed.getOrNull(key));
+  }
+
+  @Nullable Option<Term> getUntyped(@NotNull Key key) {
+    version();
+    return count(untyped.getOrNull(key));
+  }
+
+  void putTyped(@NotNull Key key, int version, boolean result) {
+    if (version == state.trail().version()) typed.put(key, result);
+  }
+
+  void putUntyped(@NotNull Key key, int version, @Nullable Term result) {
+    if (version == state.trail().version()) untyped.put(key, Option.ofNullable(result));
+  }
+
+  private <T> @Nullable T count(@Nullable T result) {
+    var profiler = Profiler.current();
+    if (result != null) hits++;
+    else misses++;
+    if (profiler != null) profiler.memoized(result != null);
+    return result;
+  }
+
+  public int hits() {
+    return hits;
+  }
+
+  public int misses() {
+    return misses;
+  }
+}
@@ -11,10 +11,14 @@ import kala.tuple.Tuple;
 import org.aya.concrete.stmt.Decl;
 import org.aya.core.def.CtorDef;
 import org.aya.core.def.Def;
+import org.aya.core.def.FnDef;
 import org.aya.core.def.PrimDef;
 import org.aya.core.term.*;
 import org.aya.core.visitor.AyaRestrSimplifier;
+import org.aya.core.visitor.DeltaExpander;
+import org.aya.core.visitor.Expander;
 import org.aya.core.visitor.Subst;
+import org.aya.generic.Modifier;
 import org.aya.generic.SortKind;
 import org.aya.generic.util.InternalException;
 import org.aya.generic.util.NormalizeMode;
@@ -27,11 +31,13 @@ import org.aya.ref.LocalVar;
 import org.aya.tyck.TyckState;
 import org.aya.tyck.env.LocalCtx;
 import org.aya.tyck.error.LevelError;
+import org.aya.tyck.trace.Profiler;
 import org.aya.tyck.trace.Trace;
 import org.aya.util.Arg;
 import org.aya.util.Ordering;
 import org.aya.util.distill.DistillerOptions;
 import org.aya.util.error.SourcePos;
+import org.aya.util.error.WithPos;
 import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.Debug;
 import org.jetbrains.annotations.NotNull;
@@ -57,6 +63,7 @@ public sealed abstract class TermComparator permits Unifier {
   protected final @NotNull SourcePos pos;
   protected final @NotNull Ordering cmp;
   protected final @NotNull LocalCtx ctx;
+  protected final @NotNull ConversionMemo memo;
   private FailureData failure;
 
   public TermComparator(@Nullable Trace.Builder traceBuilder, @NotNull TyckState state, @NotNull Reporter reporter, @NotNull SourcePos pos, @NotNull Ordering cmp, @NotNull LocalCtx ctx) {
@@ -66,6 +73,7 @@ public sealed abstract class TermComparator permits Unifier {
     this.pos = pos;
     this.cmp = cmp;
     this.ctx = ctx;
+    this.memo = new ConversionMemo(state);
   }
 
   private static boolean isCall(@NotNull Term term) {
@@ -81,14 +89,14 @@ public sealed abstract class TermComparator permits Unifier {
     var lSubst = new Subst();
     var rSubst = new Subst();
     for (var conv : l.view().zip3(r, tyVars)) {
-      lr.map.put(conv._3, new RefTerm(conv._2));
-      rl.map.put(conv._3, new RefTerm(conv._1));
+      lr.put(conv._3, new RefTerm(conv._2));
+      rl.put(conv._3, new RefTerm(conv._1));
       lSubst.addDirectly(conv._1, new RefTerm(conv._3));
       rSubst.addDirectly(conv._2, new RefTerm(conv._3));
     }
     var res = supplier.apply(lSubst, rSubst);
-    lr.map.removeAll(tyVars);
-    rl.map.removeAll(tyVars);
+    tyVars.view().reversed().forEach(lr::remove);
+    tyVars.view().reversed().forEach(rl::remove);
     return res;
   }
 
@@ -109,6 +117,10 @@ public sealed abstract class TermComparator permits Unifier {
     };
   }
 
+  public @NotNull ConversionMemo memo() {
+    return memo;
+  }
+
   public @NotNull FailureData getFailure() {
     assert failure != null;
     return failure;
@@ -127,14 +139,31 @@ public sealed abstract class TermComparator permits Unifier {
   }
 
   public boolean compare(@NotNull Term lhs, @NotNull Term rhs, @Nullable Term type) {
-    return compare(lhs, rhs, new Sub(), new Sub(), type);
+    var profiler = Profiler.current();
+    if (profiler == null) return compare(lhs, rhs, new Sub(), new Sub(), type);
+    var start = System.nanoTime();
+    var result = compare(lhs, rhs, new Sub(), new Sub(), type);
+    profiler.unified(pos, System.nanoTime() - start);
+    return result;
   }
 
   protected final boolean compare(Term lhs, Term rhs, Sub lr, Sub rl, @Nullable Term type) {
     if (lhs == rhs) return true;
+    var key = memo.key(lhs, rhs, type, lr, rl);
+    var version = memo.version();
+    var cached = memo.getTyped(key);
+    if (cached != null) return cached;
+    var result = doCompare(lhs, rhs, lr, rl, type);
+    memo.putTyped(key, version, result);
+    return result;
+  }
+
+  private boolean doCompare(Term lhs, Term rhs, Sub lr, Sub rl, @Nullable Term type) {
     if (compareApprox(lhs, rhs, lr, rl) != null) return true;
-    lhs = lhs.normalize(state, NormalizeMode.WHNF);
-    rhs = rhs.normalize(state, NormalizeMode.WHNF);
+    var lazy = unfoldLazily(lhs, rhs, lr, rl);
+    if (lazy.type() != null || lazy.lhs() == lazy.rhs()) return true;
+    lhs = lazy.lhs().normalize(state, NormalizeMode.WHNF);
+    rhs = lazy.rhs().normalize(state, NormalizeMode.WHNF);
     if (compareApprox(lhs, rhs, lr, rl) != null) return true;
     if (rhs instanceof MetaTerm) return compareUntyped(rhs, lhs, rl, lr) != null;
     // ^ Beware of the order!!
@@ -147,14 +176,26 @@ public sealed abstract class TermComparator permits Unifier {
 
   @Nullable
   protected Term compareUntyped(@NotNull Term lhs, @NotNull Term rhs, Sub lr, Sub rl) {
+    var key = memo.key(lhs, rhs, null, lr, rl);
+    var version = memo.version();
+    var cached = memo.getUntyped(key);
+    if (cached != null) return cached.getOrNull();
+    var result = doCompareUntypedWHNF(lhs, rhs, lr, rl);
+    memo.putUntyped(key, version, result);
+    return result;
+  }
+
+  private @Nullable Term doCompareUntypedWHNF(@NotNull Term lhs, @NotNull Term rhs, Sub lr, Sub rl) {
     // lhs & rhs will both be WHNF if either is not a potentially reducible call
     if (TermComparator.isCall(lhs) || TermComparator.isCall(rhs)) {
       var ty = compareApprox(lhs, rhs, lr, rl);
       if (ty == null) ty = doCompareUntyped(lhs, rhs, lr, rl);
       if (ty != null) return ty.normalize(state, NormalizeMode.WHNF);
     }
-    lhs = lhs.normalize(state, NormalizeMode.WHNF);
-    rhs = rhs.normalize(state, NormalizeMode.WHNF);
+    var lazy = unfoldLazily(lhs, rhs, lr, rl);
+    if (lazy.type() != null) return lazy.type().normalize(state, NormalizeMode.WHNF);
+    lhs = lazy.lhs().normalize(state, NormalizeMode.WHNF);
+    rhs = lazy.rhs().normalize(state, NormalizeMode.WHNF);
     var x = doCompareUntyped(lhs, rhs, lr, rl);
     if (x != null) return x.normalize(state, NormalizeMode.WHNF);
     if (failure == null) failure = new FailureData(lhs.freezeHoles(state), rhs.freezeHoles(state));
@@ -168,18 +209,98 @@ public sealed abstract class TermComparator permits Unifier {
     return compare(whnf, rhsWhnf, lr, rl, type);
   }
 
+  /**
+   * Compares the arguments of two calls of the same definition. This is only an attempt,
+   * since the calls may still be equal after unfolding when the arguments are not,
+   * so the metas solved by a failed attempt are rolled back.
+   */
   private @Nullable Term compareApprox(@NotNull Term preLhs, @NotNull Term preRhs, Sub lr, Sub rl) {
     return switch (preLhs) {
       case FnCall lhs when preRhs instanceof FnCall rhs ->
-        lhs.ref() != rhs.ref() ? null : visitCall(lhs, rhs, lr, rl, lhs.ref(), lhs.ulift());
+        lhs.ref() != rhs.ref() ? null : attempt(() -> visitCall(lhs, rhs, lr, rl, lhs.ref(), lhs.ulift()));
       case ConCall lhs when preRhs instanceof ConCall rhs ->
-        lhs.ref() != rhs.ref() ? null : visitCall(lhs, rhs, lr, rl, lhs.ref(), lhs.ulift());
+        lhs.ref() != rhs.ref() ? null : attempt(() -> visitCall(lhs, rhs, lr, rl, lhs.ref(), lhs.ulift()));
       case PrimCall lhs when preRhs instanceof PrimCall rhs ->
-        lhs.ref() != rhs.ref() ? null : visitCall(lhs, rhs, lr, rl, lhs.ref(), lhs.ulift());
+        lhs.ref() != rhs.ref() ? null : attempt(() -> visitCall(lhs, rhs, lr, rl, lhs.ref(), lhs.ulift()));
       default -> null;
     };
   }
 
+  /** @return the result of <code>attempt</code>, with the changes to {@link #state} undone if it is null */
+  private <T> @Nullable T attempt(@NotNull Supplier<@Nullable T> attempt) {
+    var snapshot = state.snapshot();
+    T result;
+    try {
+      result = attempt.get();
+    } catch (Throwable e) {
+      state.rollback(snapshot);
+      throw e;
+    }
+    if (result == null) state.rollback(snapshot);
+    else state.commit(snapshot);
+    return result;
+  }
+
+  /** @param type non-null if the two sides are found equal, then it is the type of them */
+  private record Lazy(@NotNull Term lhs, @NotNull Term rhs, @Nullable Term type) {}
+
+  /**
+   * Lazy delta reduction: unfold the side with the taller definition by one step (both sides if they are equally tall),
+   * until the heads are the same function, then compare the arguments.
+   * So that <code>f (g x)</code> and <code>f (h x)</code> can be compared without normalizing everything.
+   *
+   * @return the unfolded sides if they are not found equal, to be normalized by the caller
+   * @see FnDef#height
+   */
+  private @NotNull Lazy unfoldLazily(@NotNull Term lhs, @NotNull Term rhs, Sub lr, Sub rl) {
+    while (true) {
+      var lHeight = height(lhs);
+      var rHeight = height(rhs);
+      if (lHeight < 0 && rHeight < 0) return new Lazy(lhs, rhs, null);
+      var l = lHeight >= rHeight ? unfoldOnce((FnCall) lhs) : null;
+      var r = rHeight >= lHeight ? unfoldOnce((FnCall) rhs) : null;
+      // The taller side is stuck, try the shorter one
+      if (l == null && r == null) {
+        if (lHeight > rHeight && rHeight >= 0) r = unfoldOnce((FnCall) rhs);
+        else if (rHeight > lHeight && lHeight >= 0) l = unfoldOnce((FnCall) lhs);
+      }
+      if (l == null && r == null) return new Lazy(lhs, rhs, null);
+      if (l != null) lhs = l;
+      if (r != null) rhs = r;
+      if (lhs == rhs) return new Lazy(lhs, rhs, getTypeOrNull(lhs));
+      if (lhs instanceof FnCall lCall && rhs instanceof FnCall rCall && lCall.ref() == rCall.ref()
+        && attempt(() -> visitArgs(lCall.args(), rCall.args(), lr, rl,
+        Term.Param.subst(Def.defTele(lCall.ref()), lCall.ulift())) ? Boolean.TRUE : null) != null)
+        return new Lazy(lhs, rhs, getType(lCall, lCall.ref()));
+    }
+  }
+
+  /** @return -1 if not an unfoldable function call */
+  private static int height(@NotNull Term term) {
+    if (!(term instanceof FnCall fn)) return -1;
+    var def = fn.ref().core;
+    if (def == null || def.modifiers.contains(Modifier.Opaque)) return -1;
+    return def.height;
+  }
+
+  /** @return null if stuck */
+  private @Nullable Term unfoldOnce(@NotNull FnCall fn) {
+    var def = fn.ref().core;
+    assert def != null;
+    var whnf = new Expander.WHNFer(state);
+    var tree = def.tree();
+    return def.body().fold(
+      lamBody -> lamBody.instantiate(DeltaExpander.buildSubst(def.telescope(), fn.args()), fn.ulift()),
+      clauses -> (tree != null
+        ? tree.tryUnfold(fn.args(), fn.ulift(), whnf)
+        : whnf.tryUnfoldClauses(def.modifiers.contains(Modifier.Overlap), fn.args(), fn.ulift(), clauses))
+        .map(WithPos::data).getOrNull());
+  }
+
+  private @Nullable Term getTypeOrNull(@NotNull Term term) {
+    return term instanceof FnCall fn ? getType(fn, fn.ref()) : null;
+  }
+
   private <T> T checkParam(
     Term.Param l, Term.Param r, @Nullable Term type, Subst lsub, Subst rsub,
     Sub lr, Sub rl, Supplier<T> fail, BiFunction<Subst, Subst, T> success
@@ -192,14 +313,14 @@ public sealed abstract class TermComparator permits Unifier {
       return success.apply(lsub, rsub);
     } else {
       var i = new LocalVar(l.ref().name() + r.ref().name());
-      rl.map.put(i, l.toTerm());
-      lr.map.put(i, r.toTerm());
+      rl.put(i, l.toTerm());
+      lr.put(i, r.toTerm());
       var term = new RefTerm(i);
       lsub.addDirectly(l.ref(), term);
       rsub.addDirectly(r.ref(), term);
       var result = ctx.with(i, lTy, () -> success.apply(lsub, rsub));
-      rl.map.remove(i);
-      lr.map.remove(i);
+      rl.remove(i);
+      lr.remove(i);
       return result;
     }
   }
@@ -305,12 +426,12 @@ public sealed abstract class TermComparator permits Unifier {
         case Pair(LamTerm(var lp, var lb), LamTerm(var rp, var rb)) -> {
           var ref = pi.param().ref();
           if (ref == LocalVar.IGNORED) ref = new LocalVar(lp.ref().name() + rp.ref().name());
-          lr.map.put(ref, rp.toTerm());
-          rl.map.put(ref, lp.toTerm());
+          lr.put(ref, rp.toTerm());
+          rl.put(ref, lp.toTerm());
           var piParam = new RefTerm(ref);
           var res = compare(lb.subst(lp.ref(), piParam), rb.subst(rp.ref(), piParam), lr, rl, pi.body());
-          lr.map.remove(ref);
-          rl.map.remove(ref);
+          lr.remove(ref);
+          rl.remove(ref);
           yield res;
         }
         case Pair(var $, LamTerm rambda) -> compareLambdaBody(rambda, lhs, rl, lr, pi);
@@ -348,18 +469,18 @@ public sealed abstract class TermComparator permits Unifier {
 
   private boolean compareLambdaBody(LamTerm lambda, Term rhs, Sub lr, Sub rl, PiTerm pi) {
     var arg = pi.param().toArg();
-    rl.map.put(pi.param().ref(), lambda.param().toTerm());
+    rl.put(pi.param().ref(), lambda.param().toTerm());
     var result = ctx.with(lambda.param(), () ->
       compare(AppTerm.make(lambda, arg), AppTerm.make(rhs, arg), lr, rl, pi.body()));
-    rl.map.remove(pi.param().ref());
+    rl.remove(pi.param().ref());
     return result;
   }
 
   private boolean comparePathLamBody(PLamTerm lambda, Term rhs, Sub lr, Sub rl, PathTerm.Cube cube) {
-    cube.params().forEachWith(lambda.params(), (a, b) -> rl.map.put(a, new RefTerm(b)));
+    cube.params().forEachWith(lambda.params(), (a, b) -> rl.put(a, new RefTerm(b)));
     var result = ctx.withIntervals(lambda.params().view(), () ->
       compare(cube.applyDimsTo(lambda), cube.applyDimsTo(rhs), lr, rl, cube.type()));
-    rl.map.removeAll(cube.params());
+    cube.params().view().reversed().forEach(rl::remove);
     return result;
   }
 
@@ -554,11 +675,53 @@ public sealed abstract class TermComparator permits Unifier {
   }
 
   @Debug.Renderer(childrenArray = "map.toArray()", hasChildren = "!map.isEmpty()")
-  public record Sub(@NotNull MutableMap<@NotNull AnyVar, @NotNull RefTerm> map) implements Cloneable {
+  /**
+   * The variables bound while comparing binders, mapped to the other side.
+   * Bindings are added and removed in a stack discipline, and each set of bindings has its own {@link #scope()},
+   * so that {@link ConversionMemo} can tell it by identity without copying the map.
+   */
+  public static final class Sub implements Cloneable {
+    private final @NotNull MutableMap<@NotNull AnyVar, @NotNull RefTerm> map;
+    private @NotNull Scope scope = new Scope(null);
+
+    private static final class Scope {
+      private final @Nullable Scope parent;
+
+      private Scope(@Nullable Scope parent) {
+        this.parent = parent;
+      }
+    }
+
     public Sub() {
       this(MutableMap.create());
     }
 
+    private Sub(@NotNull MutableMap<@NotNull AnyVar, @NotNull RefTerm> map) {
+      this.map = map;
+    }
+
+    /** Read only, use {@link #put} and {@link #remove} to change the bindings */
+    public @NotNull MutableMap<@NotNull AnyVar, @NotNull RefTerm> map() {
+      return map;
+    }
+
+    /** Identifies the current bindings, by identity */
+    public @NotNull Object scope() {
+      return scope;
+    }
+
+    void put(@NotNull AnyVar var, @NotNull RefTerm term) {
+      map.put(var, term);
+      scope = new Scope(scope);
+    }
+
+    /** Removes a binding added by {@link #put}, the latest ones first */
+    void remove(@NotNull AnyVar var) {
+      map.remove(var);
+      assert scope.parent != null : "Removing more bindings than added";
+      scope = scope.parent;
+    }
+
     @SuppressWarnings("MethodDoesntCallSuperMethod") public @NotNull Sub clone() {
       return new Sub(MutableMap.from(map));
     }
@@ -0,0 +1,83 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.core;
+
+import org.aya.core.def.PrimDef;
+import org.aya.core.term.*;
+import org.aya.core.visitor.TermInterner;
+import org.aya.generic.SortKind;
+import org.aya.ref.LocalVar;
+import org.aya.tyck.TyckDeclTest;
+import org.aya.tyck.TyckState;
+import org.aya.util.Arg;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InternTest {
+  @Test public void structural() {
+    var interner = new TermInterner();
+    var f = new LocalVar("f");
+    var lhs = new AppTerm(new RefTerm(f), new Arg<>(new SortTerm(SortKind.Type, 1), true));
+    var rhs = new AppTerm(new RefTerm(f), new Arg<>(new SortTerm(SortKind.Type, 1), true));
+    assertNotSame(lhs, rhs);
+    assertSame(interner.intern(lhs), interner.intern(rhs));
+    var other = new AppTerm(new RefTerm(new LocalVar("f")), new Arg<>(SortTerm.Type0, true));
+    assertNotSame(interner.intern(lhs), interner.intern(other));
+  }
+
+  @Test public void binders() {
+    var interner = new TermInterner();
+    var x = new LocalVar("x");
+    var lhs = new LamTerm(new Term.Param(x, SortTerm.Type0, true), new RefTerm(x));
+    var rhs = new LamTerm(new Term.Param(x, SortTerm.Type0, true), new RefTerm(x));
+    assertSame(interner.intern(lhs), interner.intern(rhs));
+    // Alpha-equivalent, but sharing it would leak the binder of one term into the other
+    var y = new LocalVar("x");
+    var renamed = new LamTerm(new Term.Param(y, SortTerm.Type0, true), new RefTerm(y));
+    assertNotSame(interner.intern(lhs), interner.intern(renamed));
+    assertTrue(interner.hits() > 0);
+  }
+
+  @Test public void deep() {
+    var interner = new TermInterner();
+    var f = new LocalVar("f");
+    Term lhs = new RefTerm(f), rhs = new RefTerm(f);
+    for (int i = 0; i < 100000; i++) {
+      lhs = new AppTerm(lhs, new Arg<>(SortTerm.Type0, true));
+      rhs = new AppTerm(rhs, new Arg<>(SortTerm.Type0, true));
+    }
+    assertSame(interner.intern(lhs), interner.intern(rhs));
+  }
+
+  @Test public void tyckWithInterning() {
+    TyckState.internTerms(true);
+    try {
+      var interner = new TyckState(new PrimDef.Factory()).interner();
+      assertNotNull(interner);
+      assertSame(interner, new TyckState(new PrimDef.Factory()).interner());
+      TyckDeclTest.successTyckDecls("""
+        open data Nat : Type | zero | suc Nat
+        def overlap infixl + (a b : Nat) : Nat
+          | zero, b => b
+          | a, zero => a
+          | suc a, b => suc (a + b)
+          | a, suc b => suc (a + b)
+        open data Vec (A : Type) (n : Nat) : Type
+          | A, zero => vnil
+          | A, suc m => infixr :> A (Vec A m)
+        variable A : Type
+        variable n m : Nat
+        def overlap infixr ++ (xs : Vec A n) (ys : Vec A m) : Vec A (n + m)
+          | vnil, ys => ys
+          | xs, vnil => xs
+          | x :> xs, ys => x :> (xs ++ ys)
+        """);
+      // The types of the clauses mention Nat and Vec many times
+      assertTrue(interner.hits() > 0);
+    } finally {
+      TyckState.internTerms(false);
+    }
+    assertNull(new TyckState(new PrimDef.Factory()).interner());
+  }
+}
@@ -2,20 +2,31 @@
 // Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
 package org.aya.core;
 
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.core.def.DataDef;
 import org.aya.core.def.FnDef;
+import org.aya.core.repr.NatArith;
 import org.aya.core.term.ConCall;
+import org.aya.core.term.DataCall;
+import org.aya.core.term.FnCall;
+import org.aya.core.term.IntegerTerm;
 import org.aya.core.term.RefTerm;
 import org.aya.core.term.Term;
+import org.aya.core.visitor.Subst;
 import org.aya.generic.util.NormalizeMode;
+import org.aya.ref.LocalVar;
 import org.aya.tyck.TyckDeclTest;
 import org.aya.tyck.TyckState;
 import org.aya.util.distill.DistillerOptions;
 import org.junit.jupiter.api.Test;
 
+import java.math.BigInteger;
 import java.util.Objects;
 import java.util.function.IntFunction;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class NormalizeTest {
@@ -33,7 +44,7 @@ public class NormalizeTest {
       def overlap2 (a : Nat) : Nat => tracy zero a""");
     var defs = res._2;
     var state = new TyckState(res._1);
-    IntFunction<Term> normalizer = i -> ((FnDef) defs.get(i)).body.getLeftValue().normalize(state, NormalizeMode.NF);
+    IntFunction<Term> normalizer = i -> ((FnDef) defs.get(i)).body().getLeftValue().normalize(state, NormalizeMode.NF);
     assertTrue(normalizer.apply(2) instanceof ConCall conCall
       && Objects.equals(conCall.ref().name(), "suc"));
     assertTrue(normalizer.apply(3) instanceof ConCall conCall
@@ -44,6 +55,37 @@ public class NormalizeTest {
       && Objects.equals(ref.var().name(), "a"));
   }
 
+  @Test public void instantiate() {
+    var res = TyckDeclTest.successTyckDecls("""
+      open data Nat : Type | zero | suc Nat
+      def test (A : Type) (a : A) : Type 1 => Pi (B : Type) -> Sig A ** (Pi (y : A) -> B)
+      def lam (A : Type) (a : A) : Pi (B : Type) -> B -> A => \\B b => a""");
+    var nat = new DataCall(((DataDef) res._2.get(0)).ref, 0, ImmutableSeq.empty());
+    var args = ImmutableSeq.<Term>of(nat, new RefTerm(new LocalVar("v")));
+    for (var def : res._2.drop(1)) {
+      var fn = (FnDef) def;
+      var body = fn.body().getLeftValue();
+      var subst = new Subst(fn.telescope.map(Term.Param::ref), args);
+      // The binders are renamed to fresh variables of the same names in both
+      assertEquals(body.rename().lift(1).subst(subst).toDoc(DistillerOptions.debug()).debugRender(),
+        body.instantiate(subst, 1).toDoc(DistillerOptions.debug()).debugRender());
+    }
+  }
+
+  @Test public void height() {
+    var res = TyckDeclTest.successTyckDecls("""
+      open data Nat : Type | zero | suc Nat
+      def id (n : Nat) : Nat => n
+      def g (n : Nat) : Type => Nat
+      def h (n : Nat) : Type => g (id n)
+      def f (n : Nat) (x : h n) : g n => x""");
+    IntFunction<Integer> height = i -> ((FnDef) res._2.get(i)).height;
+    assertEquals(1, height.apply(1));
+    assertEquals(1, height.apply(2));
+    assertEquals(2, height.apply(3));
+    assertEquals(1, height.apply(4));
+  }
+
   @Test public void unfoldPrim() {
     var res = TyckDeclTest.successTyckDecls("""
       prim I
@@ -53,7 +95,7 @@ public class NormalizeTest {
       def kiva : Nat => (\\ i => Nat).coe (suc zero) freeze 1""");
     var state = new TyckState(res._1);
     var defs = res._2;
-    IntFunction<Term> normalizer = i -> ((FnDef) defs.get(i)).body.getLeftValue().normalize(state, NormalizeMode.NF);
+    IntFunction<Term> normalizer = i -> ((FnDef) defs.get(i)).body().getLeftValue().normalize(state, NormalizeMode.NF);
     assertTrue(normalizer.apply(3) instanceof ConCall conCall
       && Objects.equals(conCall.ref().name(), "zero")
       && conCall.conArgs().isEmpty());
@@ -94,8 +136,134 @@ public class NormalizeTest {
       """);
     var state = new TyckState(res._1);
     var defs = res._2;
-    IntFunction<Term> normalizer = i -> ((FnDef) defs.get(i)).body.getLeftValue().normalize(state, NormalizeMode.NF);
+    IntFunction<Term> normalizer = i -> ((FnDef) defs.get(i)).body().getLeftValue().normalize(state, NormalizeMode.NF);
     assertEquals("suc zero :< nil", normalizer.apply(defs.size() - 2).toDoc(DistillerOptions.debug()).debugRender());
     assertEquals("suc zero :< nil", normalizer.apply(defs.size() - 1).toDoc(DistillerOptions.debug()).debugRender());
   }
+
+  @Test public void decisionTree() {
+    var res = TyckDeclTest.successTyckDecls("""
+      open data Nat : Type | zero | suc Nat
+      def f (a b : Nat) : Nat
+       | a, suc zero => zero
+       | zero, zero => suc zero
+       | a, b => b
+      def stuck (x : Nat) : Nat => f x (suc (suc zero))
+      def unstuck : Nat => f zero zero
+      def wildcard (x : Nat) : Nat => f (suc x) zero""");
+    var defs = res._2;
+    var state = new TyckState(res._1);
+    assertNotNull(((FnDef) defs.get(1)).tree());
+    IntFunction<Term> normalizer = i -> ((FnDef) defs.get(i)).body().getLeftValue().normalize(state, NormalizeMode.NF);
+    // The second clause inspects x before it finds out that the second argument is not zero
+    assertTrue(normalizer.apply(2) instanceof FnCall);
+    assertTrue(normalizer.apply(3) instanceof ConCall conCall
+      && Objects.equals(conCall.ref().name(), "suc"));
+    assertTrue(normalizer.apply(4) instanceof ConCall conCall
+      && Objects.equals(conCall.ref().name(), "zero"));
+  }
+
+  @Test public void whnfCache() {
+    var res = TyckDeclTest.successTyckDecls("""
+      open data Nat : Type | zero | suc Nat
+      def pred (a : Nat) : Nat
+       | zero => zero
+       | suc a => a
+      def one : Nat => pred (suc (suc zero))""");
+    var state = new TyckState(res._1);
+    var call = ((FnDef) res._2.last()).body().getLeftValue();
+    var whnf = call.normalize(state, NormalizeMode.WHNF);
+    assertSame(whnf, call.normalize(state, NormalizeMode.WHNF));
+    assertEquals(1, state.whnfCache().misses());
+    assertEquals(1, state.whnfCache().hits());
+  }
+
+  @Test public void nbeAgreesWithNF() {
+    var res = TyckDeclTest.successTyckDecls("""
+      open data Nat | zero | suc Nat
+      open data List (A : Type) : Type
+        | nil
+        | infixr :< A (List A)
+      def overlap infixl + (a b : Nat) : Nat
+        | zero, a => a
+        | a, zero => a
+        | suc a, b => suc (a + b)
+        | a, suc b => suc (a + b)
+      def map {A B : Type} (f : A -> B) (l : List A) : List B
+        | f, nil => nil
+        | f, a :< l => f a :< map f l
+      def Num => Pi (x : Type 0) -> (x -> x) -> (x -> x)
+      def two : Num => \\ A f x => f (f x)
+      def mul (a b : Num) : Num => \\A f x => a A (b A f) x
+      def t1 (n : Nat) : List Nat => map (\\ x => x + suc n) (n :< zero :< nil)
+      def t2 (n : Nat) : Nat => suc zero + n
+      def t3 : Num => mul two two
+      """);
+    var state = new TyckState(res._1);
+    var defs = res._2;
+    for (var i = defs.size() - 3; i < defs.size(); i++) {
+      var body = ((FnDef) defs.get(i)).body().getLeftValue();
+      assertEquals(
+        body.normalize(state, NormalizeMode.NF).toDoc(DistillerOptions.debug()).debugRender(),
+        body.normalize(state, NormalizeMode.NBE).toDoc(DistillerOptions.debug()).debugRender());
+    }
+  }
+
+  /** The scrutinee of <code>pred</code> is a path application, which is not a constructor before reduction */
+  @Test public void nbeMatchesPathApp() {
+    var res = TyckDeclTest.successTyckDecls("""
+      prim I
+      prim intervalInv
+      def ~ => intervalInv
+      open data Nat | zero | suc Nat
+      def infix = {A : Type} (a b : A) : Type =>
+        [| i |] A {| ~ i := a | i := b |}
+      def one : suc zero = suc zero => \\i => suc zero
+      def pred (a : Nat) : Nat
+        | zero => zero
+        | suc a => a
+      def t1 (i : I) : Nat => pred (one i)
+      """);
+    var state = new TyckState(res._1);
+    var body = ((FnDef) res._2.last()).body().getLeftValue();
+    var nf = body.normalize(state, NormalizeMode.NF);
+    assertTrue(nf instanceof ConCall conCall && Objects.equals(conCall.ref().name(), "zero"));
+    assertEquals(nf.toDoc(DistillerOptions.debug()).debugRender(),
+      body.normalize(state, NormalizeMode.NBE).toDoc(DistillerOptions.debug()).debugRender());
+  }
+
+  @Test public void natArith() {
+    var res = TyckDeclTest.successTyckDecls("""
+      open data Nat | zero | suc Nat
+      open data Bool | true | false
+      def overlap infixl + (a b : Nat) : Nat
+        | zero, a => a
+        | a, zero => a
+        | suc a, b => suc (a + b)
+        | a, suc b => suc (a + b)
+      def infixl * (a b : Nat) : Nat
+        | zero, b => zero
+        | suc a, b => b + (a * b)
+      def infixl - (a b : Nat) : Nat
+        | a, zero => a
+        | zero, suc b => zero
+        | suc a, suc b => a - b
+      def infix <= (a b : Nat) : Bool
+        | zero, b => true
+        | suc a, zero => false
+        | suc a, suc b => a <= b
+      def t1 : Nat => 2000000000 * 2000000000 + suc 1
+      def t2 : Nat => 3 - 1000000000
+      def t3 : Bool => 1000000000 <= 1000000001
+      """);
+    var state = new TyckState(res._1);
+    var defs = res._2;
+    IntFunction<Term> normalizer = i -> ((FnDef) defs.get(defs.size() - 3 + i)).body().getLeftValue().normalize(state, NormalizeMode.NF);
+    assertTrue(normalizer.apply(0) instanceof IntegerTerm lit
+      && lit.repr().equals(new BigInteger("4000000000000000002")));
+    assertTrue(normalizer.apply(1) instanceof IntegerTerm lit && lit.repr().signum() == 0);
+    assertTrue(normalizer.apply(2) instanceof ConCall conCall
+      && Objects.equals(conCall.ref().name(), "true"));
+    assertSame(NatArith.Kind.MUL, Objects.requireNonNull(((FnDef) defs.get(3)).arith).kind());
+  }
 }
@@ -2,6 +2,11 @@
 // Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
 package org.aya.core;
 
+import kala.collection.immutable.ImmutableMap;
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.core.def.FnDef;
+import org.aya.core.serde.AyacFormat;
+import org.aya.core.serde.CompiledAya;
 import org.aya.core.serde.SerTerm;
 import org.aya.core.serde.Serializer;
 import org.aya.tyck.TyckDeclTest;
@@ -10,6 +15,11 @@ import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
 @SuppressWarnings("UnknownLanguage")
 public class SuedeTest {
   @Test public void nat() {
@@ -62,6 +72,24 @@ public class SuedeTest {
       """);
   }
 
+  @Test public void sharing() throws IOException {
+    var res = TyckDeclTest.successTyckDecls("""
+      open data Nat : Type | zero | suc Nat
+      def add (a b : Nat) : Nat
+       | zero, a => a
+       | suc a, b => suc (add a b)
+      """);
+    var serializer = new Serializer(new Serializer.State());
+    var compiled = new CompiledAya(ImmutableSeq.empty(), ImmutableSeq.empty(), ImmutableMap.empty(),
+      res._2.map(serializer::serialize), ImmutableSeq.empty(), ImmutableMap.empty(), ImmutableMap.empty());
+    var read = AyacFormat.read(ByteBuffer.wrap(AyacFormat.toBytes(compiled)));
+    var state = new SerTerm.DeState(res._1);
+    var add = (FnDef) read.serDefs().map(ser -> ser.de(state)).last();
+    var tele = add.telescope;
+    assertSame(tele.get(0).type(), tele.get(1).type());
+    assertSame(tele.get(0).type(), add.result);
+  }
+
   @Test public void string() {
     suedeAll("""
       prim String: Type
@@ -74,8 +102,18 @@ public class SuedeTest {
     var res = TyckDeclTest.successTyckDecls(code);
     var state = new SerTerm.DeState(res._1);
     var serializer = new Serializer(new Serializer.State());
-    res._2.view()
-      .map(serializer::serialize)
+    var serDefs = res._2.map(serializer::serialize);
+    var compiled = new CompiledAya(ImmutableSeq.empty(), ImmutableSeq.empty(), ImmutableMap.empty(),
+      serDefs, ImmutableSeq.empty(), ImmutableMap.empty(), ImmutableMap.empty());
+    try {
+      var bytes = AyacFormat.toBytes(compiled);
+      var read = AyacFormat.read(ByteBuffer.wrap(bytes));
+      // the shared terms are read as SerTerm.Shared, which are compared by identity
+      assertArrayEquals(bytes, AyacFormat.toBytes(read));
+    } catch (IOException e) {
+      fail(e);
+    }
+    serDefs.view()
       .map(ser -> ser.de(state))
       .forEach(Assertions::assertNotNull);
   }
@@ -5,9 +5,12 @@ package org.aya.core;
 import kala.collection.Seq;
 import org.aya.core.def.FnDef;
 import org.aya.core.def.PrimDef;
+import org.aya.core.term.*;
 import org.aya.core.visitor.TermFolder;
+import org.aya.core.visitor.VarSummary;
 import org.aya.ref.LocalVar;
 import org.aya.tyck.TyckDeclTest;
+import org.aya.util.Arg;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -31,8 +34,49 @@ public class UsagesTest {
       var of = TermFolder.RefFinder.HEADER_ONLY.apply(def);
       if (Seq.of("Nat", "Int", "I").contains(def.ref().name())) assertTrue(of.isEmpty());
       else assertFalse(of.isEmpty());
-      if (def instanceof FnDef fn && fn.body.isLeft())
-        assertEquals(0, fn.body.getLeftValue().findUsages(new LocalVar("233")));
+      if (def instanceof FnDef fn && fn.body().isLeft())
+        assertEquals(0, fn.body().getLeftValue().findUsages(new LocalVar("233")));
     });
   }
+
+  @Test public void summary() {
+    var x = new LocalVar("x");
+    var y = new LocalVar("y");
+    var app = new AppTerm(new AppTerm(new RefTerm(x), new Arg<>(new RefTerm(x), true)), new Arg<>(SortTerm.Type0, true));
+    assertTrue(VarSummary.mayContain(app, x));
+    assertTrue(VarSummary.hasLocals(app));
+    assertFalse(VarSummary.hasMetas(app));
+    assertFalse(VarSummary.hasLocals(SortTerm.Type0));
+    assertEquals(2, app.findUsages(x));
+    assertEquals(0, app.findUsages(y));
+    assertSame(app, app.subst(y, SortTerm.Set0));
+  }
+
+  /** The substitution skips the subterms without the variable, but not their redexes */
+  @Test public void substRedex() {
+    var x = new LocalVar("x");
+    var y = new LocalVar("y");
+    var redex = new AppTerm(new LamTerm(new Term.Param(y, SortTerm.Type0, true), new RefTerm(y)),
+      new Arg<>(SortTerm.Set0, true));
+    var pi = new PiTerm(new Term.Param(new LocalVar("z"), redex, true), new RefTerm(x));
+    var subst = (PiTerm) pi.subst(x, SortTerm.Type0);
+    assertEquals(SortTerm.Set0, subst.param().type());
+    assertEquals(SortTerm.Type0, subst.body());
+    assertEquals(SortTerm.Set0, redex.subst(new LocalVar("absent"), SortTerm.Type0));
+  }
+
+  /** Deep enough to overflow the default stack if traversed recursively */
+  @Test public void deep() {
+    var f = new LocalVar("f");
+    var x = new LocalVar("x");
+    Term term = new RefTerm(f);
+    for (int i = 0; i < 200_000; i++) term = new AppTerm(term, new Arg<>(new RefTerm(x), true));
+    assertEquals(200_000, term.findUsages(x));
+    assertSame(term, term.lift(1));
+    assertSame(term, term.subst(new LocalVar("y"), SortTerm.Type0));
+    var subst = term.subst(x, SortTerm.Type0);
+    assertNotSame(term, subst);
+    assertEquals(0, subst.findUsages(x));
+    assertEquals(1, subst.findUsages(f));
+  }
 }
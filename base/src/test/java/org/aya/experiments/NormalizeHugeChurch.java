@@ -17,6 +17,14 @@ public class NormalizeHugeChurch {
   }
 
   @Test @Timeout(value = 5000) public void ppBench() {
+    bench(NormalizeMode.NF);
+  }
+
+  @Test @Timeout(value = 5000) public void ppBenchNbe() {
+    bench(NormalizeMode.NBE);
+  }
+
+  private void bench(@NotNull NormalizeMode mode) {
     var startup = System.currentTimeMillis();
     var res = TyckDeclTest.successTyckDecls("""
       def Num => Pi (x : Type 0) -> (x -> x) -> (x -> x)
@@ -31,10 +39,10 @@ public class NormalizeHugeChurch {
       """);
     var state = new TyckState(res._1);
     var decls = res._2;
-    var last = ((FnDef) decls.last()).body.getLeftValue();
+    var last = ((FnDef) decls.last()).body().getLeftValue();
     println("Tyck: " + (System.currentTimeMillis() - startup));
     startup = System.currentTimeMillis();
-    var nf = last.normalize(state, NormalizeMode.NF);
+    var nf = last.normalize(state, mode);
     println("Normalize: " + (System.currentTimeMillis() - startup));
     startup = System.currentTimeMillis();
     var doc = nf.toDoc(DistillerOptions.informative());
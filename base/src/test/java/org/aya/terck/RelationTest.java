@@ -29,6 +29,21 @@ public class RelationTest {
     assertEquals(Relation.decr(false, 1), Relation.decr(false, 3).mul(Relation.decr(false, -2)));
   }
 
+  @Test public void packed() {
+    var relations = ImmutableSeq.of(Relation.unk(), Relation.eq(), Relation.lt(),
+      Relation.decr(true, -2), Relation.decr(false, 3));
+    for (var l : relations) {
+      assertEquals(l, PackedRelation.unpack(PackedRelation.pack(l)));
+      assertEquals(l.isDecreasing(), PackedRelation.isDecreasing(PackedRelation.pack(l)));
+      for (var r : relations) {
+        var pl = PackedRelation.pack(l);
+        var pr = PackedRelation.pack(r);
+        assertEquals(l.mul(r), PackedRelation.unpack(PackedRelation.mul(pl, pr)));
+        assertEquals(l.compare(r), PackedRelation.compare(pl, pr));
+      }
+    }
+  }
+
   @Test public void pretty() {
     var dummy = new FnCall(DefVar.empty("f"), 0, ImmutableSeq.empty());
     // only used for error reporting, so it's fine to mock it.
@@ -3,30 +3,48 @@
 package org.aya.test;
 
 import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableMap;
 import kala.collection.mutable.MutableSet;
 import org.aya.cli.library.LibraryCompiler;
+import org.aya.cli.library.incremental.CacheCompilerAdvisor;
 import org.aya.cli.library.incremental.CompilerAdvisor;
 import org.aya.cli.library.incremental.DelegateCompilerAdvisor;
+import org.aya.cli.library.incremental.DiskCompilerAdvisor;
 import org.aya.cli.library.incremental.InMemoryCompilerAdvisor;
 import org.aya.cli.library.json.LibraryConfigData;
 import org.aya.cli.library.source.DiskLibraryOwner;
 import org.aya.cli.library.source.LibraryOwner;
+import org.aya.cli.library.source.LibrarySource;
+import org.aya.cli.single.CompilerFlags;
+import org.aya.concrete.stmt.QualifiedID;
+import org.aya.core.def.GenericDef;
 import org.aya.core.def.PrimDef;
+import org.aya.core.serde.Serializer;
 import org.aya.lsp.prim.LspPrimFactory;
+import org.aya.resolve.ResolveInfo;
 import org.aya.util.FileUtil;
 import org.aya.util.reporter.ThrowingReporter;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class LibraryTest {
   @Test public void testOnDisk() throws IOException {
@@ -38,6 +56,147 @@ public class LibraryTest {
     assertEquals(0, compile());
     // The third time should do nothing.
     assertEquals(0, compile());
+    // Touching the sources does not compile them again.
+    var demo = DIR.resolve("build/out/Refparo/Demo.ayac");
+    var compiled = Files.getLastModifiedTime(demo);
+    touchSources();
+    assertEquals(0, compile());
+    assertEquals(compiled, Files.getLastModifiedTime(demo));
+    // Model is compiled again, reusing its definitions from the compiled core,
+    // but its interface does not change, so Demo importing it is not.
+    var model = DIR.resolve("src/Refparo/Model.aya");
+    var source = Files.readString(model);
+    var advisor = new ReuseAdvisor();
+    try {
+      Files.writeString(model, source + "\n// A comment\n");
+      assertEquals(0, compile(advisor));
+      assertEquals(compiled, Files.getLastModifiedTime(demo));
+      assertEquals(ImmutableSeq.of("Refparo::Model"), advisor.reused.keysView().toImmutableSeq());
+      assertTrue(advisor.reused.get("Refparo::Model").containsAll(ImmutableSeq.of("coe", "GetAgentT", "AgentT-inv")));
+      // Editing a definition checks it and the ones depending on it again, the others are still reused.
+      advisor.reused.clear();
+      var edited = source.replace("=> T.AgentT", "=> (T.AgentT)");
+      assertNotEquals(source, edited);
+      Files.writeString(model, edited);
+      assertEquals(0, compile(advisor));
+      var reused = advisor.reused.get("Refparo::Model");
+      assertTrue(reused.containsAll(ImmutableSeq.of("coe", "SetAgentT")));
+      assertFalse(reused.contains("GetAgentT"));
+      assertFalse(reused.contains("AgentT-inv"));
+    } finally {
+      Files.writeString(model, source);
+    }
+  }
+
+  private static void touchSources() throws IOException {
+    var now = FileTime.fromMillis(System.currentTimeMillis() + 1000);
+    try (var sources = Files.walk(DIR.resolve("src"))) {
+      for (var source : sources.filter(Files::isRegularFile).toList()) Files.setLastModifiedTime(source, now);
+    }
+  }
+
+  @Test public void testParallel() throws IOException {
+    var root = Files.createTempDirectory("aya-parallel");
+    try {
+      Files.writeString(root.resolve("aya.json"), """
+        { "ayaVersion": "0.23", "name": "parallel", "version": "0.1.0", "dependency": {} }
+        """);
+      var src = Files.createDirectories(root.resolve("src"));
+      Files.writeString(src.resolve("Nat.aya"), "open data Nat : Type | zero | suc Nat");
+      Files.writeString(src.resolve("Add.aya"), """
+        open import Nat
+        def add (a b : Nat) : Nat
+          | zero, b => b
+          | suc a, b => suc (add a b)
+        """);
+      Files.writeString(src.resolve("UseAdd.aya"), "open import Nat\nopen import Add\ndef two : Nat => add (suc zero) (suc zero)");
+      Files.writeString(src.resolve("Bad.aya"), "open import Nat\ndef bad : Nat => Type");
+      Files.writeString(src.resolve("UseBad.aya"), "open import Nat\nopen import Bad\ndef useBad : Nat => suc bad");
+      Files.writeString(src.resolve("Bad2.aya"), "open import Nat\nopen import Add\ndef bad2 : Type => add zero zero");
+      var sequential = compileParallel(root, 1);
+      var cores = compiledCores(root);
+      // the modules importing a failed one are skipped
+      assertTrue(sequential.contains("[Tyck] UseAdd"));
+      assertFalse(sequential.contains("[Tyck] UseBad"));
+      assertTrue(sequential.contains("UseBad"));
+      assertTrue(cores.containsKey("UseAdd.ayac"));
+      // the problems are reported in the same order, and the compiled cores are the same
+      for (int i = 0; i < 4; i++) {
+        FileUtil.deleteRecursively(root.resolve("build"));
+        assertEquals(sequential, compileParallel(root, 4));
+        assertEquals(cores, compiledCores(root));
+      }
+    } finally {
+      FileUtil.deleteRecursively(root);
+    }
+  }
+
+  /** @return the output without the timings */
+  private static @NotNull String compileParallel(@NotNull Path root, int jobs) throws IOException {
+    var out = new ByteArrayOutputStream();
+    var reporter = new StreamReporter(new PrintStream(out, true, StandardCharsets.UTF_8));
+    var flags = new CompilerFlags(CompilerFlags.Message.ASCII, false, false, null, ImmutableSeq.empty(), null, jobs);
+    assertEquals(1, LibraryCompiler.compile(new PrimDef.Factory(), reporter, flags, CompilerAdvisor.onDisk(), root));
+    return out.toString(StandardCharsets.UTF_8).lines()
+      .filter(line -> !line.contains("Done in ") && !line.contains("loaded in "))
+      .collect(Collectors.joining("\n"));
+  }
+
+  private static @NotNull Map<String, String> compiledCores(@NotNull Path root) throws IOException {
+    var cores = new TreeMap<String, String>();
+    try (var files = Files.walk(root.resolve("build"))) {
+      for (var core : files.filter(f -> f.toString().endsWith(".ayac")).toList())
+        cores.put(core.getFileName().toString(), HexFormat.of().formatHex(Files.readAllBytes(core)));
+    }
+    return cores;
+  }
+
+  @Test public void testBuildCache() throws IOException {
+    var cache = Files.createTempDirectory("aya-cache");
+    try {
+      var advisor = new CountingCacheAdvisor(cache);
+      FileUtil.deleteRecursively(DIR.resolve("build"));
+      assertEquals(0, compile(advisor));
+      assertNotEquals(0, advisor.saved.get());
+      // Like a fresh checkout, every module is copied from the cache.
+      FileUtil.deleteRecursively(DIR.resolve("build"));
+      advisor.saved.set(0);
+      assertEquals(0, compile(advisor));
+      assertEquals(0, advisor.saved.get());
+    } finally {
+      FileUtil.deleteRecursively(cache);
+      FileUtil.deleteRecursively(DIR.resolve("build"));
+    }
+  }
+
+  private static final class CountingCacheAdvisor extends CacheCompilerAdvisor {
+    private final @NotNull AtomicInteger saved = new AtomicInteger();
+
+    public CountingCacheAdvisor(@NotNull Path cacheDir) {
+      super(cacheDir);
+    }
+
+    @Override public void doSaveCompiledCore(
+      Serializer.@NotNull State serState, @NotNull LibrarySource file,
+      @NotNull ResolveInfo resolveInfo, @NotNull ImmutableSeq<GenericDef> defs
+    ) throws IOException {
+      saved.incrementAndGet();
+      super.doSaveCompiledCore(serState, file, resolveInfo, defs);
+    }
+  }
+
+  /** Records the definitions reused from the previous build by each module compiled */
+  private static final class ReuseAdvisor extends DiskCompilerAdvisor {
+    private final @NotNull MutableMap<String, ImmutableSeq<String>> reused = MutableMap.create();
+
+    @Override public void doSaveCompiledCore(
+      Serializer.@NotNull State serState, @NotNull LibrarySource file,
+      @NotNull ResolveInfo resolveInfo, @NotNull ImmutableSeq<GenericDef> defs
+    ) throws IOException {
+      reused.put(QualifiedID.join(file.moduleName()),
+        resolveInfo.reused().keysView().map(decl -> decl.ref().name()).toImmutableSeq());
+      super.doSaveCompiledCore(serState, file, resolveInfo, defs);
+    }
   }
 
   @Test public void testInMemoryAndPrim() throws IOException {
@@ -107,7 +266,11 @@ public class LibraryTest {
   public static final Path DIR = TestRunner.DEFAULT_TEST_DIR.resolve("success");
 
   private static int compile() throws IOException {
-    return LibraryCompiler.compile(new PrimDef.Factory(), ThrowingReporter.INSTANCE, TestRunner.flags(), CompilerAdvisor.onDisk(), DIR);
+    return compile(CompilerAdvisor.onDisk());
+  }
+
+  private static int compile(@NotNull CompilerAdvisor advisor) throws IOException {
+    return LibraryCompiler.compile(new PrimDef.Factory(), ThrowingReporter.INSTANCE, TestRunner.flags(), advisor, DIR);
   }
 
   private static int compile(@NotNull PrimDef.Factory factory, @NotNull CompilerAdvisor advisor, @NotNull LibraryOwner owner) throws IOException {
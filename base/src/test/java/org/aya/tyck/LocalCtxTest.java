@@ -0,0 +1,63 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.tyck;
+
+import kala.collection.SeqView;
+import org.aya.core.term.SortTerm;
+import org.aya.core.term.Term;
+import org.aya.ref.LocalVar;
+import org.aya.tyck.env.MapLocalCtx;
+import org.aya.tyck.env.PersistentLocalCtx;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalCtxTest {
+  @Test public void persistent() {
+    var x = new LocalVar("x");
+    var y = new LocalVar("y");
+    var z = new LocalVar("z");
+    var ctx = new PersistentLocalCtx();
+    ctx.put(x, SortTerm.Type0);
+    ctx.put(y, SortTerm.Set0);
+    var tele = ctx.extract();
+    assertEquals(2, tele.size());
+    assertSame(tele, ctx.extract());
+    var derived = ctx.derive();
+    derived.with(z, SortTerm.Type0, () -> {
+      assertEquals(3, derived.extract().size());
+      assertSame(SortTerm.Set0, derived.get(y));
+      return null;
+    });
+    assertSame(tele, derived.extract());
+    // Overwrite in place, and remove not in the stack order
+    ctx.put(x, SortTerm.Set0);
+    assertEquals(tele.map(Term.Param::ref), ctx.extract().map(Term.Param::ref));
+    assertSame(SortTerm.Set0, ctx.get(x));
+    ctx.remove(SeqView.of(x));
+    assertEquals(1, ctx.extract().size());
+    assertSame(y, ctx.extract().first().ref());
+    assertFalse(ctx.isEmpty());
+  }
+
+  /** Bindings added to the parent after deriving are looked up, but not extracted */
+  @Test public void derivedFromMap() {
+    var x = new LocalVar("x");
+    var y = new LocalVar("y");
+    var z = new LocalVar("z");
+    var parent = new MapLocalCtx();
+    parent.put(x, SortTerm.Type0);
+    var derived = parent.derive();
+    derived.put(y, SortTerm.Type0);
+    var tele = derived.extract();
+    assertEquals(2, tele.size());
+    assertSame(tele, derived.extract());
+    assertSame(derived.extractArgs(), derived.extractArgs());
+    parent.put(z, SortTerm.Set0);
+    assertSame(SortTerm.Set0, derived.get(z));
+    assertSame(tele, derived.extract());
+    var nested = derived.derive();
+    assertSame(tele, nested.extract());
+    assertEquals(3, derived.deriveMap().extract().size());
+  }
+}
@@ -0,0 +1,123 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.tyck;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.tuple.Tuple;
+import kala.tuple.Tuple2;
+import org.aya.cli.single.CompilerFlags;
+import org.aya.cli.single.SingleFileCompiler;
+import org.aya.test.StreamReporter;
+import org.aya.test.TestRunner;
+import org.aya.util.error.Global;
+import org.intellij.lang.annotations.Language;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** The SCCs of a module checked in parallel give the same problems and definitions as the sequential check */
+public class ParallelTyckTest {
+  @Language("Aya") private static final String CODE = """
+    open data Nat : Type | zero | suc Nat
+    def bad : Nat => Type
+    def useBad : Nat => suc bad
+    def bad2 (n : Nat) : Type => n
+    def useBad2 : Type => bad2 zero
+    open data D : Type
+      | c1 Nat
+      | c2 zero
+      | c3 (suc zero)
+    def useD (d : D) : Nat
+      | c1 n => n
+      | _ => zero
+    open data E : Type
+      | e1 Nat
+      | e2 E
+    def fine (n : Nat) : Nat => suc n
+    def useFine : Nat => fine (fine zero)
+    def useE (e : E) : Nat
+      | e1 n => fine n
+      | e2 e => useE e
+    """;
+
+  /** The confluence checks of a function are run in parallel, and some of them touch metas */
+  @Language("Aya") private static final String CONFLUENCE = """
+    open data Nat : Type | zero | suc Nat
+    def overlap f (a b : Nat) : Nat
+      | zero, b => b
+      | a, zero => suc a
+      | suc a, b => a
+      | a, suc b => b
+    def overlap g (a b : Nat) : Nat
+      | zero, b => b
+      | a, zero => {??}
+      | suc a, b => a
+      | a, suc b => b
+    def overlap h (a b : Nat) : Nat
+      | zero, b => suc b
+      | a, zero => a
+      | suc a, b => b
+      | a, suc b => suc a
+    """;
+
+  @BeforeAll public static void startDash() {
+    Global.NO_RANDOM_NAME = true;
+  }
+
+  @AfterAll public static void exit() {
+    Global.reset();
+  }
+
+  @Test public void sameAsSequential() throws IOException {
+    var file = Files.createTempFile("parallel", ".aya");
+    try {
+      Files.writeString(file, CODE);
+      var sequential = compile(file, 1);
+      assertTrue(sequential._1.contains("bad"));
+      // the usages of the failed definitions are skipped
+      assertTrue(sequential._2.containsAll(ImmutableSeq.of("Nat", "E", "fine", "useFine", "useE")));
+      assertFalse(sequential._2.contains("useBad"));
+      assertFalse(sequential._2.contains("useBad2"));
+      // the scheduling differs from run to run
+      for (int i = 0; i < 8; i++) assertEquals(sequential, compile(file, 4));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test public void confluenceSameAsSequential() throws IOException {
+    var file = Files.createTempFile("confluence", ".aya");
+    try {
+      Files.writeString(file, CONFLUENCE);
+      var sequential = compile(file, 1);
+      assertTrue(sequential._1.split("not confluent", -1).length > 3);
+      // a worker joining a check may run the checks of another function meanwhile
+      for (int i = 0; i < 8; i++) assertEquals(sequential, compile(file, 4));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  /** @return the output and the names of the well-typed definitions */
+  private static @NotNull Tuple2<String, ImmutableSeq<String>> compile(@NotNull Path file, int jobs) throws IOException {
+    var out = new ByteArrayOutputStream();
+    var reporter = new StreamReporter(new PrintStream(out, true, StandardCharsets.UTF_8));
+    var flags = new CompilerFlags(CompilerFlags.Message.ASCII, false, false, null, ImmutableSeq.empty(), null, jobs);
+    var names = MutableList.<String>create();
+    var status = new SingleFileCompiler(reporter, TestRunner.LOCATOR, null).compile(file, flags,
+      (resolveInfo, defs) -> defs.forEach(def -> names.append(def.ref().name())));
+    assertEquals(1, status);
+    return Tuple.of(out.toString(StandardCharsets.UTF_8), names.toImmutableSeq());
+  }
+}
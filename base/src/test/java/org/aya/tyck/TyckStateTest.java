@@ -0,0 +1,84 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.tyck;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.core.Meta;
+import org.aya.core.def.DataDef;
+import org.aya.core.def.FnDef;
+import org.aya.core.def.PrimDef;
+import org.aya.core.term.*;
+import org.aya.tyck.env.MapLocalCtx;
+import org.aya.tyck.unify.TermComparator;
+import org.aya.tyck.unify.Unifier;
+import org.aya.util.Arg;
+import org.aya.util.Ordering;
+import org.aya.util.error.SourcePos;
+import org.aya.util.reporter.ThrowingReporter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TyckStateTest {
+  @Test public void rollback() {
+    var state = new TyckState(new PrimDef.Factory());
+    var a = Meta.from(ImmutableSeq.empty(), "a", SortTerm.Type0, SourcePos.NONE);
+    var b = Meta.from(ImmutableSeq.empty(), "b", SortTerm.Type0, SourcePos.NONE);
+    state.solve(a, SortTerm.Set0);
+    var version = state.trail().version();
+    var outer = state.snapshot();
+    state.addEqn(new TyckState.Eqn(new MetaTerm(b, ImmutableSeq.empty(), ImmutableSeq.empty()), SortTerm.Set0,
+      Ordering.Eq, SourcePos.NONE, new MapLocalCtx(), new TermComparator.Sub(), new TermComparator.Sub()));
+    var inner = state.snapshot();
+    state.solve(b, SortTerm.Set0);
+    assertEquals(1, state.eqns().takeWoken().size());
+    assertTrue(state.eqns().isEmpty());
+    state.commit(inner);
+    assertTrue(state.metas().containsKey(b));
+    state.rollback(outer);
+    assertTrue(state.metas().containsKey(a));
+    assertFalse(state.metas().containsKey(b));
+    assertTrue(state.eqns().isEmpty());
+    assertNotEquals(version, state.trail().version());
+  }
+
+  @Test public void undoTake() {
+    var state = new TyckState(new PrimDef.Factory());
+    var b = Meta.from(ImmutableSeq.empty(), "b", SortTerm.Type0, SourcePos.NONE);
+    state.addEqn(new TyckState.Eqn(new MetaTerm(b, ImmutableSeq.empty(), ImmutableSeq.empty()), SortTerm.Set0,
+      Ordering.Eq, SourcePos.NONE, new MapLocalCtx(), new TermComparator.Sub(), new TermComparator.Sub()));
+    var snapshot = state.snapshot();
+    state.solve(b, SortTerm.Set0);
+    assertEquals(1, state.eqns().takeWoken().size());
+    state.rollback(snapshot);
+    assertFalse(state.metas().containsKey(b));
+    assertEquals(1, state.eqns().toImmutableSeq().size());
+    state.solve(b, SortTerm.Set0);
+    assertEquals(1, state.eqns().takeWoken().size());
+  }
+
+  /** Comparing the arguments of <code>const ?m zero</code> and <code>const zero (suc zero)</code> fails after solving ?m */
+  @Test public void failedAttempt() {
+    var res = TyckDeclTest.successTyckDecls("""
+      open data Nat : Type | zero | suc Nat
+      def const (a b : Nat) : Nat => zero
+      """);
+    var nat = (DataDef) res._2.get(0);
+    var konst = (FnDef) res._2.get(1);
+    var natCall = new DataCall(nat.ref(), 0, ImmutableSeq.empty());
+    var zero = new ConCall(nat.ref(), nat.body.get(0).ref(), ImmutableSeq.empty(), 0, ImmutableSeq.empty());
+    var one = new ConCall(nat.ref(), nat.body.get(1).ref(), ImmutableSeq.empty(), 0,
+      ImmutableSeq.of(new Arg<>(zero, true)));
+    var m = Meta.from(ImmutableSeq.empty(), "m", natCall, SourcePos.NONE);
+    var hole = new MetaTerm(m, ImmutableSeq.empty(), ImmutableSeq.empty());
+    var state = new TyckState(res._1);
+    var lhs = new FnCall(konst.ref(), 0, ImmutableSeq.of(new Arg<>(hole, true), new Arg<>(zero, true)));
+    var rhs = new FnCall(konst.ref(), 0, ImmutableSeq.of(new Arg<>(zero, true), new Arg<>(one, true)));
+    var unifier = new Unifier(Ordering.Eq, ThrowingReporter.INSTANCE, false, false, null, state,
+      SourcePos.NONE, new MapLocalCtx());
+    assertTrue(unifier.compare(lhs, rhs, natCall));
+    // both sides unfold to zero, so ?m is not determined
+    assertFalse(state.metas().containsKey(m));
+    assertFalse(state.trail().recording());
+  }
+}
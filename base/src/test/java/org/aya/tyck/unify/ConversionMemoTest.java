@@ -0,0 +1,46 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.tyck.unify;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.core.Meta;
+import org.aya.core.def.PrimDef;
+import org.aya.core.term.MetaTerm;
+import org.aya.core.term.RefTerm;
+import org.aya.core.term.SortTerm;
+import org.aya.ref.LocalVar;
+import org.aya.tyck.TyckState;
+import org.aya.util.error.SourcePos;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConversionMemoTest {
+  @Test public void retryAfterSolve() {
+    var state = new TyckState(new PrimDef.Factory());
+    var memo = new ConversionMemo(state);
+    var lr = new TermComparator.Sub();
+    var rl = new TermComparator.Sub();
+    var m = Meta.from(ImmutableSeq.empty(), "m", SortTerm.Type0, SourcePos.NONE);
+    var hole = new MetaTerm(m, ImmutableSeq.empty(), ImmutableSeq.empty());
+    var key = memo.key(hole, SortTerm.Set0, null, lr, rl);
+    memo.putUntyped(key, memo.version(), null);
+    assertNotNull(memo.getUntyped(key));
+    // The failure is forgotten, the comparison is done again with the solution
+    state.solve(m, SortTerm.Set0);
+    assertNull(memo.getUntyped(memo.key(hole, SortTerm.Set0, null, lr, rl)));
+  }
+
+  @Test public void bindings() {
+    var memo = new ConversionMemo(new TyckState(new PrimDef.Factory()));
+    var lr = new TermComparator.Sub();
+    var rl = new TermComparator.Sub();
+    var x = new LocalVar("x");
+    var key = memo.key(SortTerm.Type0, SortTerm.Type0, null, lr, rl);
+    memo.putTyped(key, memo.version(), true);
+    lr.put(x, new RefTerm(x));
+    assertNull(memo.getTyped(memo.key(SortTerm.Type0, SortTerm.Type0, null, lr, rl)));
+    lr.remove(x);
+    assertEquals(Boolean.TRUE, memo.getTyped(memo.key(SortTerm.Type0, SortTerm.Type0, null, lr, rl)));
+  }
+}
@@ -0,0 +1,28 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+dependencies {
+  implementation(project(":cli"))
+  val deps: java.util.Properties by rootProject.ext
+  val jmhVersion = deps.getProperty("version.jmh")
+  implementation("org.openjdk.jmh", "jmh-core", version = jmhVersion)
+  annotationProcessor("org.openjdk.jmh", "jmh-generator-annprocess", version = jmhVersion)
+}
+
+// Benchmarks are not published
+tasks.withType<AbstractPublishToMaven>().configureEach { enabled = false }
+
+/**
+ * Usage: `./gradlew :bench:bench [-Pbench.include=Normalize] [-Pbench.args="-f 1 -wi 2"]`,
+ * the results are written to `bench/build/jmh-result.json`, see `bench/compare.py`.
+ */
+tasks.register<JavaExec>("bench") {
+  group = "verification"
+  classpath = sourceSets.main.get().runtimeClasspath
+  mainClass.set("org.openjdk.jmh.Main")
+  val result = buildDir.resolve("jmh-result.json")
+  outputs.file(result)
+  outputs.upToDateWhen { false }
+  val extra = findProperty("bench.args")?.toString()?.split(' ')?.filter(String::isNotBlank) ?: emptyList()
+  args = listOf("-rf", "json", "-rff", result.toString()) +
+    extra + listOfNotNull(findProperty("bench.include")?.toString())
+}
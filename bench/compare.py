@@ -0,0 +1,66 @@
+#!/usr/bin/env python3
+# Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+# Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+"""
+Compare two JMH result files (`-rf json`) and report regressions.
+
+  ./gradlew :bench:bench && cp bench/build/jmh-result.json baseline.json
+  # ... switch to the new revision ...
+  ./gradlew :bench:bench && python3 bench/compare.py baseline.json bench/build/jmh-result.json
+
+Exits with 1 if some benchmark is slower than the baseline by more than the threshold
+and the difference is beyond the error margins of both measurements.
+"""
+import argparse
+import json
+import sys
+
+
+def load(path):
+  with open(path, encoding="utf-8") as f:
+    results = {}
+    for entry in json.load(f):
+      params = ",".join(f"{k}={v}" for k, v in sorted(entry.get("params", {}).items()))
+      key = entry["benchmark"].removeprefix("org.aya.bench.") + (f"({params})" if params else "")
+      results[key] = entry
+    return results
+
+
+def main():
+  parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+  parser.add_argument("baseline")
+  parser.add_argument("current")
+  parser.add_argument("--threshold", type=float, default=0.1, help="tolerated slowdown, default 0.1 (10%%)")
+  args = parser.parse_args()
+  baseline, current = load(args.baseline), load(args.current)
+
+  regressions = 0
+  print(f"{'benchmark':<60} {'baseline':>12} {'current':>12} {'change':>8}")
+  for key in sorted(baseline.keys() | current.keys()):
+    if key not in baseline or key not in current:
+      print(f"{key:<60} {'(only in ' + ('current' if key in current else 'baseline') + ')':>34}")
+      continue
+    old, new = baseline[key]["primaryMetric"], current[key]["primaryMetric"]
+    if old["scoreUnit"] != new["scoreUnit"]:
+      print(f"{key:<60} unit changed: {old['scoreUnit']} -> {new['scoreUnit']}")
+      continue
+    # Throughput is better when higher, the other modes report time
+    higher_is_better = baseline[key]["mode"] == "thrpt"
+    change = (new["score"] - old["score"]) / old["score"]
+    slowdown = -change if higher_is_better else change
+    significant = abs(new["score"] - old["score"]) > old["scoreError"] + new["scoreError"]
+    mark = ""
+    if significant and slowdown > args.threshold:
+      mark = "  REGRESSION"
+      regressions += 1
+    elif significant and slowdown < -args.threshold:
+      mark = "  improved"
+    print(f"{key:<60} {old['score']:>12.3f} {new['score']:>12.3f} {change:>+8.1%}{mark}")
+
+  if regressions:
+    print(f"{regressions} regression(s) beyond {args.threshold:.0%}", file=sys.stderr)
+    sys.exit(1)
+
+
+if __name__ == "__main__":
+  main()
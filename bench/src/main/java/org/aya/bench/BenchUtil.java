@@ -0,0 +1,136 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.bench;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.control.Option;
+import kala.value.MutableValue;
+import org.aya.cli.parse.AyaParserImpl;
+import org.aya.concrete.stmt.Stmt;
+import org.aya.core.def.FnDef;
+import org.aya.core.def.GenericDef;
+import org.aya.core.def.PrimDef;
+import org.aya.resolve.ResolveInfo;
+import org.aya.resolve.context.EmptyContext;
+import org.aya.resolve.context.PhysicalModuleContext;
+import org.aya.resolve.module.ModuleListLoader;
+import org.aya.util.error.SourceFile;
+import org.aya.util.reporter.ThrowingReporter;
+import org.intellij.lang.annotations.Language;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+
+/**
+ * Programs and helpers shared by the benchmarks.
+ * Programs are inlined so the benchmarks do not depend on the working directory.
+ */
+final class BenchUtil {
+  static final @NotNull Path SOURCE = Path.of("Bench.aya");
+
+  @Language("Aya") static final @NotNull String CHURCH = """
+    def Num => Pi (x : Type 0) -> (x -> x) -> (x -> x)
+    def zero : Num => \\ A f x => x
+    def suc (a : Num) : Num => \\ A f x => a A f (f x)
+    def add (a b : Num) : Num => \\A f x => a A f (b A f x)
+    def mul (a b : Num) : Num => \\A f x => a A (b A f) x
+    def #2 : Num => suc (suc zero)
+    def #4 : Num => mul #2 #2
+    def #16 : Num => mul #4 #4
+    def #256 : Num => mul #16 #16
+    """;
+
+  /** No literals, so the unary recursion is really unfolded */
+  @Language("Aya") static final @NotNull String UNARY = """
+    open data Nat | zero | suc Nat
+    def overlap infixl + (a b : Nat) : Nat
+      | zero, b => b
+      | a, zero => a
+      | suc a, b => suc (a + b)
+      | a, suc b => suc (a + b)
+    def infixl * (a b : Nat) : Nat
+      | zero, b => zero
+      | suc a, b => b + (a * b)
+    def #2 : Nat => suc (suc zero)
+    def #4 : Nat => #2 * #2
+    def #16 : Nat => #4 * #4
+    def #256 : Nat => #16 * #16
+    """;
+
+  /** Implicit arguments and indexed families, most of the time is spent in unification */
+  @Language("Aya") static final @NotNull String VEC = """
+    open data Nat | zero | suc Nat
+    def overlap infixl + (a b : Nat) : Nat
+      | zero, b => b
+      | a, zero => a
+      | suc a, b => suc (a + b)
+      | a, suc b => suc (a + b)
+    open data Vec (A : Type) (n : Nat) : Type
+      | A, zero => vnil
+      | A, suc m => infixr :> A (Vec A m)
+    variable A B : Type
+    variable n m : Nat
+    def vmap (f : A -> B) (xs : Vec A n) : Vec B n
+      | f, vnil => vnil
+      | f, x :> xs => f x :> vmap f xs
+    def overlap infixr ++ (xs : Vec A n) (ys : Vec A m) : Vec A (n + m)
+      | vnil, ys => ys
+      | xs, vnil => xs
+      | x :> xs, ys => x :> (xs ++ ys)
+    def replicate (len : Nat) (x : A) : Vec A len
+      | zero, x => vnil
+      | suc len, x => x :> replicate len x
+    """;
+
+  static @NotNull String vecUsages(int count) {
+    var builder = new StringBuilder(VEC);
+    for (int i = 0; i < count; i++) builder.append("""
+      def use%d (x : Nat) : Vec Nat 12 =>
+        vmap (\\ y => y + x) (replicate 4 x ++ replicate 4 (suc x) ++ replicate 4 zero)
+      """.formatted(i));
+    return builder.toString();
+  }
+
+  /** Mutually recursive functions, all calls decrease on the first argument */
+  static @NotNull String mutualRecursion(int count) {
+    var builder = new StringBuilder("open data Nat | zero | suc Nat\n");
+    for (int i = 0; i < count; i++) builder.append("""
+      def f%d (a b : Nat) : Nat
+        | zero, b => b
+        | suc a, b => f%d a (f%d a (suc b))
+      """.formatted(i, (i + 1) % count, (i + 2) % count));
+    return builder.toString();
+  }
+
+  static @NotNull ImmutableSeq<Stmt> parse(@NotNull String code) {
+    return new AyaParserImpl(ThrowingReporter.INSTANCE).program(new SourceFile(SOURCE.toString(), Option.none(), code));
+  }
+
+  static @NotNull PhysicalModuleContext context() {
+    return new EmptyContext(ThrowingReporter.INSTANCE, SOURCE).derive("Bench");
+  }
+
+  static @NotNull ModuleListLoader loader() {
+    return new ModuleListLoader(ThrowingReporter.INSTANCE, ImmutableSeq.empty());
+  }
+
+  static @NotNull Tycked tyck(@NotNull String code) {
+    var primFactory = new PrimDef.Factory();
+    var tycked = MutableValue.<ImmutableSeq<GenericDef>>create();
+    var resolveInfo = loader().<RuntimeException>tyckModule(primFactory, context(), parse(code), null,
+      (info, defs) -> tycked.set(defs));
+    return new Tycked(primFactory, resolveInfo, tycked.get());
+  }
+
+  record Tycked(
+    @NotNull PrimDef.Factory primFactory,
+    @NotNull ResolveInfo resolveInfo,
+    @NotNull ImmutableSeq<GenericDef> defs
+  ) {
+    @NotNull FnDef fn(@NotNull String name) {
+      return defs.view()
+        .filterIsInstance(FnDef.class)
+        .first(def -> def.ref.name().equals(name));
+    }
+  }
+}
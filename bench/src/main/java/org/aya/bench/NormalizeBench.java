@@ -0,0 +1,48 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.bench;
+
+import org.aya.core.def.PrimDef;
+import org.aya.core.term.Term;
+import org.aya.generic.util.NormalizeMode;
+import org.aya.tyck.TyckState;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Normalizing Church and unary numerals, each invocation uses a fresh {@link TyckState}
+ * so nothing is cached across invocations.
+ *
+ * @see org.aya.core.term.Term#normalize(TyckState, NormalizeMode)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class NormalizeBench {
+  @Param({"NF", "WHNF", "NBE"}) public NormalizeMode mode;
+  private PrimDef.Factory churchPrims;
+  private Term church;
+  private PrimDef.Factory unaryPrims;
+  private Term unary;
+
+  @Setup public void setup() {
+    var tycked = BenchUtil.tyck(BenchUtil.CHURCH);
+    churchPrims = tycked.primFactory();
+    church = tycked.fn("#256").body().getLeftValue();
+    tycked = BenchUtil.tyck(BenchUtil.UNARY);
+    unaryPrims = tycked.primFactory();
+    unary = tycked.fn("#256").body().getLeftValue();
+  }
+
+  @Benchmark public Term church() {
+    return church.normalize(new TyckState(churchPrims), mode);
+  }
+
+  @Benchmark public Term unary() {
+    return unary.normalize(new TyckState(unaryPrims), mode);
+  }
+}
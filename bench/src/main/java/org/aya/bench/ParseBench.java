@@ -0,0 +1,47 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.bench;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.concrete.stmt.Stmt;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** @see org.aya.cli.parse.AyaParserImpl#program */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class ParseBench {
+  /** Each block is about 15 lines */
+  @Param({"100", "1000"}) public int blocks;
+  private String code;
+
+  @Setup public void setup() {
+    var builder = new StringBuilder();
+    for (int i = 0; i < blocks; i++) builder.append("""
+      open data Nat%1$d | zero | suc Nat%1$d
+      def overlap add%1$d (a b : Nat%1$d) : Nat%1$d
+        | zero, b => b
+        | a, zero => a
+        | suc a, b => suc (add%1$d a b)
+      def church%1$d : Pi (A : Type) -> (A -> A) -> A -> A => \\ A f x => f (f (f x))
+      struct Pair%1$d (A B : Type) : Type
+        | fst : A
+        | snd : B
+      def swap%1$d {A B : Type} (p : Pair%1$d A B) : Pair%1$d B A => new Pair%1$d B A {
+        | fst => p.snd
+        | snd => p.fst
+      }
+      def tuple%1$d (A : Type) (a : A) : Sig A ** A => (a, a)
+      """.formatted(i));
+    code = builder.toString();
+  }
+
+  @Benchmark public ImmutableSeq<Stmt> program() {
+    return BenchUtil.parse(code);
+  }
+}
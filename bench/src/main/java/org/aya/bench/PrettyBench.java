@@ -0,0 +1,42 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.bench;
+
+import org.aya.generic.util.NormalizeMode;
+import org.aya.pretty.doc.Doc;
+import org.aya.tyck.TyckState;
+import org.aya.util.distill.DistillerOptions;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering the normal form of a large Church numeral to a string.
+ *
+ * @see org.aya.pretty.backend.string.StringPrinter
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class PrettyBench {
+  private Doc doc;
+
+  @Setup public void setup() {
+    var tycked = BenchUtil.tyck(BenchUtil.CHURCH);
+    var nf = tycked.fn("#256").body().getLeftValue().normalize(new TyckState(tycked.primFactory()), NormalizeMode.NF);
+    doc = nf.toDoc(DistillerOptions.informative());
+  }
+
+  /** Infinite width, no line breaking */
+  @Benchmark public String debugRender() {
+    return doc.debugRender();
+  }
+
+  /** 80 columns, with line breaking */
+  @Benchmark public String commonRender() {
+    return doc.commonRender();
+  }
+}
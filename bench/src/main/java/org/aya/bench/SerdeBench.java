@@ -0,0 +1,47 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.bench;
+
+import org.aya.core.def.PrimDef;
+import org.aya.core.serde.AyacFormat;
+import org.aya.core.serde.CompiledAya;
+import org.aya.core.serde.SerTerm;
+import org.aya.core.serde.Serializer;
+import org.aya.resolve.ResolveInfo;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and loading the compiled core of a module, the way .ayac files are written and read.
+ *
+ * @see org.aya.cli.utils.AyaCompiler#saveCompiledCore
+ * @see org.aya.cli.library.incremental.DiskCompilerAdvisor#doLoadCompiledCore
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class SerdeBench {
+  @Param({"50"}) public int decls;
+  private BenchUtil.Tycked tycked;
+  private byte[] compiled;
+
+  @Setup public void setup() throws IOException {
+    tycked = BenchUtil.tyck(BenchUtil.vecUsages(decls));
+    compiled = save();
+  }
+
+  @Benchmark public byte[] save() {
+    return AyacFormat.toBytes(CompiledAya.from(tycked.resolveInfo(), tycked.defs(), new Serializer.State()));
+  }
+
+  @Benchmark public ResolveInfo load() throws IOException {
+    return AyacFormat.read(ByteBuffer.wrap(compiled)).toResolveInfo(BenchUtil.loader(), BenchUtil.context(),
+      new SerTerm.DeState(new PrimDef.Factory()));
+  }
+}
@@ -0,0 +1,44 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.bench;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableSet;
+import org.aya.core.def.Def;
+import org.aya.core.def.FnDef;
+import org.aya.core.term.Term;
+import org.aya.terck.CallGraph;
+import org.aya.terck.CallResolver;
+import org.aya.terck.Diagonal;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Termination checking a clique of mutually recursive functions,
+ * the call graph is built the same way as {@link org.aya.tyck.order.AyaSccTycker} does.
+ *
+ * @see CallGraph#findBadRecursion()
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class TerckBench {
+  @Param({"4", "16"}) public int fns;
+  private CallGraph<Def, Term.Param> graph;
+
+  @Setup public void setup() {
+    var tycked = BenchUtil.tyck(BenchUtil.mutualRecursion(fns));
+    var defs = tycked.defs().filterIsInstance(FnDef.class);
+    var targets = MutableSet.<Def>from(defs);
+    graph = CallGraph.create();
+    defs.forEach(def -> new CallResolver(tycked.primFactory(), def, targets, graph).accept(def));
+  }
+
+  @Benchmark public ImmutableSeq<Diagonal<Def, Term.Param>> findBadRecursion() {
+    return graph.findBadRecursion();
+  }
+}
@@ -0,0 +1,64 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.bench;
+
+import org.aya.core.term.*;
+import org.aya.core.visitor.TermConsumer;
+import org.aya.ref.LocalVar;
+import org.aya.util.Arg;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Traversing a large term without normalizing it.
+ * Only uses what the recursive traversals had, so it also runs on the revisions before the traversals were made
+ * stack-safe, and the terms are shallow enough for them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class TraversalBench {
+  @Param({"64", "512"}) public int depth;
+  private final LocalVar f = new LocalVar("f");
+  private final LocalVar x = new LocalVar("x");
+  private final LocalVar absent = new LocalVar("absent");
+  private Term term;
+
+  @Setup public void setup() {
+    term = new RefTerm(x);
+    for (int i = 0; i < depth; i++) {
+      var app = new AppTerm(new AppTerm(new RefTerm(f), new Arg<>(term, true)), new Arg<>(new RefTerm(x), true));
+      term = new LamTerm(new Term.Param(new LocalVar("y" + i), SortTerm.Type0, true), app);
+    }
+  }
+
+  @Benchmark public Term subst() {
+    return term.subst(x, SortTerm.Type0);
+  }
+
+  @Benchmark public Term substAbsent() {
+    return term.subst(absent, SortTerm.Type0);
+  }
+
+  @Benchmark public Term lift() {
+    return term.lift(1);
+  }
+
+  @Benchmark public int findUsages() {
+    return term.findUsages(x);
+  }
+
+  @Benchmark public int consume() {
+    var count = new int[]{0};
+    new TermConsumer() {
+      @Override public void pre(Term term) {
+        count[0]++;
+      }
+    }.accept(term);
+    return count[0];
+  }
+}
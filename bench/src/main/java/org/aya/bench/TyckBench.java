@@ -0,0 +1,41 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.bench;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.concrete.stmt.Stmt;
+import org.aya.core.def.PrimDef;
+import org.aya.resolve.ResolveInfo;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolving and type checking declarations with implicit arguments and indexed families,
+ * dominated by unification. Parsing is excluded, but the concrete syntax is mutated by resolving,
+ * so the program is parsed again before each invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class TyckBench {
+  @Param({"10", "50"}) public int decls;
+  private String code;
+  private ImmutableSeq<Stmt> program;
+
+  @Setup public void setup() {
+    code = BenchUtil.vecUsages(decls);
+  }
+
+  @Setup(Level.Invocation) public void parse() {
+    program = BenchUtil.parse(code);
+  }
+
+  @Benchmark public ResolveInfo tyck() {
+    return BenchUtil.loader().<RuntimeException>tyckModule(new PrimDef.Factory(),
+      BenchUtil.context(), program, null, null);
+  }
+}
@@ -13,8 +13,11 @@ import org.aya.cli.single.CompilerFlags;
 import org.aya.cli.single.SingleFileCompiler;
 import org.aya.cli.utils.MainArgs;
 import org.aya.core.def.PrimDef;
+import org.aya.generic.util.AyaHome;
 import org.aya.pretty.printer.PrinterConfig;
+import org.aya.tyck.TyckState;
 import org.aya.tyck.trace.MarkdownTrace;
+import org.aya.tyck.trace.Profiler;
 import org.aya.tyck.trace.Trace;
 import org.jetbrains.annotations.NotNull;
 import picocli.CommandLine;
@@ -24,6 +27,9 @@ import java.nio.file.Paths;
 import java.util.concurrent.Callable;
 
 public class Main extends MainArgs implements Callable<Integer> {
+  /** How many entries of each table are shown in a text profiling report */
+  private static final int PROFILE_LIMIT = 30;
+
   public static void main(String... args) {
     System.exit(new CommandLine(new Main()).execute(args));
   }
@@ -70,19 +76,31 @@ public class Main extends MainArgs implements Callable<Integer> {
     var flags = new CompilerFlags(message, interruptedTrace,
       compile.isRemake, distillation,
       modulePaths().view().map(Paths::get),
-      outputPath);
+      outputPath, Math.max(1, compile.jobs));
 
-    if (compile.isLibrary || compile.isRemake || compile.isNoCode) {
-      // TODO: move to a new tool
-      var advisor = compile.isNoCode ? CompilerAdvisor.inMemory() : CompilerAdvisor.onDisk();
-      return LibraryCompiler.compile(new PrimDef.Factory(), reporter, flags, advisor, filePath);
+    if (profile != null) Profiler.start();
+    if (internTerms) TyckState.internTerms(true);
+    try {
+      if (compile.isLibrary || compile.isRemake || compile.isNoCode) {
+        // TODO: move to a new tool
+        var advisor = compile.isNoCode ? CompilerAdvisor.inMemory()
+          : compile.isBuildCache ? CompilerAdvisor.buildCache(AyaHome.ayaHome().resolve("cache"))
+          : CompilerAdvisor.onDisk();
+        return LibraryCompiler.compile(new PrimDef.Factory(), reporter, flags, advisor, filePath);
+      }
+      var traceBuilder = enableTrace ? new Trace.Builder() : null;
+      var compiler = new SingleFileCompiler(reporter, null, traceBuilder);
+      var status = compiler.compile(filePath, flags, null);
+      if (traceBuilder != null)
+        System.err.println(new MarkdownTrace(2, distillOptions, asciiOnly)
+          .docify(traceBuilder).renderWithPageWidth(PrinterConfig.INFINITE_SIZE, !asciiOnly));
+      return status;
+    } finally {
+      var profiler = Profiler.stop();
+      if (profiler != null) System.err.println(switch (profile) {
+        case text -> profiler.report().toText(PROFILE_LIMIT);
+        case json -> profiler.report().toJson();
+      });
     }
-    var traceBuilder = enableTrace ? new Trace.Builder() : null;
-    var compiler = new SingleFileCompiler(reporter, null, traceBuilder);
-    var status = compiler.compile(filePath, flags, null);
-    if (traceBuilder != null)
-      System.err.println(new MarkdownTrace(2, distillOptions, asciiOnly)
-        .docify(traceBuilder).renderWithPageWidth(PrinterConfig.INFINITE_SIZE, !asciiOnly));
-    return status;
   }
 }
@@ -3,6 +3,8 @@
 package org.aya.cli.library;
 
 import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableMap;
 import kala.collection.mutable.MutableSet;
 import org.aya.cli.library.incremental.CompilerAdvisor;
 import org.aya.cli.library.json.LibraryConfigData;
@@ -22,8 +24,11 @@ import org.aya.resolve.context.Context;
 import org.aya.resolve.error.NameProblem;
 import org.aya.resolve.module.CachedModuleLoader;
 import org.aya.resolve.module.ModuleLoader;
+import org.aya.tyck.trace.Profiler;
 import org.aya.util.StringUtil;
 import org.aya.util.reporter.CountingReporter;
+import org.aya.util.reporter.DelayedReporter;
+import org.aya.util.reporter.Problem;
 import org.aya.util.reporter.Reporter;
 import org.aya.util.terck.MutableGraph;
 import org.aya.util.tyck.OrgaTycker;
@@ -32,8 +37,18 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 /**
  * @author kiva
@@ -44,11 +59,24 @@ public class LibraryCompiler {
   private final @NotNull CountingReporter reporter;
   private final @NotNull CompilerFlags flags;
   private final @NotNull CompilerAdvisor advisor;
+  /** The reporter of the modules, which is {@link #reporter} unless they are compiled in parallel */
+  private final @NotNull ModuleReporter moduleReporter;
+  /**
+   * Time spent on each module in nanoseconds, including loading its imports that are not loaded yet.
+   * Only recorded with <code>--profile</code>, it differs from run to run.
+   */
+  private final @NotNull Map<LibrarySource, Long> timings = new ConcurrentHashMap<>();
+  /**
+   * The modified modules, and the modules compiled again whose interface changed.
+   * The affected modules importing none of them are not compiled again, see {@link CompilerAdvisor#interfaceHash}.
+   */
+  private final @NotNull Set<LibrarySource> changed = ConcurrentHashMap.newKeySet();
 
   private LibraryCompiler(@NotNull Reporter reporter, @NotNull CompilerFlags flags, @NotNull LibraryOwner owner, @NotNull CompilerAdvisor advisor, @NotNull LibraryModuleLoader.United states) {
     var counting = CountingReporter.delegate(reporter);
     this.advisor = advisor;
-    this.moduleLoader = new CachedModuleLoader<>(new LibraryModuleLoader(counting, owner, advisor, states));
+    this.moduleReporter = new ModuleReporter(counting);
+    this.moduleLoader = new CachedModuleLoader<>(new LibraryModuleLoader(moduleReporter, owner, advisor, states));
     this.reporter = counting;
     this.flags = flags;
     this.owner = owner;
@@ -105,8 +133,8 @@ public class LibraryCompiler {
 
   /**
    * Traverse the source file's import statements and build its dependency graph.
-   * The graph is used to generate incremental build list according to files'
-   * last modified time.
+   * The graph is used to generate incremental build list according to the hashes of
+   * the files' contents and interfaces.
    */
   private void resolveImportsIfNeeded(@NotNull LibrarySource source) throws IOException {
     if (parseIfNeeded(source)) return; // already resolved
@@ -193,6 +221,8 @@ public class LibraryCompiler {
     modified.forEach(this::clearModified);
     var depGraph = resolveImports();
     var affected = collectAffected(modified, depGraph);
+    changed.clear();
+    modified.forEach(changed::add);
     var SCCs = affected.topologicalOrder().view()
       .reversed().toImmutableSeq();
     // ^ top order generated from usage graph should be reversed.
@@ -208,11 +238,11 @@ public class LibraryCompiler {
     advisor.prepareLibraryOutput(owner);
     advisor.notifyIncrementalJob(modified, SCCs);
 
-    var tycker = new LibraryOrgaTycker(new LibrarySccTycker(reporter, moduleLoader, advisor), affected);
-    SCCs.forEachChecked(tycker::tyckSCC);
-    if (tycker.skippedSet.isNotEmpty()) {
+    var skipped = tyckAll(SCCs, affected);
+    reportTimings();
+    if (skipped.isNotEmpty()) {
       reporter.reportString("I dislike the following module(s):");
-      tycker.skippedSet.forEach(f ->
+      skipped.forEach(f ->
         reportNest(String.format("%s (%s)", QualifiedID.join(f.moduleName()), f.displayPath())));
       // Stop the whole compilation in case downstream libraries depend on skipped modules.
       throw new LibraryTyckingFailed();
@@ -222,6 +252,36 @@ public class LibraryCompiler {
     return false;
   }
 
+  /** @return the modules that failed or are skipped */
+  private @NotNull ImmutableSeq<LibrarySource> tyckAll(
+    @NotNull ImmutableSeq<ImmutableSeq<LibrarySource>> SCCs,
+    @NotNull MutableGraph<LibrarySource> usageGraph
+  ) throws IOException {
+    // the modules check their SCCs on the same pool, even if there is only one module to compile
+    if (flags.jobs() > 1) {
+      var tycker = new LibraryParallelTycker(SCCs, usageGraph);
+      tycker.tyckAll(flags.jobs());
+      // in the topological order, like the sequential one
+      return SCCs.flatMap(scc -> scc.filter(tycker.skippedSet::contains));
+    }
+    var tycker = new LibraryOrgaTycker(new LibrarySccTycker(reporter, moduleLoader, advisor, timings, changed), usageGraph);
+    SCCs.forEachChecked(tycker::tyckSCC);
+    return tycker.skippedSet.toImmutableSeq();
+  }
+
+  private void reportTimings() {
+    if (timings.isEmpty()) return;
+    reportNest("[Info] Time spent on each module");
+    ImmutableSeq.from(timings.entrySet())
+      .sorted(Comparator.<Map.Entry<LibrarySource, Long>>comparingLong(Map.Entry::getValue).reversed()
+        .thenComparing(e -> e.getKey().displayPath()))
+      .forEach(e -> reporter.reportNest("%s (%s)".formatted(
+        QualifiedID.join(e.getKey().moduleName()),
+        StringUtil.timeToString(TimeUnit.NANOSECONDS.toMillis(e.getValue()))
+      ), LibraryOwner.DEFAULT_INDENT + 2));
+    timings.clear();
+  }
+
   private void reparseAffected(@NotNull LibrarySource src) throws IOException {
     if (src.tycked().get() == null) return;
     src.tycked().set(null);
@@ -301,31 +361,216 @@ public class LibraryCompiler {
   record LibrarySccTycker(
     @NotNull CountingReporter reporter,
     @NotNull ModuleLoader moduleLoader,
-    @NotNull CompilerAdvisor advisor
+    @NotNull CompilerAdvisor advisor,
+    @NotNull Map<LibrarySource, Long> timings,
+    @NotNull Set<LibrarySource> changed
   ) implements SCCTycker<LibrarySource, IOException> {
     @Override
     public @NotNull ImmutableSeq<LibrarySource> tyckSCC(@NotNull ImmutableSeq<LibrarySource> order) throws IOException {
-      for (var f : order) advisor.clearModuleOutput(f);
+      // early cutoff: what these modules see from their imports is the same, keep the compiled cores
+      if (order.noneMatch(f -> changed.contains(f) || f.imports().anyMatch(changed::contains))) {
+        order.forEach(f -> reporter.reportNest("[Unchanged] %s (%s)".formatted(
+          QualifiedID.join(f.moduleName()), f.displayPath()), LibraryOwner.DEFAULT_INDENT));
+        return ImmutableSeq.empty();
+      }
+      var hashes = order.map(advisor::interfaceHash);
       for (var f : order) {
-        tyckOne(f);
+        f.previous().set(advisor.loadPreviousCore(f));
+        advisor.clearModuleOutput(f);
+      }
+      for (int i = 0; i < order.size(); i++) {
+        var f = order.get(i);
+        var restored = advisor.restoreCompiledCore(f);
+        if (restored) f.previous().set(null);
+        tyckOne(f, restored);
         if (reporter.anyError()) {
           reporter.clear();
           return ImmutableSeq.of(f);
         }
+        var hash = advisor.interfaceHash(f);
+        if (hash == 0 || hash != hashes.get(i)) changed.add(f);
       }
       return ImmutableSeq.empty();
     }
 
-    private void tyckOne(@NotNull LibrarySource file) {
+    private void tyckOne(@NotNull LibrarySource file, boolean restored) {
       var moduleName = file.moduleName();
-      reporter.reportNest("[Tyck] %s (%s)".formatted(
+      reporter.reportNest("[%s] %s (%s)".formatted(restored ? "Cached" : "Tyck",
         QualifiedID.join(moduleName), file.displayPath()), LibraryOwner.DEFAULT_INDENT);
+      var startTime = System.nanoTime();
       var mod = moduleLoader.load(moduleName);
+      if (Profiler.current() != null) timings.put(file, System.nanoTime() - startTime);
       if (mod == null || file.resolveInfo().get() == null)
         throw new InternalException("Unable to load module: " + moduleName);
     }
   }
 
+  /**
+   * Reports to the reporter of the module being compiled on the current thread,
+   * so that the problems of the modules compiled in parallel are not mixed up.
+   */
+  record ModuleReporter(
+    @NotNull CountingReporter fallback,
+    @NotNull ThreadLocal<CountingReporter> current
+  ) implements CountingReporter {
+    ModuleReporter(@NotNull CountingReporter fallback) {
+      this(fallback, new ThreadLocal<>());
+    }
+
+    private @NotNull CountingReporter get() {
+      var reporter = current.get();
+      return reporter == null ? fallback : reporter;
+    }
+
+    @Override public int problemSize(@NotNull Problem.Severity severity) {
+      return get().problemSize(severity);
+    }
+
+    @Override public void clear() {
+      get().clear();
+    }
+
+    @Override public void report(@NotNull Problem problem) {
+      get().report(problem);
+    }
+  }
+
+  /**
+   * Compiles the SCCs of the import graph on a pool of threads,
+   * each one as soon as the SCCs it imports are compiled.
+   * Failures are propagated to the usages like {@link LibraryOrgaTycker}.
+   * The problems of an SCC are reported once all SCCs before it in the topological order are done,
+   * so the output is the same as the sequential one.
+   * The SCCs of definitions in a module are checked on the same pool, see {@link ModuleLoader#tyckModule}.
+   * <p>
+   * A worker waiting for the definitions of a module may compile another module meanwhile,
+   * on top of the stack of the first one. Each module is compiled once,
+   * so the modules nested on a thread are at most the ones in the library.
+   * The reporter of the outer module is restored when the inner one is done.
+   */
+  final class LibraryParallelTycker {
+    private final @NotNull ImmutableSeq<ImmutableSeq<LibrarySource>> SCCs;
+    private final @NotNull MutableGraph<LibrarySource> usageGraph;
+    private final @NotNull Set<LibrarySource> skippedSet = ConcurrentHashMap.newKeySet();
+    private final @NotNull ImmutableSeq<DelayedReporter> reporters;
+    private final @NotNull ImmutableSeq<ImmutableSeq<Integer>> dependents;
+    private final @NotNull AtomicIntegerArray pending;
+    /** Counted down when an SCC is done, compiled or skipped */
+    private final @NotNull CountDownLatch remaining;
+    /** Guarded by this */
+    private final boolean @NotNull [] done, failed;
+    /** Guarded by this, the number of SCCs whose problems are reported */
+    private int reported = 0;
+    private volatile @Nullable Throwable failure;
+
+    LibraryParallelTycker(
+      @NotNull ImmutableSeq<ImmutableSeq<LibrarySource>> SCCs,
+      @NotNull MutableGraph<LibrarySource> usageGraph
+    ) {
+      this.SCCs = SCCs;
+      this.usageGraph = usageGraph;
+      this.reporters = SCCs.map(scc -> new DelayedReporter(reporter));
+      this.done = new boolean[SCCs.size()];
+      this.failed = new boolean[SCCs.size()];
+      var index = MutableMap.<LibrarySource, Integer>create();
+      SCCs.forEachIndexed((i, scc) -> scc.forEach(src -> index.put(src, i)));
+      var dependents = SCCs.map(scc -> MutableSet.<Integer>create());
+      this.pending = new AtomicIntegerArray(SCCs.size());
+      this.remaining = new CountDownLatch(SCCs.size());
+      // (v, w) in the usage graph means w imports v
+      SCCs.forEachIndexed((j, scc) -> scc.forEach(src -> usageGraph.suc(src).forEach(user -> {
+        var i = index.getOrNull(user);
+        if (i != null && i != j && dependents.get(j).add(i)) pending.incrementAndGet(i);
+      })));
+      this.dependents = dependents.map(MutableSet::toImmutableSeq);
+    }
+
+    void tyckAll(int jobs) throws IOException {
+      AyaCompiler.withJobs(jobs, () -> {
+        try {
+          // collect the roots first, they may be forked again by the tasks otherwise
+          var roots = MutableList.<Integer>create();
+          for (int i = 0; i < SCCs.size(); i++) if (pending.get(i) == 0) roots.append(i);
+          roots.forEach(this::fork);
+          // the pool makes up for this worker while it waits
+          ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            @Override public boolean block() throws InterruptedException {
+              remaining.await();
+              return true;
+            }
+
+            @Override public boolean isReleasable() {
+              return remaining.getCount() == 0;
+            }
+          });
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        } finally {
+          synchronized (this) {
+            while (reported < SCCs.size()) report(reported++);
+          }
+        }
+      });
+      var thrown = failure;
+      if (thrown instanceof IOException e) throw e;
+      if (thrown instanceof RuntimeException e) throw e;
+      if (thrown instanceof Error e) throw e;
+      if (thrown != null) throw new IllegalStateException(thrown);
+    }
+
+    private void fork(int i) {
+      ForkJoinTask.adapt(() -> tyckSCC(i)).fork();
+    }
+
+    private void tyckSCC(int i) {
+      var counting = CountingReporter.delegate(reporters.get(i));
+      // another module may be compiled on this thread while it waits for the checks in parallel
+      var outer = moduleReporter.current().get();
+      moduleReporter.current().set(counting);
+      try {
+        // like OrgaTycker, we stop compiling after an unexpected exception
+        if (failure == null) {
+          var sccTycker = new LibrarySccTycker(counting, moduleLoader, advisor, timings, changed);
+          var failures = sccTycker.tyckSCC(SCCs.get(i).filterNot(skippedSet::contains));
+          failures.forEach(this::skip);
+          if (failures.isNotEmpty()) synchronized (this) {
+            failed[i] = true;
+          }
+        }
+      } catch (Throwable e) {
+        synchronized (this) {
+          if (failure == null) failure = e;
+        }
+      } finally {
+        if (outer == null) moduleReporter.current().remove();
+        else moduleReporter.current().set(outer);
+        finish(i);
+        // the usages of the failed modules are skipped before they are forked
+        dependents.get(i).forEach(j -> {
+          if (pending.decrementAndGet(j) == 0) fork(j);
+        });
+        remaining.countDown();
+      }
+    }
+
+    private synchronized void finish(int i) {
+      done[i] = true;
+      while (reported < SCCs.size() && done[reported]) report(reported++);
+    }
+
+    private void report(int i) {
+      reporters.get(i).reportNow();
+      // like LibrarySccTycker, which clears the reporter after a failure
+      if (failed[i]) reporter.clear();
+    }
+
+    private void skip(@NotNull LibrarySource failed) {
+      if (!skippedSet.add(failed)) return;
+      usageGraph.suc(failed).forEach(this::skip);
+    }
+  }
+
   public static class LibraryTyckingFailed extends InterruptException {
     @Override public InterruptStage stage() {
       return InterruptStage.Tycking;
@@ -8,6 +8,7 @@ import org.aya.cli.library.source.LibraryOwner;
 import org.aya.cli.library.source.LibrarySource;
 import org.aya.core.def.GenericDef;
 import org.aya.core.def.PrimDef;
+import org.aya.core.serde.CompiledAya;
 import org.aya.core.serde.SerTerm;
 import org.aya.core.serde.Serializer;
 import org.aya.generic.util.AyaFiles;
@@ -15,6 +16,7 @@ import org.aya.resolve.ResolveInfo;
 import org.aya.resolve.context.EmptyContext;
 import org.aya.resolve.module.FileModuleLoader;
 import org.aya.resolve.module.ModuleLoader;
+import org.aya.tyck.order.DeclFingerprint;
 import org.aya.util.reporter.CountingReporter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -76,6 +78,14 @@ record LibraryModuleLoader(
     var context = new EmptyContext(reporter(), sourcePath).derive(mod);
     var resolveInfo = resolveModule(states.primFactory, context, program, recurseLoader);
     source.resolveInfo().set(resolveInfo);
+    // reuse the definitions that did not change since the previous build
+    DeclFingerprint.fingerprint(resolveInfo);
+    CompiledAya.register(resolveInfo, states.de);
+    var previous = source.previous().get();
+    if (previous != null) {
+      source.previous().set(null);
+      previous.reuse(resolveInfo, states.de);
+    }
     return tyckModule(null, resolveInfo, (moduleResolve, defs) -> {
       source.tycked().set(defs);
       if (reporter().noError()) saveCompiledCore(source, moduleResolve, defs);
@@ -94,12 +104,13 @@ record LibraryModuleLoader(
     @NotNull ResolveInfo resolveInfo,
     @NotNull ImmutableSeq<GenericDef> defs
   ) {
-    advisor.saveCompiledCore(states.ser, file, resolveInfo, defs);
+    // numbered per module, so the compiled core does not depend on the other modules saved in parallel
+    advisor.saveCompiledCore(new Serializer.State(), file, resolveInfo, defs);
   }
 
-  record United(@NotNull SerTerm.DeState de, @NotNull Serializer.State ser, @NotNull PrimDef.Factory primFactory) {
+  record United(@NotNull SerTerm.DeState de, @NotNull PrimDef.Factory primFactory) {
     public United(@NotNull PrimDef.Factory primFactory) {
-      this(new SerTerm.DeState(primFactory), new Serializer.State(), primFactory);
+      this(new SerTerm.DeState(primFactory), primFactory);
     }
   }
 }
@@ -0,0 +1,142 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.cli.library.incremental;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.cli.library.source.LibrarySource;
+import org.aya.concrete.stmt.QualifiedID;
+import org.aya.core.def.GenericDef;
+import org.aya.core.serde.AyacFormat;
+import org.aya.core.serde.Serializer;
+import org.aya.generic.Constants;
+import org.aya.resolve.ResolveInfo;
+import org.aya.util.Arg;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+
+/**
+ * Keeps a copy of every compiled core in a directory shared by the libraries on this machine,
+ * addressed by the hash of everything the compiled core depends on:
+ * the source, the module name, the compiler, and the interfaces of the imports,
+ * see {@link AyacFormat.Stamp#interfaceHash()}.
+ * The compiler is identified by the hash of its classes, not by the commit it is built from,
+ * so that builds with uncommitted changes do not share the entries. If the classes cannot be read, nothing is cached.
+ * A module compiled before, in another checkout, branch or library, is copied from the cache instead of compiled.
+ * <p>
+ * Entries are written atomically and never modified, so the cache can be shared by concurrent builds.
+ * Nothing is evicted, the directory can be deleted at any time.
+ */
+public class CacheCompilerAdvisor extends DiskCompilerAdvisor {
+  private final @NotNull Path cacheDir;
+
+  public CacheCompilerAdvisor(@NotNull Path cacheDir) {
+    this.cacheDir = cacheDir;
+  }
+
+  /** Computed once, when the cache is first used */
+  private static final class Compiler {
+    /** The classes of the modules that affect the compiled core */
+    private static final @NotNull ImmutableSeq<Class<?>> CLASSES =
+      ImmutableSeq.of(CacheCompilerAdvisor.class, AyacFormat.class, Arg.class);
+    private static final @Nullable String HASH = hash();
+
+    /** @return the hash of the jars or class directories of {@link #CLASSES}, null if some of them cannot be read */
+    private static @Nullable String hash() {
+      try {
+        var digest = sha256();
+        var locations = new LinkedHashSet<Path>();
+        for (var clazz : CLASSES) {
+          var source = clazz.getProtectionDomain().getCodeSource();
+          if (source == null) return null;
+          locations.add(Path.of(source.getLocation().toURI()));
+        }
+        for (var location : locations) {
+          if (Files.isRegularFile(location)) {
+            digest.update(Files.readAllBytes(location));
+            continue;
+          }
+          if (!Files.isDirectory(location)) return null;
+          try (var walk = Files.walk(location)) {
+            for (var file : walk.filter(Files::isRegularFile).sorted().toList()) {
+              digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+              digest.update(Files.readAllBytes(file));
+            }
+          }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+      } catch (IOException | URISyntaxException | RuntimeException e) {
+        // e.g. the classes are not loaded from a file system
+        return null;
+      }
+    }
+  }
+
+  private static @NotNull MessageDigest sha256() throws IOException {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /** @return the path of the compiled core in the cache, null if the compiler or the interfaces of the imports are unknown */
+  private @Nullable Path cachePath(@NotNull LibrarySource source) throws IOException {
+    var compiler = Compiler.HASH;
+    if (compiler == null) return null;
+    var importsHash = importsHash(source);
+    if (importsHash == 0) return null;
+    var digest = sha256();
+    var key = String.join("\n", compiler, String.valueOf(AyacFormat.VERSION),
+      QualifiedID.join(source.moduleName()), Long.toHexString(importsHash), "");
+    digest.update(key.getBytes(StandardCharsets.UTF_8));
+    digest.update(Files.readAllBytes(source.file()));
+    var hex = HexFormat.of().formatHex(digest.digest());
+    return cacheDir.resolve(hex.substring(0, 2)).resolve(hex.substring(2) + Constants.AYAC_POSTFIX);
+  }
+
+  @Override public boolean restoreCompiledCore(@NotNull LibrarySource source) {
+    try {
+      var cached = cachePath(source);
+      if (cached == null || !Files.exists(cached)) return false;
+      copy(cached, source.compiledCorePath());
+      return true;
+    } catch (IOException ignored) {
+      // compile it instead
+      return false;
+    }
+  }
+
+  @Override public void doSaveCompiledCore(
+    @NotNull Serializer.State serState,
+    @NotNull LibrarySource file,
+    @NotNull ResolveInfo resolveInfo,
+    @NotNull ImmutableSeq<GenericDef> defs
+  ) throws IOException {
+    super.doSaveCompiledCore(serState, file, resolveInfo, defs);
+    var cached = cachePath(file);
+    if (cached != null && !Files.exists(cached)) copy(file.compiledCorePath(), cached);
+  }
+
+  private static void copy(@NotNull Path from, @NotNull Path to) throws IOException {
+    var dir = Files.createDirectories(to.toAbsolutePath().getParent());
+    // unique, other builds may be writing the same entry
+    var temp = Files.createTempFile(dir, to.getFileName().toString(), ".tmp");
+    try {
+      Files.copy(from, temp, StandardCopyOption.REPLACE_EXISTING);
+      Files.move(temp, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+}
@@ -8,6 +8,7 @@ import org.aya.cli.library.source.LibrarySource;
 import org.aya.cli.parse.AyaParserImpl;
 import org.aya.concrete.GenericAyaParser;
 import org.aya.core.def.GenericDef;
+import org.aya.core.serde.CompiledAya;
 import org.aya.core.serde.SerTerm;
 import org.aya.core.serde.Serializer;
 import org.aya.generic.util.InternalException;
@@ -35,10 +36,34 @@ public interface CompilerAdvisor {
   static @NotNull CompilerAdvisor inMemory() {
     return new InMemoryCompilerAdvisor();
   }
+  static @NotNull CompilerAdvisor buildCache(@NotNull Path cacheDir) {
+    return new CacheCompilerAdvisor(cacheDir);
+  }
 
   boolean isSourceModified(@NotNull LibrarySource source);
   void updateLastModified(@NotNull LibrarySource source);
 
+  /**
+   * The modules importing a module that is compiled again are only compiled again
+   * if the interface hash of the module changed, or is unknown.
+   *
+   * @return the interface hash of the compiled core, 0 if unknown
+   * @see org.aya.core.serde.AyacFormat.Stamp#interfaceHash()
+   */
+  default long interfaceHash(@NotNull LibrarySource source) {
+    return 0;
+  }
+
+  /**
+   * Called before compiling a module whose imports are compiled, after its output is cleared.
+   *
+   * @return whether the compiled core is restored from elsewhere, so it is loaded instead of compiled
+   * @see CacheCompilerAdvisor
+   */
+  default boolean restoreCompiledCore(@NotNull LibrarySource source) {
+    return false;
+  }
+
   void prepareLibraryOutput(@NotNull LibraryOwner owner) throws IOException;
   void clearLibraryOutput(@NotNull LibraryOwner owner) throws IOException;
   void clearModuleOutput(@NotNull LibrarySource source) throws IOException;
@@ -74,7 +99,17 @@ public interface CompilerAdvisor {
     @Nullable Path sourcePath,
     @Nullable Path corePath,
     @NotNull ModuleLoader recurseLoader
-  ) throws IOException, ClassNotFoundException;
+  ) throws IOException;
+
+  /**
+   * Load the compiled core of a source that is going to be compiled again, before its output is cleared.
+   * The definitions that did not change are reused, see {@link org.aya.tyck.order.DeclFingerprint}.
+   *
+   * @return null if there is no compiled core, or it cannot be reused
+   */
+  default @Nullable CompiledAya loadPreviousCore(@NotNull LibrarySource source) {
+    return null;
+  }
 
   void doSaveCompiledCore(
     @NotNull Serializer.State serState,
@@ -95,7 +130,7 @@ public interface CompilerAdvisor {
     assert recurseLoader instanceof CachedModuleLoader<?>;
     try {
       return doLoadCompiledCore(deState, reporter, mod, sourcePath, corePath, recurseLoader);
-    } catch (IOException | ClassNotFoundException e) {
+    } catch (IOException e) {
       throw new InternalException("Compiled aya found but cannot be loaded", e);
     }
   }
@@ -7,6 +7,7 @@ import org.aya.cli.library.source.LibraryOwner;
 import org.aya.cli.library.source.LibrarySource;
 import org.aya.concrete.GenericAyaParser;
 import org.aya.core.def.GenericDef;
+import org.aya.core.serde.CompiledAya;
 import org.aya.core.serde.SerTerm;
 import org.aya.core.serde.Serializer;
 import org.aya.resolve.ResolveInfo;
@@ -38,6 +39,14 @@ public class DelegateCompilerAdvisor implements CompilerAdvisor {
     delegate.updateLastModified(source);
   }
 
+  @Override public long interfaceHash(@NotNull LibrarySource source) {
+    return delegate.interfaceHash(source);
+  }
+
+  @Override public boolean restoreCompiledCore(@NotNull LibrarySource source) {
+    return delegate.restoreCompiledCore(source);
+  }
+
   @Override public void prepareLibraryOutput(@NotNull LibraryOwner owner) throws IOException {
     delegate.prepareLibraryOutput(owner);
   }
@@ -55,10 +64,14 @@ public class DelegateCompilerAdvisor implements CompilerAdvisor {
   }
 
   @Override
-  public @Nullable ResolveInfo doLoadCompiledCore(SerTerm.@NotNull DeState deState, @NotNull Reporter reporter, @NotNull ImmutableSeq<String> mod, @Nullable Path sourcePath, @Nullable Path corePath, @NotNull ModuleLoader recurseLoader) throws IOException, ClassNotFoundException {
+  public @Nullable ResolveInfo doLoadCompiledCore(SerTerm.@NotNull DeState deState, @NotNull Reporter reporter, @NotNull ImmutableSeq<String> mod, @Nullable Path sourcePath, @Nullable Path corePath, @NotNull ModuleLoader recurseLoader) throws IOException {
     return delegate.doLoadCompiledCore(deState, reporter, mod, sourcePath, corePath, recurseLoader);
   }
 
+  @Override public @Nullable CompiledAya loadPreviousCore(@NotNull LibrarySource source) {
+    return delegate.loadPreviousCore(source);
+  }
+
   @Override
   public void doSaveCompiledCore(Serializer.@NotNull State serState, @NotNull LibrarySource file, @NotNull ResolveInfo resolveInfo, @NotNull ImmutableSeq<GenericDef> defs) throws IOException {
     delegate.doSaveCompiledCore(serState, file, resolveInfo, defs);
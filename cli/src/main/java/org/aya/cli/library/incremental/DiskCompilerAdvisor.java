@@ -6,8 +6,11 @@ import kala.collection.immutable.ImmutableSeq;
 import org.aya.cli.library.source.LibraryOwner;
 import org.aya.cli.library.source.LibrarySource;
 import org.aya.cli.utils.AyaCompiler;
+import org.aya.concrete.stmt.QualifiedID;
 import org.aya.core.def.GenericDef;
+import org.aya.core.serde.AyacFormat;
 import org.aya.core.serde.CompiledAya;
+import org.aya.core.serde.SerDef;
 import org.aya.core.serde.SerTerm;
 import org.aya.core.serde.Serializer;
 import org.aya.resolve.ResolveInfo;
@@ -21,24 +24,37 @@ import org.jetbrains.annotations.Nullable;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Comparator;
 
+/**
+ * Compares the contents of the sources with the hashes stored in the compiled cores,
+ * so touching or saving a file without changes does not compile it again.
+ *
+ * @see AyacFormat.Stamp
+ */
 public class DiskCompilerAdvisor implements CompilerAdvisor {
   @Override public boolean isSourceModified(@NotNull LibrarySource source) {
     try {
       var core = source.compiledCorePath();
       if (!Files.exists(core)) return true;
-      return Files.getLastModifiedTime(source.file())
-        .compareTo(Files.getLastModifiedTime(core)) > 0;
+      var hash = AyacFormat.readStamp(core).sourceHash();
+      return hash == 0 || hash != AyacFormat.hash(Files.readAllBytes(source.file()));
     } catch (IOException ignore) {
       return true;
     }
   }
 
   @Override public void updateLastModified(@NotNull LibrarySource source) {
+    // the hash of the source is stored in the compiled core, see doSaveCompiledCore
+  }
+
+  @Override public long interfaceHash(@NotNull LibrarySource source) {
     try {
       var core = source.compiledCorePath();
-      Files.setLastModifiedTime(core, Files.getLastModifiedTime(source.file()));
+      if (!Files.exists(core)) return 0;
+      return AyacFormat.readStamp(core).interfaceHash();
     } catch (IOException ignore) {
+      return 0;
     }
   }
 
@@ -61,14 +77,22 @@ public class DiskCompilerAdvisor implements CompilerAdvisor {
     @Nullable Path sourcePath,
     @Nullable Path corePath,
     @NotNull ModuleLoader recurseLoader
-  ) throws IOException, ClassNotFoundException {
+  ) throws IOException {
     if (corePath == null || sourcePath == null) return null;
     if (!Files.exists(corePath)) return null;
 
     var context = new EmptyContext(reporter, sourcePath).derive(mod);
-    try (var inputStream = FileUtil.ois(corePath)) {
-      var compiledAya = (CompiledAya) inputStream.readObject();
-      return compiledAya.toResolveInfo(recurseLoader, context, deState);
+    return AyacFormat.read(corePath).toResolveInfo(recurseLoader, context, deState);
+  }
+
+  @Override public @Nullable CompiledAya loadPreviousCore(@NotNull LibrarySource source) {
+    var corePath = source.compiledCorePath();
+    if (!Files.exists(corePath)) return null;
+    try {
+      return AyacFormat.read(corePath);
+    } catch (IOException | SerDef.DeserializeException ignored) {
+      // compiled by another version, compile everything again
+      return null;
     }
   }
 
@@ -79,6 +103,14 @@ public class DiskCompilerAdvisor implements CompilerAdvisor {
     @NotNull ImmutableSeq<GenericDef> defs
   ) throws IOException {
     var coreFile = file.compiledCorePath();
-    AyaCompiler.saveCompiledCore(coreFile, resolveInfo, defs, serState);
+    var sourceHash = AyacFormat.hash(Files.readAllBytes(file.file()));
+    AyaCompiler.saveCompiledCore(coreFile, sourceHash, importsHash(file), resolveInfo, defs, serState);
+  }
+
+  /** @return the interface hashes of the imports combined, in the order of their names, 0 if any is unknown */
+  protected long importsHash(@NotNull LibrarySource source) {
+    return AyacFormat.combine(source.imports().toImmutableSeq()
+      .sorted(Comparator.comparing(i -> QualifiedID.join(i.moduleName())))
+      .map(this::interfaceHash));
   }
 }
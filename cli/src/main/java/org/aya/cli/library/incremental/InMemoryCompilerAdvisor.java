@@ -20,6 +20,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
 
+/** The accesses are synchronized, modules may be compiled in parallel, see {@link org.aya.cli.single.CompilerFlags#jobs()} */
 public class InMemoryCompilerAdvisor implements CompilerAdvisor {
   protected final @NotNull MutableMap<Path, FileTime> coreTimestamp = MutableMap.create();
   protected final @NotNull MutableMap<ImmutableSeq<String>, ResolveInfo> compiledCore = MutableMap.create();
@@ -28,7 +29,7 @@ public class InMemoryCompilerAdvisor implements CompilerAdvisor {
     return source.file();
   }
 
-  @Override public boolean isSourceModified(@NotNull LibrarySource source) {
+  @Override public synchronized boolean isSourceModified(@NotNull LibrarySource source) {
     var coreLastModified = coreTimestamp.getOption(timestampKey(source));
     try {
       if (coreLastModified.isEmpty()) return true;
@@ -39,7 +40,7 @@ public class InMemoryCompilerAdvisor implements CompilerAdvisor {
     }
   }
 
-  @Override public void updateLastModified(@NotNull LibrarySource source) {
+  @Override public synchronized void updateLastModified(@NotNull LibrarySource source) {
     try {
       coreTimestamp.put(timestampKey(source), Files.getLastModifiedTime(timestampKey(source)));
     } catch (IOException ignore) {
@@ -49,20 +50,20 @@ public class InMemoryCompilerAdvisor implements CompilerAdvisor {
   @Override public void prepareLibraryOutput(@NotNull LibraryOwner owner) {
   }
 
-  @Override public void clearLibraryOutput(@NotNull LibraryOwner owner) {
+  @Override public synchronized void clearLibraryOutput(@NotNull LibraryOwner owner) {
     owner.librarySources().forEach(src -> {
       coreTimestamp.remove(timestampKey(src));
       clearModuleOutput(src);
     });
   }
 
-  @Override public void clearModuleOutput(@NotNull LibrarySource source) {
+  @Override public synchronized void clearModuleOutput(@NotNull LibrarySource source) {
     // TODO: what if module name clashes?
     compiledCore.remove(source.moduleName());
   }
 
   @Override
-  public @Nullable ResolveInfo doLoadCompiledCore(
+  public synchronized @Nullable ResolveInfo doLoadCompiledCore(
     SerTerm.@NotNull DeState deState,
     @NotNull Reporter reporter,
     @NotNull ImmutableSeq<String> mod,
@@ -74,7 +75,7 @@ public class InMemoryCompilerAdvisor implements CompilerAdvisor {
     return compiledCore.getOrNull(mod);
   }
 
-  @Override public void doSaveCompiledCore(
+  @Override public synchronized void doSaveCompiledCore(
     Serializer.@NotNull State serState,
     @NotNull LibrarySource file,
     @NotNull ResolveInfo resolveInfo,
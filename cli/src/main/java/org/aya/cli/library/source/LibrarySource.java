@@ -7,6 +7,7 @@ import kala.collection.mutable.MutableList;
 import kala.value.MutableValue;
 import org.aya.concrete.stmt.Stmt;
 import org.aya.core.def.GenericDef;
+import org.aya.core.serde.CompiledAya;
 import org.aya.generic.util.AyaFiles;
 import org.aya.resolve.ResolveInfo;
 import org.aya.util.FileUtil;
@@ -24,6 +25,8 @@ import java.util.stream.IntStream;
  * @param program     initialized after parse
  * @param resolveInfo initialized after resolve
  * @param tycked      initialized after tyck
+ * @param previous    the compiled core of the previous build, kept from clearing the output to compiling it again,
+ *                    whose unchanged definitions are reused
  */
 @Debug.Renderer(text = "file")
 public record LibrarySource(
@@ -32,10 +35,11 @@ public record LibrarySource(
   @NotNull MutableList<LibrarySource> imports,
   @NotNull MutableValue<ImmutableSeq<Stmt>> program,
   @NotNull MutableValue<ImmutableSeq<GenericDef>> tycked,
-  @NotNull MutableValue<ResolveInfo> resolveInfo
+  @NotNull MutableValue<ResolveInfo> resolveInfo,
+  @NotNull MutableValue<CompiledAya> previous
 ) {
   public LibrarySource(@NotNull LibraryOwner owner, @NotNull Path file) {
-    this(owner, FileUtil.canonicalize(file), MutableList.create(), MutableValue.create(), MutableValue.create(), MutableValue.create());
+    this(owner, FileUtil.canonicalize(file), MutableList.create(), MutableValue.create(), MutableValue.create(), MutableValue.create(), MutableValue.create());
   }
 
   public @NotNull ImmutableSeq<String> moduleName() {
@@ -159,7 +159,7 @@ public class ReplCompiler {
     if (parseTree.resolve(context) instanceof Expr.Ref ref
       && ref.resolvedVar() instanceof DefVar<?, ?> defVar
       && defVar.core instanceof FnDef fn
-      && fn.body.isLeft()) {
+      && fn.body().isLeft()) {
       return fn;
     }
     System.out.println(parseTree);
@@ -11,14 +11,22 @@ import org.jetbrains.annotations.Nullable;
 
 import java.nio.file.Path;
 
+/**
+ * @param jobs the number of threads compiling the modules of a library and checking the definitions of a module in parallel
+ */
 public record CompilerFlags(
   @NotNull Message message,
   boolean interruptedTrace,
   boolean remake,
   @Nullable DistillInfo distillInfo,
   @NotNull SeqLike<Path> modulePaths,
-  @Nullable Path outputFile
+  @Nullable Path outputFile,
+  int jobs
 ) {
+  public CompilerFlags(@NotNull Message message, boolean interruptedTrace, boolean remake, @Nullable DistillInfo distillInfo, @NotNull SeqLike<Path> modulePaths, @Nullable Path outputFile) {
+    this(message, interruptedTrace, remake, distillInfo, modulePaths, outputFile, 1);
+  }
+
   public CompilerFlags(boolean interruptedTrace, boolean remake, @NotNull DistillInfo distillInfo, @NotNull SeqLike<Path> modulePaths, @Nullable Path outputFile) {
     this(distillInfo.ascii ? Message.ASCII : Message.EMOJI,
       interruptedTrace, remake, distillInfo, modulePaths, outputFile);
@@ -10,6 +10,7 @@ import org.aya.cli.utils.MainArgs;
 import org.aya.concrete.stmt.Decl;
 import org.aya.core.def.Def;
 import org.aya.core.def.PrimDef;
+import org.aya.core.serde.AyacFormat;
 import org.aya.core.serde.Serializer;
 import org.aya.generic.AyaDocile;
 import org.aya.pretty.doc.Doc;
@@ -63,13 +64,14 @@ public record SingleFileCompiler(
       distill(sourceFile, distillInfo, program, MainArgs.DistillStage.raw);
       var loader = new CachedModuleLoader<>(new ModuleListLoader(reporter, flags.modulePaths().view().map(path ->
         new FileModuleLoader(locator, path, reporter, ayaParser, primFactory, builder)).toImmutableSeq()));
-      loader.tyckModule(primFactory, ctx, program, builder, (moduleResolve, defs) -> {
+      AyaCompiler.withJobs(flags.jobs(), () -> loader.tyckModule(primFactory, ctx, program, builder, (moduleResolve, defs) -> {
         distill(sourceFile, distillInfo, program, MainArgs.DistillStage.scoped);
         distill(sourceFile, distillInfo, defs, MainArgs.DistillStage.typed);
         if (flags.outputFile() != null)
-          AyaCompiler.saveCompiledCore(flags.outputFile(), moduleResolve, defs, new Serializer.State());
+          AyaCompiler.saveCompiledCore(flags.outputFile(), AyacFormat.hash(Files.readAllBytes(sourceFile)), 0,
+            moduleResolve, defs, new Serializer.State());
         if (moduleCallback != null) moduleCallback.onModuleTycked(moduleResolve, defs);
-      });
+      }));
     });
   }
 
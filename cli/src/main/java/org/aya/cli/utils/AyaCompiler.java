@@ -6,6 +6,7 @@ import kala.collection.immutable.ImmutableSeq;
 import kala.function.CheckedRunnable;
 import org.aya.cli.single.CompilerFlags;
 import org.aya.core.def.GenericDef;
+import org.aya.core.serde.AyacFormat;
 import org.aya.core.serde.CompiledAya;
 import org.aya.core.serde.Serializer;
 import org.aya.generic.util.InternalException;
@@ -16,9 +17,10 @@ import org.aya.util.reporter.CountingReporter;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.nio.file.Files;
+import java.io.InterruptedIOException;
 import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 
 public class AyaCompiler {
   public static int catching(
@@ -46,20 +48,44 @@ public class AyaCompiler {
     }
   }
 
+  /**
+   * Runs the block on a pool of <code>jobs</code> threads, where the modules check their SCCs in parallel,
+   * see {@link org.aya.resolve.module.ModuleLoader#tyckModule}. Runs it on the current thread if <code>jobs</code> is 1.
+   */
+  public static void withJobs(int jobs, @NotNull CheckedRunnable<IOException> block) throws IOException {
+    if (jobs <= 1) {
+      block.runChecked();
+      return;
+    }
+    var pool = new ForkJoinPool(jobs);
+    try {
+      pool.submit(() -> {
+        block.runChecked();
+        return null;
+      }).get();
+    } catch (ExecutionException e) {
+      switch (e.getCause()) {
+        case IOException io -> throw io;
+        case RuntimeException runtime -> throw runtime;
+        case Error error -> throw error;
+        default -> throw new IllegalStateException(e.getCause());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /** @see AyacFormat#write(CompiledAya, long, long, Path) */
   public static void saveCompiledCore(
     @NotNull Path coreFile,
+    long sourceHash, long importsHash,
     @NotNull ResolveInfo resolveInfo,
     @NotNull ImmutableSeq<GenericDef> defs,
     @NotNull Serializer.State state
   ) throws IOException {
-    var compiledAya = CompiledAya.from(resolveInfo, defs, state);
-    try (var outputStream = coreWriter(coreFile)) {
-      outputStream.writeObject(compiledAya);
-    }
-  }
-
-  private static @NotNull ObjectOutputStream coreWriter(@NotNull Path coreFile) throws IOException {
-    Files.createDirectories(coreFile.toAbsolutePath().getParent());
-    return new ObjectOutputStream(Files.newOutputStream(coreFile));
+    AyacFormat.write(CompiledAya.from(resolveInfo, defs, state), sourceHash, importsHash, coreFile);
   }
 }
@@ -43,6 +43,12 @@ public class MainArgs {
     public String inputFile;
     @Option(names = {"-o", "--output"}, description = "Set output file")
     public String outputFile;
+    @Option(names = {"-j", "--jobs"}, defaultValue = "1", paramLabel = "N", description =
+      "Compile modules and check definitions on at most N threads in parallel")
+    public int jobs;
+    @Option(names = {"--build-cache"}, description =
+      "Reuse the modules compiled by other library builds on this machine, cached in the Aya home")
+    public boolean isBuildCache;
   }
 
   public static class PlctAction {
@@ -82,6 +88,12 @@ public class MainArgs {
   public PredefinedStyle renderStyle;
   @Option(names = {"--trace"}, description = "Enable tracing.")
   public boolean enableTrace;
+  @Option(names = {"--profile"}, arity = "0..1", fallbackValue = "text", paramLabel = "format", description =
+    "Count unfoldings and unification, print a report to stderr." + CANDIDATES)
+  public ProfileFormat profile;
+  @Option(names = {"--intern-terms"}, description =
+    "Hash-cons the terms stored in definitions and solutions, so equal terms are shared and compared by identity.")
+  public boolean internTerms;
   @Option(names = {"--ascii-only"}, description = "Do not show unicode in success/fail message.")
   public boolean asciiOnly;
   @Option(names = {"--module-path"}, description = "Search for module under this path.")
@@ -120,6 +132,11 @@ public class MainArgs {
     }
   }
 
+  public enum ProfileFormat {
+    text,
+    json,
+  }
+
   public enum ReplType {
     plain,
     jline
@@ -0,0 +1,45 @@
+// Copyright (c) 2020-2022 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.lsp.models;
+
+import org.aya.tyck.trace.Profiler;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * @param report null if the profiler is just started, or it was not running
+ */
+public record ProfileResult(@Nullable Report report) {
+  public static class Params {
+    /** true to start profiling, false to stop and collect the report */
+    public boolean start;
+  }
+
+  public record Entry(@NotNull String name, long count, long nanos) {
+  }
+
+  public record Report(
+    long nanos, long metasCreated, long metasSolved,
+    long memoHits, long memoMisses,
+    @NotNull List<Entry> unfoldings,
+    @NotNull List<Entry> unifications,
+    @NotNull List<Entry> equations
+  ) {
+  }
+
+  public static @NotNull ProfileResult from(@Nullable Profiler profiler) {
+    if (profiler == null) return new ProfileResult(null);
+    var report = profiler.report();
+    return new ProfileResult(new Report(report.nanos(), report.metasCreated(), report.metasSolved(),
+      report.memoHits(), report.memoMisses(),
+      report.unfoldings().map(ProfileResult::entry).asJava(),
+      report.unifications().map(ProfileResult::entry).asJava(),
+      report.equations().map(ProfileResult::entry).asJava()));
+  }
+
+  private static @NotNull Entry entry(@NotNull Profiler.Entry entry) {
+    return new Entry(entry.name(), entry.count(), entry.nanos());
+  }
+}
@@ -26,10 +26,12 @@ import org.aya.lsp.actions.*;
 import org.aya.lsp.library.WsLibrary;
 import org.aya.lsp.models.ComputeTermResult;
 import org.aya.lsp.models.HighlightResult;
+import org.aya.lsp.models.ProfileResult;
 import org.aya.lsp.prim.LspPrimFactory;
 import org.aya.lsp.utils.Log;
 import org.aya.lsp.utils.LspRange;
 import org.aya.pretty.doc.Doc;
+import org.aya.tyck.trace.Profiler;
 import org.aya.util.FileUtil;
 import org.aya.util.distill.DistillerOptions;
 import org.aya.util.error.SourcePos;
@@ -383,6 +385,16 @@ public class AyaLanguageServer implements LanguageServer {
     return computeTerm(input, ComputeTerm.Kind.nf());
   }
 
+  /** Profiling is global, it covers all libraries reloaded in between */
+  @LspRequest("aya/profile") @SuppressWarnings("unused")
+  public @NotNull ProfileResult profile(ProfileResult.Params params) {
+    if (params.start) {
+      Profiler.start();
+      return ProfileResult.from(null);
+    }
+    return ProfileResult.from(Profiler.stop());
+  }
+
   public ComputeTermResult computeTerm(@NotNull ComputeTermResult.Params input, ComputeTerm.Kind type) {
     var source = find(input.uri);
     if (source == null) return ComputeTermResult.bad(input);
@@ -17,4 +17,5 @@ include(
   "pretty",
   "parser",
   "lsp",
+  "bench",
 )